@@ -0,0 +1,19 @@
+package com.github.binarywang.demo.wx.miniapp.config;
+
+import com.github.binarywang.demo.wx.miniapp.logging.AccessLogger;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 访问日志配置
+ */
+@Configuration
+@EnableConfigurationProperties(AccessLogProperties.class)
+public class AccessLogConfiguration {
+
+    @Bean(destroyMethod = "shutdown")
+    public AccessLogger accessLogger(AccessLogProperties properties) {
+        return new AccessLogger(properties);
+    }
+}
@@ -0,0 +1,37 @@
+package com.github.binarywang.demo.wx.miniapp.config;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import lombok.Data;
+
+/**
+ * 访问日志配置属性
+ */
+@Data
+@ConfigurationProperties(prefix = "access-log")
+public class AccessLogProperties {
+
+    /**
+     * 是否开启访问日志
+     */
+    private boolean enabled = true;
+
+    /**
+     * 异步写日志的环形缓冲区容量，缓冲区满时直接丢弃新日志，不阻塞请求线程
+     */
+    private int bufferSize = 1024;
+
+    /**
+     * 未单独配置的接口使用的采样率，取值 0~1
+     */
+    private double defaultSampleRate = 1.0;
+
+    /**
+     * 按接口配置的采样率，key 为接口标识（如：POST /msg），value 取值 0~1
+     */
+    private Map<String, Double> sampling = new HashMap<>();
+
+}
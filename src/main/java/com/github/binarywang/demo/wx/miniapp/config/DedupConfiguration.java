@@ -0,0 +1,34 @@
+package com.github.binarywang.demo.wx.miniapp.config;
+
+import com.github.binarywang.demo.wx.miniapp.dedup.DedupStore;
+import com.github.binarywang.demo.wx.miniapp.dedup.LocalDedupStore;
+import com.github.binarywang.demo.wx.miniapp.dedup.RedisDedupStore;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+
+/**
+ * 回调去重配置
+ */
+@Slf4j
+@Configuration
+@EnableConfigurationProperties(DedupProperties.class)
+public class DedupConfiguration {
+
+    @Bean
+    public DedupStore dedupStore(DedupProperties properties) {
+        if (!"redis".equalsIgnoreCase(properties.getBackend())) {
+            return new LocalDedupStore();
+        }
+
+        DedupProperties.Redis redis = properties.getRedis();
+        log.info("回调去重使用Redis，host={}, port={}, database={}", redis.getHost(), redis.getPort(), redis.getDatabase());
+        JedisPool jedisPool = new JedisPool(new JedisPoolConfig(), redis.getHost(), redis.getPort(), redis.getTimeout(),
+            StringUtils.trimToNull(redis.getPassword()), redis.getDatabase());
+        return new RedisDedupStore(jedisPool, redis.getKeyPrefix());
+    }
+}
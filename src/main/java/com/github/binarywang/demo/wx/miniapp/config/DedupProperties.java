@@ -0,0 +1,42 @@
+package com.github.binarywang.demo.wx.miniapp.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import lombok.Data;
+
+/**
+ * 回调去重配置属性
+ */
+@Data
+@ConfigurationProperties(prefix = "dedup")
+public class DedupProperties {
+
+    /**
+     * 去重存储：local（进程内，默认）或 redis（多节点共享）
+     */
+    private String backend = "local";
+
+    private Redis redis = new Redis();
+
+    @Data
+    public static class Redis {
+        private String host = "127.0.0.1";
+
+        private int port = 6379;
+
+        private String password;
+
+        private int database = 0;
+
+        /**
+         * 连接及读写超时，单位毫秒
+         */
+        private int timeout = 200;
+
+        /**
+         * 去重 key 的前缀
+         */
+        private String keyPrefix = "wx:dedup:";
+    }
+
+}
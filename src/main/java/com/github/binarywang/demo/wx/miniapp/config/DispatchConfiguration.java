@@ -0,0 +1,27 @@
+package com.github.binarywang.demo.wx.miniapp.config;
+
+import com.github.binarywang.demo.wx.miniapp.dispatch.AppidRateLimiter;
+import com.github.binarywang.demo.wx.miniapp.dispatch.BulkDispatcher;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 批量主动发送配置
+ */
+@Configuration
+@EnableConfigurationProperties(DispatchProperties.class)
+public class DispatchConfiguration {
+
+    @Bean
+    public AppidRateLimiter appidRateLimiter(DispatchProperties properties, MeterRegistry meterRegistry) {
+        return new AppidRateLimiter(properties, meterRegistry);
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    public BulkDispatcher bulkDispatcher(DispatchProperties properties, AppidRateLimiter appidRateLimiter,
+                                         MeterRegistry meterRegistry) {
+        return new BulkDispatcher(properties, appidRateLimiter, meterRegistry);
+    }
+}
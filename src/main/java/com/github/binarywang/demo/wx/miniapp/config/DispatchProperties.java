@@ -0,0 +1,60 @@
+package com.github.binarywang.demo.wx.miniapp.config;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import lombok.Data;
+
+/**
+ * 批量主动发送配置属性（并发度、按 appid 限流）
+ */
+@Data
+@ConfigurationProperties(prefix = "dispatch")
+public class DispatchProperties {
+
+    /**
+     * 发送线程数，所有批量发送请求共用
+     */
+    private int threads = 16;
+
+    /**
+     * 单个批量请求最多同时在发送中的条数
+     */
+    private int maxConcurrencyPerRequest = 8;
+
+    /**
+     * 单个批量请求最多包含的条数
+     */
+    private int maxBatchSize = 1000;
+
+    /**
+     * 等待 appid 令牌的最长时间，单位毫秒；超时的条目直接返回失败
+     */
+    private long acquireTimeoutMs = 30000;
+
+    /**
+     * 未单独配置的 appid 使用的限流规则
+     */
+    private Limit defaultLimit = new Limit();
+
+    /**
+     * 按 appid 配置的限流规则，key 为公众号/小程序的 appid
+     */
+    private Map<String, Limit> appids = new HashMap<>();
+
+    @Data
+    public static class Limit {
+        /**
+         * 桶容量，即允许的突发次数
+         */
+        private int capacity = 20;
+
+        /**
+         * 每分钟补充的令牌数
+         */
+        private int refillPerMinute = 1200;
+    }
+
+}
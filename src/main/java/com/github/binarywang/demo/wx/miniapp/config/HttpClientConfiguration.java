@@ -0,0 +1,116 @@
+package com.github.binarywang.demo.wx.miniapp.config;
+
+import com.github.binarywang.demo.wx.miniapp.utils.HttpUtil;
+import com.github.binarywang.demo.wx.miniapp.utils.http.GetResponseCache;
+import com.github.binarywang.demo.wx.miniapp.utils.http.ResilienceInterceptor;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * HttpUtil 的 Http 客户端配置：按 profile 创建客户端并注册到 HttpUtil
+ */
+@Slf4j
+@Configuration
+@EnableConfigurationProperties(HttpClientProperties.class)
+public class HttpClientConfiguration {
+    private final HttpClientProperties properties;
+    private final MeterRegistry meterRegistry;
+
+    @Autowired
+    public HttpClientConfiguration(HttpClientProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void init() {
+        Map<String, OkHttpClient> clients = new HashMap<>();
+        Map<String, List<String>> hosts = new HashMap<>();
+        for (Map.Entry<String, HttpClientProperties.Profile> entry : properties.getProfiles().entrySet()) {
+            clients.put(entry.getKey(), buildClient(entry.getKey(), entry.getValue()));
+            hosts.put(entry.getKey(), entry.getValue().getHosts());
+            log.info("HttpUtil profile [{}] 已加载，hosts={}", entry.getKey(), entry.getValue().getHosts());
+        }
+        HttpUtil.registerProfiles(clients, hosts);
+        HttpUtil.getProfiles().forEach(this::registerPoolGauges);
+
+        HttpClientProperties.ResponseCache responseCache = properties.getResponseCache();
+        if (responseCache.isEnabled()) {
+            HttpUtil.setGetCache(GetResponseCache.builder()
+                .maxBytes(responseCache.getMaxBytes())
+                .maxEntryBytes(responseCache.getMaxEntryBytes())
+                .defaultTtlMs(responseCache.getDefaultTtlMs())
+                .maxTtlMs(responseCache.getMaxTtlMs())
+                .retentionMs(responseCache.getRetentionMs())
+                .build());
+            log.info("HttpUtil GET 合并请求及缓存已开启，maxBytes={}", responseCache.getMaxBytes());
+        }
+    }
+
+    /**
+     * 连接池及调度队列的饱和度指标
+     */
+    private void registerPoolGauges(String profile, OkHttpClient client) {
+        Gauge.builder("http.client.pool.connections", client.connectionPool(), ConnectionPool::connectionCount)
+            .tag("profile", profile).register(meterRegistry);
+        Gauge.builder("http.client.pool.idle", client.connectionPool(), ConnectionPool::idleConnectionCount)
+            .tag("profile", profile).register(meterRegistry);
+        Gauge.builder("http.client.dispatcher.running", client.dispatcher(), d -> d.runningCallsCount())
+            .tag("profile", profile).register(meterRegistry);
+        Gauge.builder("http.client.dispatcher.queued", client.dispatcher(), d -> d.queuedCallsCount())
+            .tag("profile", profile).register(meterRegistry);
+    }
+
+    private OkHttpClient buildClient(String name, HttpClientProperties.Profile profile) {
+        OkHttpClient.Builder builder = HttpUtil.newClientBuilder(name)
+            .connectTimeout(profile.getConnectTimeoutMs(), TimeUnit.MILLISECONDS)
+            .readTimeout(profile.getReadTimeoutMs(), TimeUnit.MILLISECONDS)
+            .writeTimeout(profile.getWriteTimeoutMs(), TimeUnit.MILLISECONDS)
+            .callTimeout(profile.getCallTimeoutMs(), TimeUnit.MILLISECONDS)
+            .connectionPool(new ConnectionPool(profile.getMaxIdleConnections(),
+                profile.getKeepAliveSeconds(), TimeUnit.SECONDS))
+            .addInterceptor(buildResilienceInterceptor(profile.getResilience()));
+        if (!profile.getProtocols().isEmpty()) {
+            builder.protocols(profile.getProtocols().stream().map(this::parseProtocol).collect(Collectors.toList()));
+        }
+        OkHttpClient client = builder.build();
+        client.dispatcher().setMaxRequests(profile.getMaxRequests());
+        client.dispatcher().setMaxRequestsPerHost(profile.getMaxRequestsPerHost());
+        return client;
+    }
+
+    private ResilienceInterceptor buildResilienceInterceptor(HttpClientProperties.Resilience resilience) {
+        return ResilienceInterceptor.builder()
+            .maxAttempts(resilience.getMaxAttempts())
+            .backoffBaseMs(resilience.getBackoffBaseMs())
+            .backoffMaxMs(resilience.getBackoffMaxMs())
+            .circuitBreakerEnabled(resilience.isCircuitBreakerEnabled())
+            .failureThreshold(resilience.getFailureThreshold())
+            .openDurationMs(resilience.getOpenDurationMs())
+            .hedgeDelayMs(resilience.getHedgeDelayMs())
+            .build();
+    }
+
+    private Protocol parseProtocol(String name) {
+        try {
+            return Protocol.get(name.trim());
+        } catch (IOException e) {
+            throw new IllegalArgumentException("不支持的http协议：" + name, e);
+        }
+    }
+}
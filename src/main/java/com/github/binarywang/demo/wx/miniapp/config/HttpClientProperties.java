@@ -0,0 +1,167 @@
+package com.github.binarywang.demo.wx.miniapp.config;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import lombok.Data;
+
+/**
+ * HttpUtil 的 Http 客户端配置属性
+ * <p>
+ * 按目标服务配置多个命名 profile（如本地机器人接口、外部接口），各自设置超时、连接池和并发上限；
+ * 所有 profile 共用同一组异步执行线程。名为 default 的 profile 用于未匹配到其他 profile 的请求。
+ */
+@Data
+@ConfigurationProperties(prefix = "http.client")
+public class HttpClientProperties {
+
+    /**
+     * profile 名称 -> 配置
+     */
+    private Map<String, Profile> profiles = new LinkedHashMap<>();
+
+    /**
+     * WxMaService、WxMpService 使用的 profile，配置后两者改用 OkHttp 实现并与 HttpUtil 共用该 profile 的连接池和线程；
+     * 为空时使用 WxJava 默认的 HttpClient 实现
+     */
+    private String wechatProfile;
+
+    /**
+     * HttpUtil 同步 GET 的合并请求 + 缓存
+     */
+    private ResponseCache responseCache = new ResponseCache();
+
+    @Data
+    public static class Profile {
+        /**
+         * 该 profile 负责的目标地址，host 或 host:port，default profile 无需配置
+         */
+        private List<String> hosts = new ArrayList<>();
+
+        /**
+         * 连接超时，单位毫秒
+         */
+        private int connectTimeoutMs = 1000 * 600;
+
+        /**
+         * 读超时，单位毫秒
+         */
+        private int readTimeoutMs = 1000 * 600;
+
+        /**
+         * 写超时，单位毫秒
+         */
+        private int writeTimeoutMs = 1000 * 600;
+
+        /**
+         * 整个调用的超时，单位毫秒，0 表示不限制
+         */
+        private int callTimeoutMs = 1000 * 600;
+
+        /**
+         * 连接池最大空闲连接数
+         */
+        private int maxIdleConnections = 1000;
+
+        /**
+         * 空闲连接保活时间，单位秒
+         */
+        private long keepAliveSeconds = 30 * 60;
+
+        /**
+         * 同时执行的异步请求总数上限
+         */
+        private int maxRequests = 64;
+
+        /**
+         * 单个host同时执行的异步请求数上限
+         */
+        private int maxRequestsPerHost = 16;
+
+        /**
+         * 允许的协议，如：http/1.1、h2，为空时使用 OkHttp 默认值
+         */
+        private List<String> protocols = new ArrayList<>();
+
+        /**
+         * 重试、熔断、对冲配置
+         */
+        private Resilience resilience = new Resilience();
+    }
+
+    @Data
+    public static class Resilience {
+        /**
+         * 幂等请求的最大尝试次数（含第一次），1 表示不重试；非幂等请求（如 POST）不会重试
+         */
+        private int maxAttempts = 1;
+
+        /**
+         * 重试退避基准时间，单位毫秒，按 2 的指数增长并加随机抖动
+         */
+        private long backoffBaseMs = 100;
+
+        /**
+         * 单次重试退避的最大时间，单位毫秒
+         */
+        private long backoffMaxMs = 2000;
+
+        /**
+         * 是否按目标 host 开启熔断
+         */
+        private boolean circuitBreakerEnabled = true;
+
+        /**
+         * 连续失败（IO 异常或 5xx）多少次后熔断
+         */
+        private int failureThreshold = 5;
+
+        /**
+         * 熔断持续时间，单位毫秒，之后放行一个探测请求
+         */
+        private long openDurationMs = 30_000;
+
+        /**
+         * 异步 GET 的对冲延迟，单位毫秒：超过该时间未返回时补发一个请求，取先返回的结果；0 表示不开启
+         */
+        private long hedgeDelayMs = 0;
+    }
+
+    @Data
+    public static class ResponseCache {
+        /**
+         * 是否开启：并发的相同 GET 合并为一个请求，并按 Cache-Control / ETag 缓存响应
+         */
+        private boolean enabled = false;
+
+        /**
+         * 缓存内容总字节数上限
+         */
+        private long maxBytes = 16 * 1024 * 1024;
+
+        /**
+         * 单个响应超过该字节数时不缓存
+         */
+        private long maxEntryBytes = 1024 * 1024;
+
+        /**
+         * 响应未声明 max-age 时的有效期，单位毫秒
+         */
+        private long defaultTtlMs = 1000;
+
+        /**
+         * 有效期上限，单位毫秒
+         */
+        private long maxTtlMs = 60_000;
+
+        /**
+         * 过期条目继续保留用于条件请求（If-None-Match / If-Modified-Since）的时间，单位毫秒
+         */
+        private long retentionMs = 10 * 60_000;
+    }
+
+}
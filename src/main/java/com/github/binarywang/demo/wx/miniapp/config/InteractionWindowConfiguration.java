@@ -0,0 +1,33 @@
+package com.github.binarywang.demo.wx.miniapp.config;
+
+import com.github.binarywang.demo.wx.miniapp.interaction.InteractionWindowIndex;
+import com.github.binarywang.demo.wx.miniapp.interaction.InteractionWindowMaintainer;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Paths;
+
+/**
+ * 48小时互动窗口配置
+ */
+@Configuration
+@EnableConfigurationProperties(InteractionWindowProperties.class)
+public class InteractionWindowConfiguration {
+
+    @Bean
+    public InteractionWindowIndex interactionWindowIndex(InteractionWindowProperties properties,
+                                                         MeterRegistry meterRegistry) {
+        return new InteractionWindowIndex(properties.getWindowHours(), properties.getEnforceAppids(), meterRegistry);
+    }
+
+    @Bean(initMethod = "start", destroyMethod = "shutdown")
+    public InteractionWindowMaintainer interactionWindowMaintainer(InteractionWindowIndex index,
+                                                                   InteractionWindowProperties properties) {
+        String snapshotFile = StringUtils.trimToNull(properties.getSnapshotFile());
+        return new InteractionWindowMaintainer(index, snapshotFile == null ? null : Paths.get(snapshotFile),
+            properties.getSnapshotIntervalSeconds());
+    }
+}
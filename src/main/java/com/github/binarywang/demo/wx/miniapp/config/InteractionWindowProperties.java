@@ -0,0 +1,42 @@
+package com.github.binarywang.demo.wx.miniapp.config;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import lombok.Data;
+
+/**
+ * 48小时互动窗口配置属性（记录用户最近一次互动时间，客服消息发送前本地判断）
+ */
+@Data
+@ConfigurationProperties(prefix = "interaction-window")
+public class InteractionWindowProperties {
+
+    /**
+     * 是否记录用户互动时间
+     */
+    private boolean enabled = true;
+
+    /**
+     * 互动窗口时长，单位小时
+     */
+    private int windowHours = 48;
+
+    /**
+     * 发送客服消息前需要检查互动窗口的 appid；
+     * 只有消息推送到本服务的 appid 才有完整的互动记录，其他 appid 不做检查
+     */
+    private Set<String> enforceAppids = new HashSet<>();
+
+    /**
+     * 快照文件路径，为空则只保存在内存中，重启后丢失
+     */
+    private String snapshotFile;
+
+    /**
+     * 写快照的间隔，单位秒
+     */
+    private long snapshotIntervalSeconds = 60;
+}
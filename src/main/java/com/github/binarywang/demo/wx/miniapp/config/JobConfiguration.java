@@ -0,0 +1,24 @@
+package com.github.binarywang.demo.wx.miniapp.config;
+
+import com.github.binarywang.demo.wx.miniapp.dispatch.BulkDispatcher;
+import com.github.binarywang.demo.wx.miniapp.job.JobManager;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+
+/**
+ * 异步批量发送任务配置
+ */
+@Configuration
+@EnableConfigurationProperties(JobProperties.class)
+public class JobConfiguration {
+
+    @Bean(initMethod = "start", destroyMethod = "shutdown")
+    public JobManager jobManager(JobProperties properties, BulkDispatcher bulkDispatcher,
+                                 MeterRegistry meterRegistry) throws IOException {
+        return new JobManager(properties, bulkDispatcher, meterRegistry);
+    }
+}
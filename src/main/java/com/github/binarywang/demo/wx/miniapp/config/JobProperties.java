@@ -0,0 +1,38 @@
+package com.github.binarywang.demo.wx.miniapp.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import lombok.Data;
+
+/**
+ * 异步批量发送任务配置属性（任务状态和每条的结果保存在本地目录，重启后从上次确认的位置继续）
+ */
+@Data
+@ConfigurationProperties(prefix = "job")
+public class JobProperties {
+
+    /**
+     * 任务数据目录，每个任务一个子目录（job.json、items.ndjson、results.ndjson）
+     */
+    private String dir = "data/jobs";
+
+    /**
+     * 同时运行的任务数，其余任务排队；每个任务的并发由 dispatch.max-concurrency-per-request 控制
+     */
+    private int concurrentJobs = 2;
+
+    /**
+     * 保存进度（检查点）的间隔，单位毫秒；进程崩溃时最多重发这段时间内已发送的消息
+     */
+    private long checkpointIntervalMs = 1000;
+
+    /**
+     * 保存进度时是否刷盘
+     */
+    private boolean fsync = true;
+
+    /**
+     * 结束（完成、取消或失败）的任务保留多久，单位小时，之后删除任务目录
+     */
+    private long retentionHours = 168;
+}
@@ -0,0 +1,27 @@
+package com.github.binarywang.demo.wx.miniapp.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.binarywang.demo.wx.miniapp.utils.JsonUtils;
+import com.github.binarywang.demo.wx.miniapp.utils.json.JacksonJsonCodec;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Configuration;
+
+import javax.annotation.PostConstruct;
+
+/**
+ * JSON 配置：JsonUtils 与 Spring MVC 共用同一个 ObjectMapper（配置见 spring.jackson）
+ */
+@Configuration
+public class JsonConfiguration {
+    private final ObjectMapper objectMapper;
+
+    @Autowired
+    public JsonConfiguration(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    @PostConstruct
+    public void init() {
+        JsonUtils.setCodec(new JacksonJsonCodec(objectMapper));
+    }
+}
@@ -0,0 +1,27 @@
+package com.github.binarywang.demo.wx.miniapp.config;
+
+import com.github.binarywang.demo.wx.miniapp.session.Jscode2SessionCoalescer;
+import com.github.binarywang.demo.wx.miniapp.session.WxMaSessionStore;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 小程序登录会话配置
+ */
+@Configuration
+@EnableConfigurationProperties(MaSessionProperties.class)
+public class MaSessionConfiguration {
+
+    @Bean
+    public WxMaSessionStore wxMaSessionStore(MaSessionProperties properties, MeterRegistry meterRegistry) {
+        return new WxMaSessionStore(properties, meterRegistry);
+    }
+
+    @Bean
+    public Jscode2SessionCoalescer jscode2SessionCoalescer(MaSessionProperties properties, MeterRegistry meterRegistry) {
+        return new Jscode2SessionCoalescer(properties.getLoginResultHoldSeconds(), properties.getMaxHeldLoginResults(),
+            meterRegistry);
+    }
+}
@@ -0,0 +1,33 @@
+package com.github.binarywang.demo.wx.miniapp.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import lombok.Data;
+
+/**
+ * 小程序登录会话配置属性（login 返回的 token -> openid、unionid、session_key）
+ */
+@Data
+@ConfigurationProperties(prefix = "ma-session")
+public class MaSessionProperties {
+
+    /**
+     * 最多保存的会话数量，超出后淘汰最久未使用的
+     */
+    private long maxSessions = 2_000_000;
+
+    /**
+     * 会话闲置多久后过期，单位分钟；过期后需重新调用 login
+     */
+    private long expireAfterAccessMinutes = 1440;
+
+    /**
+     * 登录成功后，jscode2session 的结果保留多久，单位秒；期间相同 code 的重复登录直接使用该结果
+     */
+    private long loginResultHoldSeconds = 10;
+
+    /**
+     * 最多保留的登录结果数量
+     */
+    private long maxHeldLoginResults = 100_000;
+}
@@ -0,0 +1,28 @@
+package com.github.binarywang.demo.wx.miniapp.config;
+
+import com.github.binarywang.demo.wx.miniapp.mass.MassStatusIndex;
+import com.github.binarywang.demo.wx.miniapp.mass.MassStatusPoller;
+import io.micrometer.core.instrument.MeterRegistry;
+import me.chanjar.weixin.mp.api.WxMpService;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 群发状态索引配置
+ */
+@Configuration
+@EnableConfigurationProperties(MassStatusProperties.class)
+public class MassStatusConfiguration {
+
+    @Bean
+    public MassStatusIndex massStatusIndex(MassStatusProperties properties, MeterRegistry meterRegistry) {
+        return new MassStatusIndex(properties, meterRegistry);
+    }
+
+    @Bean(initMethod = "start", destroyMethod = "shutdown")
+    public MassStatusPoller massStatusPoller(MassStatusIndex index, MassStatusProperties properties,
+                                             WxMpService wxMpService) {
+        return new MassStatusPoller(index, properties, wxMpService);
+    }
+}
@@ -0,0 +1,43 @@
+package com.github.binarywang.demo.wx.miniapp.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import lombok.Data;
+
+/**
+ * 群发状态索引配置属性（状态由 MASSSENDJOBFINISH 事件更新，超时未收到事件的再调用接口查询）
+ */
+@Data
+@ConfigurationProperties(prefix = "mass-status")
+public class MassStatusProperties {
+
+    /**
+     * 群发后多久仍未收到事件才开始调用查询接口，单位秒
+     */
+    private long pollAfterSeconds = 1800;
+
+    /**
+     * 查询仍在发送中（或查询失败）时，下次查询的间隔，单位秒
+     */
+    private long repollSeconds = 600;
+
+    /**
+     * 每条群发最多调用查询接口的次数，之后只等事件
+     */
+    private int maxPolls = 6;
+
+    /**
+     * 后台检查的间隔，单位秒
+     */
+    private long scanIntervalSeconds = 60;
+
+    /**
+     * 每次检查最多查询的群发数，避免集中消耗接口配额
+     */
+    private int maxPollsPerScan = 100;
+
+    /**
+     * 状态保留多久，单位小时
+     */
+    private long retentionHours = 72;
+}
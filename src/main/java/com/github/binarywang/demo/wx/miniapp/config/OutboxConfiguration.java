@@ -0,0 +1,24 @@
+package com.github.binarywang.demo.wx.miniapp.config;
+
+import com.github.binarywang.demo.wx.miniapp.dispatch.AppidRateLimiter;
+import com.github.binarywang.demo.wx.miniapp.outbox.Outbox;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+
+/**
+ * 发件箱配置
+ */
+@Configuration
+@EnableConfigurationProperties(OutboxProperties.class)
+public class OutboxConfiguration {
+
+    @Bean(initMethod = "start", destroyMethod = "shutdown")
+    public Outbox outbox(OutboxProperties properties, AppidRateLimiter appidRateLimiter,
+                         MeterRegistry meterRegistry) throws IOException {
+        return new Outbox(properties, appidRateLimiter, meterRegistry);
+    }
+}
@@ -0,0 +1,60 @@
+package com.github.binarywang.demo.wx.miniapp.config;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import lombok.Data;
+
+/**
+ * 发件箱配置属性（客服/模板消息先落本地日志，再由后台线程发送和重试）
+ */
+@Data
+@ConfigurationProperties(prefix = "outbox")
+public class OutboxProperties {
+
+    /**
+     * 发件箱日志文件路径
+     */
+    private String file = "data/outbox.log";
+
+    /**
+     * 每次写入后是否刷盘；关闭后吞吐更高，但进程或机器崩溃时可能丢失最后写入的消息
+     */
+    private boolean fsync = true;
+
+    /**
+     * 发送线程数
+     */
+    private int workers = 4;
+
+    /**
+     * 发送完成（成功或最终失败）的消息保留多久，单位小时；保留期内相同 key 的消息不会重复发送
+     */
+    private long retentionHours = 72;
+
+    /**
+     * 日志记录数超过该值、且超过当前消息数的两倍时压缩日志
+     */
+    private long compactMinRecords = 10000;
+
+    /**
+     * 未单独配置的错误（含网络异常）的重试间隔，单位秒；列表长度即最多重试次数
+     */
+    private List<Long> defaultRetryDelaysSeconds = Arrays.asList(5L, 30L, 120L, 600L, 1800L);
+
+    /**
+     * 按 errcode 配置的重试间隔，单位秒
+     */
+    private Map<Integer, List<Long>> retryDelaysSeconds = new HashMap<>();
+
+    /**
+     * 不重试、直接标记为失败的 errcode（如：openid 无效、用户已取消关注、超出互动窗口）
+     */
+    private Set<Integer> nonRetryableErrcodes = new HashSet<>();
+}
@@ -0,0 +1,20 @@
+package com.github.binarywang.demo.wx.miniapp.config;
+
+import com.github.binarywang.demo.wx.miniapp.ratelimit.CommandRateLimiter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 回调指令限流配置
+ */
+@Configuration
+@EnableConfigurationProperties(RateLimitProperties.class)
+public class RateLimitConfiguration {
+
+    @Bean
+    public CommandRateLimiter commandRateLimiter(RateLimitProperties properties, MeterRegistry meterRegistry) {
+        return new CommandRateLimiter(properties, meterRegistry);
+    }
+}
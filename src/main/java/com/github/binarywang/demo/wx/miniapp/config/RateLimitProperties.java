@@ -0,0 +1,50 @@
+package com.github.binarywang.demo.wx.miniapp.config;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import lombok.Data;
+
+/**
+ * 回调指令限流配置属性（按发送者 wx_id 限流）
+ */
+@Data
+@ConfigurationProperties(prefix = "rate-limit")
+public class RateLimitProperties {
+
+    /**
+     * 最多同时跟踪的令牌桶数量（指令 + wx_id），超出后淘汰最久未使用的
+     */
+    private long maxBuckets = 100_000;
+
+    /**
+     * 令牌桶闲置多久后过期，单位分钟
+     */
+    private long expireAfterAccessMinutes = 30;
+
+    /**
+     * 未单独配置的指令使用的限流规则
+     */
+    private Limit defaultLimit = new Limit();
+
+    /**
+     * 按指令配置的限流规则，key 为指令名（如：weather、image）
+     */
+    private Map<String, Limit> commands = new HashMap<>();
+
+    @Data
+    public static class Limit {
+        /**
+         * 桶容量，即允许的突发次数
+         */
+        private int capacity = 3;
+
+        /**
+         * 每分钟补充的令牌数
+         */
+        private int refillPerMinute = 6;
+    }
+
+}
@@ -0,0 +1,21 @@
+package com.github.binarywang.demo.wx.miniapp.config;
+
+import com.github.binarywang.demo.wx.miniapp.delivery.TemplateDeliveryIndex;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 模板消息送达索引配置
+ */
+@Configuration
+@EnableConfigurationProperties(TemplateDeliveryProperties.class)
+public class TemplateDeliveryConfiguration {
+
+    @Bean
+    public TemplateDeliveryIndex templateDeliveryIndex(TemplateDeliveryProperties properties,
+                                                       MeterRegistry meterRegistry) {
+        return new TemplateDeliveryIndex(properties.getRetentionHours(), properties.getBucketMinutes(), meterRegistry);
+    }
+}
@@ -0,0 +1,23 @@
+package com.github.binarywang.demo.wx.miniapp.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import lombok.Data;
+
+/**
+ * 模板消息送达索引配置属性（msgId 与活动、接收者的对应关系，由 TEMPLATESENDJOBFINISH 事件更新送达状态）
+ */
+@Data
+@ConfigurationProperties(prefix = "template-delivery")
+public class TemplateDeliveryProperties {
+
+    /**
+     * 发送记录保留多久，单位小时；之后收到的事件无法再对应到活动
+     */
+    private long retentionHours = 72;
+
+    /**
+     * 按发送时间分桶，每桶的时长，单位分钟；过期时整桶丢弃
+     */
+    private int bucketMinutes = 60;
+}
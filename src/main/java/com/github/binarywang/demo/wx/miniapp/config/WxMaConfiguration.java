@@ -8,11 +8,13 @@ import cn.binarywang.wx.miniapp.config.impl.WxMaDefaultConfigImpl;
 import cn.binarywang.wx.miniapp.config.impl.WxMaRedisConfigImpl;
 import cn.binarywang.wx.miniapp.message.WxMaMessageHandler;
 import cn.binarywang.wx.miniapp.message.WxMaMessageRouter;
+import com.github.binarywang.demo.wx.miniapp.utils.http.SharedOkHttpWxMaServiceImpl;
 import com.google.common.collect.Lists;
 import lombok.extern.slf4j.Slf4j;
 import me.chanjar.weixin.common.bean.result.WxMediaUploadResult;
 import me.chanjar.weixin.common.error.WxErrorException;
 import me.chanjar.weixin.common.error.WxRuntimeException;
+import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
@@ -28,13 +30,15 @@ import java.util.stream.Collectors;
  */
 @Slf4j
 @Configuration
-@EnableConfigurationProperties(WxMaProperties.class)
+@EnableConfigurationProperties({WxMaProperties.class, HttpClientProperties.class})
 public class WxMaConfiguration {
     private final WxMaProperties properties;
+    private final HttpClientProperties httpClientProperties;
 
     @Autowired
-    public WxMaConfiguration(WxMaProperties properties) {
+    public WxMaConfiguration(WxMaProperties properties, HttpClientProperties httpClientProperties) {
         this.properties = properties;
+        this.httpClientProperties = httpClientProperties;
     }
 
     @Bean
@@ -43,7 +47,9 @@ public class WxMaConfiguration {
         if (configs == null) {
             throw new WxRuntimeException("大哥，拜托先看下项目首页的说明（readme文件），添加下相关配置，注意别配错了！");
         }
-        WxMaService maService = new WxMaServiceImpl();
+        String wechatProfile = httpClientProperties.getWechatProfile();
+        WxMaService maService = StringUtils.isNotBlank(wechatProfile)
+            ? new SharedOkHttpWxMaServiceImpl(wechatProfile) : new WxMaServiceImpl();
         maService.setMultiConfigs(
             configs.stream()
                 .map(a -> {
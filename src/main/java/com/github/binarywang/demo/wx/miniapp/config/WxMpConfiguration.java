@@ -1,8 +1,10 @@
 package com.github.binarywang.demo.wx.miniapp.config;
 
+import com.github.binarywang.demo.wx.miniapp.utils.http.SharedOkHttpWxMpServiceImpl;
 import me.chanjar.weixin.mp.api.WxMpService;
 import me.chanjar.weixin.mp.api.impl.WxMpServiceImpl;
 import me.chanjar.weixin.mp.config.impl.WxMpDefaultConfigImpl;
+import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
@@ -16,20 +18,24 @@ import java.util.stream.Collectors;
  * @author <a href="https://github.com/binarywang">Binary Wang</a>
  */
 @Configuration
-@EnableConfigurationProperties(WxMpProperties.class)
+@EnableConfigurationProperties({WxMpProperties.class, HttpClientProperties.class})
 public class WxMpConfiguration {
     private final WxMpProperties properties;
+    private final HttpClientProperties httpClientProperties;
 
     @Autowired
-    public WxMpConfiguration(WxMpProperties properties) {
+    public WxMpConfiguration(WxMpProperties properties, HttpClientProperties httpClientProperties) {
         this.properties = properties;
+        this.httpClientProperties = httpClientProperties;
     }
 
     @Bean
     public WxMpService wxMpService() {
         List<WxMpProperties.Config> configs = this.properties.getConfigs();
         // 允许配置为空，但会在运行时检查
-        WxMpService mpService = new WxMpServiceImpl();
+        String wechatProfile = httpClientProperties.getWechatProfile();
+        WxMpService mpService = StringUtils.isNotBlank(wechatProfile)
+            ? new SharedOkHttpWxMpServiceImpl(wechatProfile) : new WxMpServiceImpl();
         if (configs != null && !configs.isEmpty()) {
             mpService.setMultiConfigStorages(
                 configs.stream()
@@ -0,0 +1,69 @@
+package com.github.binarywang.demo.wx.miniapp.controller;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Value;
+import lombok.With;
+
+/**
+ * <pre>
+ * 控制器统一返回结果（不可变）
+ *
+ * 直接作为接口返回值，由 Spring 的 Jackson 转换器写入响应流；为 null 的字段不输出，
+ * 例如成功时只有 success、message（及 data），失败时只有 success、error。
+ * </pre>
+ *
+ * @param <T> data 的类型，没有 data 时为 {@link Void}
+ */
+@Value
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public class ApiResult<T> {
+    Boolean success;
+    String message;
+    String error;
+    @With
+    String note;
+    T data;
+
+    public static <T> ApiResult<T> success(String message) {
+        return new ApiResult<>(true, message, null, null, null);
+    }
+
+    public static <T> ApiResult<T> success(String message, T data) {
+        return new ApiResult<>(true, message, null, null, data);
+    }
+
+    /**
+     * 成功，只返回 data、不带 message
+     */
+    public static <T> ApiResult<T> successData(T data) {
+        return new ApiResult<>(true, null, null, null, data);
+    }
+
+    public static <T> ApiResult<T> failure(String error) {
+        return new ApiResult<>(false, null, error, null, null);
+    }
+
+    /**
+     * 由调用结果决定 success，只带提示信息
+     */
+    public static <T> ApiResult<T> of(boolean success, String message) {
+        return new ApiResult<>(success, message, null, null, null);
+    }
+
+    /**
+     * 只返回 data，不带 success 标记（兼容用户列表接口原有的返回格式）
+     */
+    public static <T> ApiResult<T> data(T data) {
+        return new ApiResult<>(null, null, null, null, data);
+    }
+
+    /**
+     * 只返回 error，不带 success 标记（兼容用户列表接口原有的返回格式）
+     */
+    public static <T> ApiResult<T> error(String error) {
+        return new ApiResult<>(null, null, error, null, null);
+    }
+}
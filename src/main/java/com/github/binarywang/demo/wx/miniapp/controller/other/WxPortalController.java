@@ -5,12 +5,21 @@ import cn.binarywang.wx.miniapp.bean.WxMaMessage;
 import cn.binarywang.wx.miniapp.constant.WxMaConstants;
 import cn.binarywang.wx.miniapp.message.WxMaMessageRouter;
 import cn.binarywang.wx.miniapp.util.WxMaConfigHolder;
+import cn.binarywang.wx.miniapp.util.crypt.WxMaCryptUtils;
+import com.github.binarywang.demo.wx.miniapp.config.InteractionWindowProperties;
+import com.github.binarywang.demo.wx.miniapp.delivery.TemplateDeliveryIndex;
+import com.github.binarywang.demo.wx.miniapp.interaction.InteractionWindowIndex;
+import com.github.binarywang.demo.wx.miniapp.logging.AccessLogger;
+import com.github.binarywang.demo.wx.miniapp.mass.MassStatusIndex;
+import com.github.binarywang.demo.wx.miniapp.utils.JsonUtils;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.Map;
 import java.util.Objects;
+import java.util.function.Supplier;
 
 /**
  * @author <a href="https://github.com/binarywang">Binary Wang</a>
@@ -22,6 +31,11 @@ import java.util.Objects;
 public class WxPortalController {
     private final WxMaService wxMaService;
     private final WxMaMessageRouter wxMaMessageRouter;
+    private final AccessLogger accessLogger;
+    private final InteractionWindowIndex interactionWindowIndex;
+    private final InteractionWindowProperties interactionWindowProperties;
+    private final MassStatusIndex massStatusIndex;
+    private final TemplateDeliveryIndex templateDeliveryIndex;
 
     @GetMapping(produces = "text/plain;charset=utf-8")
     public String authGet(@PathVariable String appid,
@@ -56,9 +70,15 @@ public class WxPortalController {
                        @RequestParam(name = "signature", required = false) String signature,
                        @RequestParam("timestamp") String timestamp,
                        @RequestParam("nonce") String nonce) {
-        log.info("\n接收微信请求：[msg_signature=[{}], encrypt_type=[{}], signature=[{}]," +
-                " timestamp=[{}], nonce=[{}], requestBody=[\n{}\n] ",
-            msgSignature, encryptType, signature, timestamp, nonce, requestBody);
+        accessLogger.event("POST /wx/portal")
+            .field("appid", appid)
+            .field("msg_signature", msgSignature)
+            .field("encrypt_type", encryptType)
+            .field("signature", signature)
+            .field("timestamp", timestamp)
+            .field("nonce", nonce)
+            .field("requestBody", requestBody)
+            .submit();
 
         if (!wxMaService.switchover(appid)) {
             throw new IllegalArgumentException(String.format("未找到对应appid=[%s]的配置，请核实！", appid));
@@ -75,7 +95,7 @@ public class WxPortalController {
                 inMessage = WxMaMessage.fromXml(requestBody);
             }
 
-            this.route(inMessage);
+            this.route(appid, inMessage, () -> isJson ? JsonUtils.parseObject(requestBody) : inMessage.getAllFieldsMap());
             WxMaConfigHolder.remove();//清理ThreadLocal
             return "success";
         }
@@ -90,7 +110,10 @@ public class WxPortalController {
                     timestamp, nonce, msgSignature);
             }
 
-            this.route(inMessage);
+            this.route(appid, inMessage, () -> isJson
+                ? JsonUtils.parseObject(new WxMaCryptUtils(wxMaService.getWxMaConfig())
+                    .decrypt(WxMaMessage.fromJson(requestBody).getEncrypt()))
+                : inMessage.getAllFieldsMap());
             WxMaConfigHolder.remove();//清理ThreadLocal
             return "success";
         }
@@ -98,7 +121,32 @@ public class WxPortalController {
         throw new RuntimeException("不可识别的加密类型：" + encryptType);
     }
 
-    private void route(WxMaMessage message) {
+    /**
+     * @param fields 消息的全部字段，只在需要 WxMaMessage 之外的字段（如群发结果事件的各项数量、模板消息送达事件的 MsgID）时才解析
+     */
+    private void route(String appid, WxMaMessage message, Supplier<Map<String, Object>> fields) {
+        if (interactionWindowProperties.isEnabled()
+            && InteractionWindowIndex.isInteraction(message.getMsgType(), message.getEvent())) {
+            Integer createTime = message.getCreateTime();
+            interactionWindowIndex.record(appid, message.getFromUser(), createTime == null ? null : createTime.longValue());
+        }
+
+        if (MassStatusIndex.isMassSendJobFinish(message.getMsgType(), message.getEvent())) {
+            try {
+                massStatusIndex.onJobFinish(appid, fields.get());
+            } catch (Exception e) {
+                log.error("处理群发结果事件失败: {}", e.getMessage(), e);
+            }
+        }
+
+        if (TemplateDeliveryIndex.isTemplateSendJobFinish(message.getMsgType(), message.getEvent())) {
+            try {
+                templateDeliveryIndex.onSendJobFinish(appid, fields.get());
+            } catch (Exception e) {
+                log.error("处理模板消息送达事件失败: {}", e.getMessage(), e);
+            }
+        }
+
         try {
             wxMaMessageRouter.route(message);
         } catch (Exception e) {
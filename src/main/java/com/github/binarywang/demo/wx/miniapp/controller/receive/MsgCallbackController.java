@@ -1,10 +1,12 @@
 package com.github.binarywang.demo.wx.miniapp.controller.receive;
 
-import com.alibaba.fastjson.JSON;
-import com.alibaba.fastjson.JSONObject;
 import javax.servlet.http.HttpServletRequest;
 import org.apache.commons.lang3.StringUtils;
+import com.github.binarywang.demo.wx.miniapp.dedup.DedupStore;
+import com.github.binarywang.demo.wx.miniapp.logging.AccessLogger;
+import com.github.binarywang.demo.wx.miniapp.ratelimit.CommandRateLimiter;
 import com.github.binarywang.demo.wx.miniapp.utils.HttpUtil;
+import com.github.binarywang.demo.wx.miniapp.utils.JsonUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.MediaType;
@@ -20,10 +22,10 @@ import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Objects;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * 通用回调接收接口（用于第三方 webhook / 回调推送）。
@@ -38,10 +40,20 @@ public class MsgCallbackController {
     private static final String WEATHER_COMMAND = "#指令-天气";
     private static final String IMAGE_COMMAND = "#指令-图片";
     private static final long DEDUP_TTL_MS = 5_000L;
-    private static final ConcurrentHashMap<String, Long> DEDUP_REQ_CONTENT = new ConcurrentHashMap<>();
-    private static final ConcurrentHashMap<String, Long> DEDUP_RESP_MSG = new ConcurrentHashMap<>();
-    private static final ConcurrentHashMap<String, Long> DEDUP_OUTBOUND_REQ = new ConcurrentHashMap<>();
-    private static final AtomicLong LAST_CLEANUP_MS = new AtomicLong(0L);
+    private static final String DEDUP_REQ_CONTENT = "req";
+    private static final String DEDUP_RESP_MSG = "resp";
+    private static final String DEDUP_OUTBOUND_REQ = "out";
+
+    private final AccessLogger accessLogger;
+    private final DedupStore dedupStore;
+    private final CommandRateLimiter commandRateLimiter;
+
+    public MsgCallbackController(AccessLogger accessLogger, DedupStore dedupStore,
+                                 CommandRateLimiter commandRateLimiter) {
+        this.accessLogger = accessLogger;
+        this.dedupStore = dedupStore;
+        this.commandRateLimiter = commandRateLimiter;
+    }
 
     /**
      * 兼容部分平台的回调“连通性校验/握手”。
@@ -52,11 +64,11 @@ public class MsgCallbackController {
                          @RequestHeader(required = false) Map<String, String> headers,
                          HttpServletRequest request) {
         Map<String, String> safeParams = (params == null) ? Collections.emptyMap() : params;
-        Map<String, String> safeHeaders = sanitizeHeaders(headers);
-        logger.info("GET /msg callback verify. remote={}, params={}, headers={}",
-                request.getRemoteAddr(),
-                JSON.toJSONString(safeParams),
-                JSON.toJSONString(safeHeaders));
+        accessLogger.event("GET /msg")
+                .field("remote", request.getRemoteAddr())
+                .field("params", safeParams)
+                .lazy("headers", () -> sanitizeHeaders(headers))
+                .submit();
 
         // 常见握手字段
         String echo = firstNonBlank(safeParams.get("echostr"), safeParams.get("challenge"));
@@ -76,106 +88,102 @@ public class MsgCallbackController {
                                           HttpServletRequest request) {
 
         Map<String, String> safeParams = (params == null) ? Collections.emptyMap() : params;
-        Map<String, String> safeHeaders = sanitizeHeaders(headers);
-
-        String contentType = Objects.toString(request.getContentType(), "");
-        String userAgent = Objects.toString(request.getHeader("User-Agent"), "");
-        String safeBody = truncate(body, 10_000);
-
-        logger.info("POST /msg callback received. remote={}, contentType={}, ua={}, params={}, headers={}, body={}",
-                request.getRemoteAddr(),
-                contentType,
-                userAgent,
-                JSON.toJSONString(safeParams),
-                JSON.toJSONString(safeHeaders),
-                safeBody);
-
-        // 尝试从 body JSON 中抽取常见字段（仅用于日志定位，不做强校验）
-        tryLogJsonHints(body);
+        // body 只解析一次，后续判断都基于解析结果；不是 JSON 对象时为 null
+        Map<String, Object> json = JsonUtils.parseObject(body);
+
+        // 访问日志：header 脱敏、body 截断、JSON 提示字段抽取都延迟到日志线程里做，不占用请求线程
+        accessLogger.event("POST /msg")
+                .field("remote", request.getRemoteAddr())
+                .field("contentType", Objects.toString(request.getContentType(), ""))
+                .field("ua", Objects.toString(request.getHeader("User-Agent"), ""))
+                .field("params", safeParams)
+                .lazy("headers", () -> sanitizeHeaders(headers))
+                .lazy("body", () -> truncate(body, 10_000))
+                .lazy("hints", () -> extractJsonHints(json))
+                .submit();
 
         // 5秒内：相同 request content 去重（避免重复触发业务逻辑）
-        String requestContent = extractContent(body);
+        String requestContent = extractContent(json);
         if (StringUtils.isNotBlank(requestContent)) {
             String h = sha256Hex(requestContent);
             if (isDuplicateWithinTtl(DEDUP_REQ_CONTENT, h, DEDUP_TTL_MS)) {
                 logger.info("POST /msg dedup hit (request content). ttlMs={}, hash={}, content={}",
                         DEDUP_TTL_MS, h, truncate(requestContent, 200));
-                String challenge = extractChallenge(body, safeParams);
+                String challenge = extractChallenge(json, safeParams);
                 return ResponseEntity.ok(StringUtils.isNotBlank(challenge) ? challenge : "ok");
             }
         }
 
-        // 仅当收到 #指令-天气 且 wx_id=cherfei0611 时，才触发天气接口
-        if (containsWeatherCommand(body)) {
+        // 仅当收到 #指令-天气 且 wx_id=cherfei0611 时，才触发天气接口（异步调用，不等待结果）
+        if (containsWeatherCommand(json) && commandRateLimiter.tryAcquire("weather", extractWxId(json))) {
             try {
-                String weatherResponse = getWeather(body);
-                logger.info("POST /msg weather API called successfully. response={}", weatherResponse);
+                getWeather().whenComplete((weatherResponse, e) -> {
+                    if (e != null) {
+                        logger.error("POST /msg weather API call failed", e);
+                    } else {
+                        logger.info("POST /msg weather API called successfully. response={}", weatherResponse);
+                    }
+                });
             } catch (Exception e) {
                 logger.error("POST /msg weather API call failed", e);
             }
         }
 
-        // 仅当收到 #指令-图片 且 wx_id=cherfei0611 时，才触发图片指令接口
-        if (containsImageCommand(body)) {
+        // 仅当收到 #指令-图片 且 wx_id=cherfei0611 时，才触发图片指令接口（异步调用，不等待结果）
+        if (containsImageCommand(json) && commandRateLimiter.tryAcquire("image", extractWxId(json))) {
             try {
-                String imageResponse = sendImageCommand(body);
-                logger.info("POST /msg image API called successfully. response={}", imageResponse);
+                sendImageCommand(json).whenComplete((imageResponse, e) -> {
+                    if (e != null) {
+                        logger.error("POST /msg image API call failed", e);
+                    } else {
+                        logger.info("POST /msg image API called successfully. response={}", imageResponse);
+                    }
+                });
             } catch (Exception e) {
                 logger.error("POST /msg image API call failed", e);
             }
         }
 
         // 兼容回调握手/挑战（有些平台 POST JSON 返回 challenge）
-        String challenge = extractChallenge(body, safeParams);
+        String challenge = extractChallenge(json, safeParams);
         return ResponseEntity.ok(StringUtils.isNotBlank(challenge) ? challenge : "ok");
     }
 
-    private static void tryLogJsonHints(String body) {
-        if (StringUtils.isBlank(body)) {
-            return;
+    /**
+     * 从 body JSON 中抽取常见字段（仅用于日志定位，不做强校验），不是 JSON 或没有相关字段时返回 null
+     */
+    private static Map<String, String> extractJsonHints(Map<String, Object> json) {
+        if (json == null || json.isEmpty()) {
+            return null;
         }
-        try {
-            JSONObject json = JSONObject.parseObject(body);
-            if (json == null || json.isEmpty()) {
-                return;
-            }
-            String taskId = firstNonBlank(
-                    json.getString("task_id"),
-                    json.getString("taskId"),
-                    json.getString("submit_id"),
-                    json.getString("submitId"),
-                    json.getString("history_id"),
-                    json.getString("historyId")
-            );
-            String status = firstNonBlank(json.getString("status"), json.getString("state"));
-            String type = firstNonBlank(json.getString("type"), json.getString("event"), json.getString("action"));
-
-            if (StringUtils.isNotBlank(taskId) || StringUtils.isNotBlank(status) || StringUtils.isNotBlank(type)) {
-                logger.info("POST /msg parsed hints. taskId={}, status={}, type={}", taskId, status, type);
-            }
-        } catch (Exception ignore) {
-            // body 不是 JSON 或格式不标准，忽略
+        String taskId = firstNonBlank(
+                getString(json, "task_id"),
+                getString(json, "taskId"),
+                getString(json, "submit_id"),
+                getString(json, "submitId"),
+                getString(json, "history_id"),
+                getString(json, "historyId")
+        );
+        String status = firstNonBlank(getString(json, "status"), getString(json, "state"));
+        String type = firstNonBlank(getString(json, "type"), getString(json, "event"), getString(json, "action"));
+
+        if (StringUtils.isBlank(taskId) && StringUtils.isBlank(status) && StringUtils.isBlank(type)) {
+            return null;
         }
+        Map<String, String> hints = new LinkedHashMap<>();
+        hints.put("taskId", taskId);
+        hints.put("status", status);
+        hints.put("type", type);
+        return hints;
     }
 
-    private static String extractChallenge(String body, Map<String, String> params) {
+    private static String extractChallenge(Map<String, Object> json, Map<String, String> params) {
         // query/form 优先
         String byParam = firstNonBlank(params.get("echostr"), params.get("challenge"));
         if (StringUtils.isNotBlank(byParam)) {
             return byParam;
         }
-        if (StringUtils.isBlank(body)) {
-            return null;
-        }
-        try {
-            JSONObject json = JSONObject.parseObject(body);
-            if (json == null) {
-                return null;
-            }
-            return firstNonBlank(json.getString("echostr"), json.getString("challenge"));
-        } catch (Exception ignore) {
-            return null;
-        }
+        return firstNonBlank(getString(json, "echostr"), getString(json, "challenge"));
     }
 
     /**
@@ -214,6 +222,10 @@ public class MsgCallbackController {
         return s.substring(0, maxLen) + "...(truncated," + s.length() + ")";
     }
 
+    private static String getString(Map<String, Object> json, String key) {
+        return JsonUtils.getString(json, key);
+    }
+
     private static String firstNonBlank(String... arr) {
         if (arr == null) {
             return null;
@@ -231,29 +243,16 @@ public class MsgCallbackController {
      * - 回调 body JSON 中 wx_id 必须是 cherfei0611
      * - content/msg/message 必须包含 #指令-天气
      */
-    private static boolean containsWeatherCommand(String body) {
-        if (StringUtils.isBlank(body)) {
+    private static boolean containsWeatherCommand(Map<String, Object> json) {
+        // 非 JSON 则不触发（避免误触）
+        if (json == null) {
             return false;
         }
-        try {
-            JSONObject json = JSONObject.parseObject(body);
-            if (json == null) {
-                return false;
-            }
-            String wxId = firstNonBlank(
-                    json.getString("wx_id"),
-                    json.getString("wxId"),
-                    json.getString("wxid")
-            );
-            if (!StringUtils.equals(wxId, WX_ID_WEATHER)) {
-                return false;
-            }
-            String content = extractContent(json);
-            return StringUtils.isNotBlank(content) && content.contains(WEATHER_COMMAND);
-        } catch (Exception e) {
-            // 非 JSON 则不触发（避免误触）
+        if (!StringUtils.equals(extractWxId(json), WX_ID_WEATHER)) {
             return false;
         }
+        String content = extractContent(json);
+        return StringUtils.isNotBlank(content) && content.contains(WEATHER_COMMAND);
     }
 
     /**
@@ -261,37 +260,24 @@ public class MsgCallbackController {
      * - 回调 body JSON 中 wx_id 必须是 cherfei0611
      * - content/msg/message 必须包含 #指令-图片
      */
-    private static boolean containsImageCommand(String body) {
-        if (StringUtils.isBlank(body)) {
+    private static boolean containsImageCommand(Map<String, Object> json) {
+        // 非 JSON 则不触发（避免误触）
+        if (json == null) {
             return false;
         }
-        try {
-            JSONObject json = JSONObject.parseObject(body);
-            if (json == null) {
-                return false;
-            }
-            String wxId = firstNonBlank(
-                    json.getString("wx_id"),
-                    json.getString("wxId"),
-                    json.getString("wxid")
-            );
-            if (!StringUtils.equals(wxId, WX_ID_WEATHER)) {
-                return false;
-            }
-            String content = extractContent(json);
-            return StringUtils.isNotBlank(content) && content.contains(IMAGE_COMMAND);
-        } catch (Exception e) {
+        if (!StringUtils.equals(extractWxId(json), WX_ID_WEATHER)) {
             return false;
         }
+        String content = extractContent(json);
+        return StringUtils.isNotBlank(content) && content.contains(IMAGE_COMMAND);
     }
 
     /**
      * 调用天气接口获取天气信息并发送
      *
-     * @param callbackBody 回调消息的原始 body
      * @return 天气接口的响应内容
      */
-    private static String getWeather(String callbackBody) {
+    private CompletableFuture<String> getWeather() {
         String apiUrl = "http://127.0.0.1:8989/api";
         
         try {
@@ -309,16 +295,16 @@ public class MsgCallbackController {
                     "空气质量：良/轻度污染，建议佩戴口罩";
 
             // 构造请求体
-            JSONObject requestBody = new JSONObject();
+            Map<String, Object> requestBody = new LinkedHashMap<>();
             requestBody.put("type", 7);
             requestBody.put("wx_id", wxId);
             requestBody.put("msg", weatherMsg);
 
             // 5秒内：相同 outbound request 去重（避免重复发送）
-            String requestBodyStr = requestBody.toJSONString();
+            String requestBodyStr = JsonUtils.toJson(requestBody);
             if (isDuplicateWithinTtl(DEDUP_OUTBOUND_REQ, sha256Hex(requestBodyStr), DEDUP_TTL_MS)) {
                 logger.info("url={}, requestBody={}, dedup=hit(ttlMs={})", apiUrl, requestBodyStr, DEDUP_TTL_MS);
-                return "dedup_skipped";
+                return CompletableFuture.completedFuture("dedup_skipped");
             }
 
             // 5秒内：相同 response msg 去重（避免重复发送）
@@ -326,18 +312,18 @@ public class MsgCallbackController {
             if (isDuplicateWithinTtl(DEDUP_RESP_MSG, msgHash, DEDUP_TTL_MS)) {
                 logger.info("url={}, requestBody={}, dedup=hit(ttlMs={}, msgHash={})",
                         apiUrl, requestBodyStr, DEDUP_TTL_MS, msgHash);
-                return "dedup_skipped";
+                return CompletableFuture.completedFuture("dedup_skipped");
             }
 
             logger.info("url={}, requestBody={}", apiUrl, requestBodyStr);
 
             // 调用天气接口
-            byte[] responseBytes = HttpUtil.postBytes(apiUrl, requestBodyStr);
-            String response = new String(responseBytes, StandardCharsets.UTF_8);
-            
-            logger.info("POST /msg weather API response. response={}", response);
-            return response;
-            
+            return HttpUtil.postBytesAsync(apiUrl, requestBodyStr).thenApply(responseBytes -> {
+                String response = new String(responseBytes, StandardCharsets.UTF_8);
+                logger.info("POST /msg weather API response. response={}", response);
+                return response;
+            });
+
         } catch (Exception e) {
             logger.error("POST /msg getWeather failed", e);
             throw new RuntimeException("调用天气接口失败: " + e.getMessage(), e);
@@ -355,66 +341,47 @@ public class MsgCallbackController {
      * }
      * </pre>
      */
-    private static String sendImageCommand(String callbackBody) {
+    private CompletableFuture<String> sendImageCommand(Map<String, Object> callbackJson) {
         String apiUrl = "http://127.0.0.1:8989/api";
         try {
             String wxId = WX_ID_WEATHER; // 强制
             
             // 尝试从回调body中提取path
-            String path = null;
-            if (StringUtils.isNotBlank(callbackBody)) {
-                try {
-                    JSONObject callbackJson = JSONObject.parseObject(callbackBody);
-                    path = extractPath(callbackJson);
-                } catch (Exception e) {
-                    logger.warn("Failed to parse callback body for path extraction", e);
-                }
-            }
+            String path = extractPath(callbackJson);
             
             // 如果无法从回调中提取，使用默认路径
             if (StringUtils.isBlank(path)) {
                 path = "C:\\Users\\Administrator\\Downloads\\生鲜海报-产品组合-原图002.png";
             }
             
-            JSONObject requestBody = new JSONObject();
+            Map<String, Object> requestBody = new LinkedHashMap<>();
             requestBody.put("type", 8);
             requestBody.put("wx_id", wxId);
             requestBody.put("path", path);
-            String requestBodyStr = requestBody.toJSONString();
+            String requestBodyStr = JsonUtils.toJson(requestBody);
             if (isDuplicateWithinTtl(DEDUP_OUTBOUND_REQ, sha256Hex(requestBodyStr), DEDUP_TTL_MS)) {
                 logger.info("url={}, requestBody={}, dedup=hit(ttlMs={})", apiUrl, requestBodyStr, DEDUP_TTL_MS);
-                return "dedup_skipped";
+                return CompletableFuture.completedFuture("dedup_skipped");
             }
 
             logger.info("url={}, requestBody={}", apiUrl, requestBodyStr);
-            byte[] responseBytes = HttpUtil.postBytes(apiUrl, requestBodyStr);
-            return new String(responseBytes, StandardCharsets.UTF_8);
+            return HttpUtil.postBytesAsync(apiUrl, requestBodyStr)
+                    .thenApply(responseBytes -> new String(responseBytes, StandardCharsets.UTF_8));
         } catch (Exception e) {
             logger.error("POST /msg sendImageCommand failed", e);
             throw new RuntimeException("调用图片接口失败: " + e.getMessage(), e);
         }
     }
 
-    private static String extractContent(String body) {
-        if (StringUtils.isBlank(body)) {
-            return null;
-        }
-        try {
-            JSONObject json = JSONObject.parseObject(body);
-            return extractContent(json);
-        } catch (Exception ignore) {
-            return null;
-        }
+    private static String extractWxId(Map<String, Object> json) {
+        return firstNonBlank(getString(json, "wx_id"), getString(json, "wxId"), getString(json, "wxid"));
     }
 
-    private static String extractContent(JSONObject json) {
-        if (json == null) {
-            return null;
-        }
+    private static String extractContent(Map<String, Object> json) {
         return firstNonBlank(
-                json.getString("content"),
-                json.getString("msg"),
-                json.getString("message")
+                getString(json, "content"),
+                getString(json, "msg"),
+                getString(json, "message")
         );
     }
 
@@ -422,11 +389,11 @@ public class MsgCallbackController {
      * 优先读取回调 JSON 的 path 字段；否则尝试从 content 里解析：
      * "#指令-图片 <path>"
      */
-    private static String extractPath(JSONObject callbackJson) {
+    private static String extractPath(Map<String, Object> callbackJson) {
         if (callbackJson == null) {
             return null;
         }
-        String path = firstNonBlank(callbackJson.getString("path"), callbackJson.getString("file"), callbackJson.getString("filePath"));
+        String path = firstNonBlank(getString(callbackJson, "path"), getString(callbackJson, "file"), getString(callbackJson, "filePath"));
         if (StringUtils.isNotBlank(path)) {
             return StringUtils.trim(path);
         }
@@ -442,46 +409,14 @@ public class MsgCallbackController {
     }
 
     /**
-     * 原子判重：同一个 hash 在 ttlMs 内重复出现，返回 true；否则写入 now 并返回 false。
+     * 原子判重：同一个 hash 在 ttlMs 内重复出现，返回 true；否则记录并返回 false。
+     * 具体存储由 {@link DedupStore} 决定（本地或 Redis 共享）。
      */
-    private static boolean isDuplicateWithinTtl(ConcurrentHashMap<String, Long> cache, String hash, long ttlMs) {
-        if (cache == null || StringUtils.isBlank(hash) || ttlMs <= 0) {
+    private boolean isDuplicateWithinTtl(String namespace, String hash, long ttlMs) {
+        if (StringUtils.isBlank(hash) || ttlMs <= 0) {
             return false;
         }
-        long now = System.currentTimeMillis();
-        maybeCleanup(now);
-        final boolean[] dup = {false};
-        cache.compute(hash, (k, last) -> {
-            if (last != null && (now - last) < ttlMs) {
-                dup[0] = true;
-                return last;
-            }
-            return now;
-        });
-        return dup[0];
-    }
-
-    /**
-     * 轻量清理：每隔 ttl 触发一次，移除过期项，避免缓存无限增长。
-     */
-    private static void maybeCleanup(long now) {
-        long last = LAST_CLEANUP_MS.get();
-        if ((now - last) < DEDUP_TTL_MS) {
-            return;
-        }
-        if (!LAST_CLEANUP_MS.compareAndSet(last, now)) {
-            return;
-        }
-        cleanupMap(DEDUP_REQ_CONTENT, now);
-        cleanupMap(DEDUP_RESP_MSG, now);
-        cleanupMap(DEDUP_OUTBOUND_REQ, now);
-    }
-
-    private static void cleanupMap(ConcurrentHashMap<String, Long> map, long now) {
-        if (map == null || map.isEmpty()) {
-            return;
-        }
-        map.entrySet().removeIf(e -> e.getValue() == null || (now - e.getValue()) >= DEDUP_TTL_MS);
+        return dedupStore.isDuplicate(namespace, hash, ttlMs);
     }
 
     private static String sha256Hex(String input) {
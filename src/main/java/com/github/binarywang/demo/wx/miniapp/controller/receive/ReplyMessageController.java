@@ -1,5 +1,7 @@
 package com.github.binarywang.demo.wx.miniapp.controller.receive;
 
+import com.github.binarywang.demo.wx.miniapp.controller.send.SendMessageWithTemplateController;
+import com.github.binarywang.demo.wx.miniapp.delivery.TemplateDeliveryIndex;
 import com.github.binarywang.demo.wx.miniapp.utils.JsonUtils;
 import lombok.AllArgsConstructor;
 import lombok.Data;
@@ -15,7 +17,6 @@ import me.chanjar.weixin.mp.bean.message.WxMpXmlOutVoiceMessage;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.web.bind.annotation.*;
 
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -34,6 +35,7 @@ import java.util.Map;
 @RequestMapping("/wx/reply/{appid}")
 public class ReplyMessageController {
     private final WxMpService wxMpService;
+    private final TemplateDeliveryIndex deliveryIndex;
 
     /**
      * <pre>
@@ -424,25 +426,11 @@ public class ReplyMessageController {
             // 2. 发送模板消息（异步，不阻塞回复）
             if (request.getTemplateMessage() != null) {
                 try {
-                    com.github.binarywang.demo.wx.miniapp.controller.send.SendMessageWithTemplateController.TemplateMessageRequest templateMsg = 
-                        request.getTemplateMessage();
-                    
-                    me.chanjar.weixin.mp.bean.template.WxMpTemplateMessage templateMessage = 
-                        me.chanjar.weixin.mp.bean.template.WxMpTemplateMessage.builder()
-                        .toUser(templateMsg.getToUser())
-                        .templateId(templateMsg.getTemplateId())
-                        .url(templateMsg.getUrl())
-                        .miniProgram(templateMsg.getMiniProgram())
-                        .build();
-
-                    List<me.chanjar.weixin.mp.bean.template.WxMpTemplateData> templateDataList = new ArrayList<>();
-                    for (Map.Entry<String, String> entry : templateMsg.getData().entrySet()) {
-                        templateDataList.add(new me.chanjar.weixin.mp.bean.template.WxMpTemplateData(
-                            entry.getKey(), entry.getValue(), templateMsg.getColor()));
-                    }
-                    templateMessage.setData(templateDataList);
-
-                    String msgId = wxMpService.getTemplateMsgService().sendTemplateMsg(templateMessage);
+                    SendMessageWithTemplateController.TemplateMessageRequest templateMsg = request.getTemplateMessage();
+
+                    String msgId = wxMpService.getTemplateMsgService().sendTemplateMsg(
+                        SendMessageWithTemplateController.buildTemplateMessage(templateMsg));
+                    deliveryIndex.sent(appid, templateMsg.getCampaignId(), templateMsg.getToUser(), msgId);
                     log.info("模板消息发送成功，msgId={}", msgId);
                 } catch (Exception e) {
                     log.error("发送模板消息失败: {}", e.getMessage());
@@ -1,7 +1,11 @@
 package com.github.binarywang.demo.wx.miniapp.controller.resources;
 
-import com.github.binarywang.demo.wx.miniapp.utils.JsonUtils;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.github.binarywang.demo.wx.miniapp.controller.ApiResult;
+import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
 import me.chanjar.weixin.common.api.WxConsts;
 import me.chanjar.weixin.common.bean.result.WxMediaUploadResult;
@@ -18,8 +22,8 @@ import javax.servlet.http.HttpServletRequest;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -45,8 +49,8 @@ public class ResourcesManageController {
      * </pre>
      */
     @PostMapping("/temp/upload")
-    public String uploadTempMedia(@PathVariable String appid,
-                                  HttpServletRequest request) {
+    public MediaUploadResponse uploadTempMedia(@PathVariable String appid,
+                                               HttpServletRequest request) {
         try {
             validateAppid(appid);
 
@@ -63,8 +67,7 @@ public class ResourcesManageController {
             }
 
             Iterator<String> it = multiRequest.getFileNames();
-            Map<String, Object> result = new HashMap<>();
-            ArrayList<Map<String, Object>> mediaList = new ArrayList<>();
+            List<MediaItem> mediaList = new ArrayList<>();
 
             while (it.hasNext()) {
                 try {
@@ -75,12 +78,12 @@ public class ResourcesManageController {
 
                     WxMediaUploadResult uploadResult = wxMpService.getMaterialService().mediaUpload(mediaType, tempFile);
                     
-                    Map<String, Object> mediaInfo = new HashMap<>();
-                    mediaInfo.put("mediaId", uploadResult.getMediaId());
-                    mediaInfo.put("type", uploadResult.getType());
-                    mediaInfo.put("createdAt", uploadResult.getCreatedAt());
-                    mediaInfo.put("url", uploadResult.getUrl());
-                    mediaList.add(mediaInfo);
+                    mediaList.add(MediaItem.builder()
+                        .mediaId(uploadResult.getMediaId())
+                        .type(uploadResult.getType())
+                        .createdAt(uploadResult.getCreatedAt())
+                        .url(uploadResult.getUrl())
+                        .build());
 
                     log.info("上传临时素材成功，mediaId={}, type={}, createdAt={}", 
                         uploadResult.getMediaId(), uploadResult.getType(), uploadResult.getCreatedAt());
@@ -95,18 +98,13 @@ public class ResourcesManageController {
                 }
             }
 
-            result.put("success", true);
-            result.put("mediaList", mediaList);
-            result.put("count", mediaList.size());
-            result.put("message", "上传临时素材成功");
-
-            return JsonUtils.toJson(result);
+            return MediaUploadResponse.success("上传临时素材成功", mediaList);
         } catch (WxErrorException e) {
             log.error("上传临时素材失败: {}", e.getMessage(), e);
-            return buildErrorResult(e.getMessage());
+            return MediaUploadResponse.failure(e.getMessage());
         } catch (Exception e) {
             log.error("上传临时素材异常: {}", e.getMessage(), e);
-            return buildErrorResult(e.getMessage());
+            return MediaUploadResponse.failure(e.getMessage());
         }
     }
 
@@ -149,8 +147,8 @@ public class ResourcesManageController {
      * </pre>
      */
     @PostMapping("/permanent/uploadImage")
-    public String uploadPermanentImage(@PathVariable String appid,
-                                       HttpServletRequest request) {
+    public MediaUploadResponse uploadPermanentImage(@PathVariable String appid,
+                                                    HttpServletRequest request) {
         try {
             validateAppid(appid);
 
@@ -162,8 +160,7 @@ public class ResourcesManageController {
 
             MultipartHttpServletRequest multiRequest = (MultipartHttpServletRequest) request;
             Iterator<String> it = multiRequest.getFileNames();
-            Map<String, Object> result = new HashMap<>();
-            ArrayList<Map<String, Object>> mediaList = new ArrayList<>();
+            List<MediaItem> mediaList = new ArrayList<>();
 
             while (it.hasNext()) {
                 try {
@@ -175,10 +172,10 @@ public class ResourcesManageController {
                     Object imgUploadResult = wxMpService.getMaterialService().mediaImgUpload(tempFile);
                     String url = imgUploadResult.toString(); // 简化处理
                     
-                    Map<String, Object> mediaInfo = new HashMap<>();
-                    mediaInfo.put("url", url);
-                    mediaInfo.put("originalFilename", file.getOriginalFilename());
-                    mediaList.add(mediaInfo);
+                    mediaList.add(MediaItem.builder()
+                        .url(url)
+                        .originalFilename(file.getOriginalFilename())
+                        .build());
 
                     log.info("上传永久图片成功，url={}", url);
 
@@ -192,18 +189,13 @@ public class ResourcesManageController {
                 }
             }
 
-            result.put("success", true);
-            result.put("mediaList", mediaList);
-            result.put("count", mediaList.size());
-            result.put("message", "上传永久图片成功");
-
-            return JsonUtils.toJson(result);
+            return MediaUploadResponse.success("上传永久图片成功", mediaList);
         } catch (WxErrorException e) {
             log.error("上传永久图片失败: {}", e.getMessage(), e);
-            return buildErrorResult(e.getMessage());
+            return MediaUploadResponse.failure(e.getMessage());
         } catch (Exception e) {
             log.error("上传永久图片异常: {}", e.getMessage(), e);
-            return buildErrorResult(e.getMessage());
+            return MediaUploadResponse.failure(e.getMessage());
         }
     }
 
@@ -213,8 +205,8 @@ public class ResourcesManageController {
      * </pre>
      */
     @PostMapping("/permanent/upload")
-    public String uploadPermanentMedia(@PathVariable String appid,
-                                       HttpServletRequest request) {
+    public MediaUploadResponse uploadPermanentMedia(@PathVariable String appid,
+                                                    HttpServletRequest request) {
         try {
             validateAppid(appid);
 
@@ -231,8 +223,7 @@ public class ResourcesManageController {
             }
 
             Iterator<String> it = multiRequest.getFileNames();
-            Map<String, Object> result = new HashMap<>();
-            ArrayList<Map<String, Object>> mediaList = new ArrayList<>();
+            List<MediaItem> mediaList = new ArrayList<>();
 
             while (it.hasNext()) {
                 try {
@@ -255,10 +246,10 @@ public class ResourcesManageController {
                     
                     uploadResult = wxMpService.getMaterialService().materialFileUpload(mediaType, material);
                     
-                    Map<String, Object> mediaInfo = new HashMap<>();
-                    mediaInfo.put("mediaId", uploadResult.getMediaId());
-                    mediaInfo.put("url", uploadResult.getUrl());
-                    mediaList.add(mediaInfo);
+                    mediaList.add(MediaItem.builder()
+                        .mediaId(uploadResult.getMediaId())
+                        .url(uploadResult.getUrl())
+                        .build());
 
                     log.info("上传永久素材成功，mediaId={}, url={}", uploadResult.getMediaId(), uploadResult.getUrl());
 
@@ -272,18 +263,13 @@ public class ResourcesManageController {
                 }
             }
 
-            result.put("success", true);
-            result.put("mediaList", mediaList);
-            result.put("count", mediaList.size());
-            result.put("message", "上传永久素材成功");
-
-            return JsonUtils.toJson(result);
+            return MediaUploadResponse.success("上传永久素材成功", mediaList);
         } catch (WxErrorException e) {
             log.error("上传永久素材失败: {}", e.getMessage(), e);
-            return buildErrorResult(e.getMessage());
+            return MediaUploadResponse.failure(e.getMessage());
         } catch (Exception e) {
             log.error("上传永久素材异常: {}", e.getMessage(), e);
-            return buildErrorResult(e.getMessage());
+            return MediaUploadResponse.failure(e.getMessage());
         }
     }
 
@@ -293,8 +279,8 @@ public class ResourcesManageController {
      * </pre>
      */
     @PostMapping("/permanent/uploadNews")
-    public String uploadPermanentNews(@PathVariable String appid,
-                                      @RequestBody WxMpMaterialNews news) {
+    public ApiResult<MediaIdData> uploadPermanentNews(@PathVariable String appid,
+                                                      @RequestBody WxMpMaterialNews news) {
         try {
             validateAppid(appid);
 
@@ -308,20 +294,13 @@ public class ResourcesManageController {
 
             log.info("上传永久图文素材成功，mediaId={}", result.getMediaId());
 
-            Map<String, Object> response = new HashMap<>();
-            Map<String, Object> data = new HashMap<>();
-            data.put("mediaId", result.getMediaId());
-            response.put("success", true);
-            response.put("data", data);
-            response.put("message", "上传永久图文素材成功");
-
-            return JsonUtils.toJson(response);
+            return ApiResult.success("上传永久图文素材成功", new MediaIdData(result.getMediaId()));
         } catch (WxErrorException e) {
             log.error("上传永久图文素材失败: {}", e.getMessage(), e);
-            return buildErrorResult(e.getMessage());
+            return ApiResult.failure(e.getMessage());
         } catch (Exception e) {
             log.error("上传永久图文素材异常: {}", e.getMessage(), e);
-            return buildErrorResult(e.getMessage());
+            return ApiResult.failure(e.getMessage());
         }
     }
 
@@ -331,8 +310,8 @@ public class ResourcesManageController {
      * </pre>
      */
     @GetMapping("/permanent/get/{mediaId}")
-    public String getPermanentMedia(@PathVariable String appid,
-                                    @PathVariable String mediaId) {
+    public ApiResult<Void> getPermanentMedia(@PathVariable String appid,
+                                             @PathVariable String mediaId) {
         try {
             validateAppid(appid);
 
@@ -349,19 +328,14 @@ public class ResourcesManageController {
             java.io.InputStream materialStream = wxMpService.getMaterialService().materialImageOrVoiceDownload(mediaId);
             log.info("获取永久素材成功，mediaId={}, stream available={}", mediaId, materialStream != null);
 
-            Map<String, Object> response = new HashMap<>();
-            response.put("type", "stream");
-            response.put("success", true);
-            response.put("message", "获取永久素材成功");
-            response.put("note", "返回的是 InputStream，需要根据实际需求处理。图文素材请使用 materialNewsGet 方法");
-
-            return JsonUtils.toJson(response);
+            return ApiResult.<Void>success("获取永久素材成功")
+                .withNote("返回的是 InputStream，需要根据实际需求处理。图文素材请使用 materialNewsGet 方法");
         } catch (WxErrorException e) {
             log.error("获取永久素材失败: {}", e.getMessage(), e);
-            return buildErrorResult(e.getMessage());
+            return ApiResult.failure(e.getMessage());
         } catch (Exception e) {
             log.error("获取永久素材异常: {}", e.getMessage(), e);
-            return buildErrorResult(e.getMessage());
+            return ApiResult.failure(e.getMessage());
         }
     }
 
@@ -371,8 +345,8 @@ public class ResourcesManageController {
      * </pre>
      */
     @DeleteMapping("/permanent/delete/{mediaId}")
-    public String deletePermanentMedia(@PathVariable String appid,
-                                       @PathVariable String mediaId) {
+    public ApiResult<Void> deletePermanentMedia(@PathVariable String appid,
+                                                @PathVariable String mediaId) {
         try {
             validateAppid(appid);
 
@@ -386,17 +360,13 @@ public class ResourcesManageController {
 
             log.info("删除永久素材结果: {}", result);
 
-            Map<String, Object> response = new HashMap<>();
-            response.put("success", result);
-            response.put("message", result ? "删除永久素材成功" : "删除永久素材失败");
-
-            return JsonUtils.toJson(response);
+            return ApiResult.of(result, result ? "删除永久素材成功" : "删除永久素材失败");
         } catch (WxErrorException e) {
             log.error("删除永久素材失败: {}", e.getMessage(), e);
-            return buildErrorResult(e.getMessage());
+            return ApiResult.failure(e.getMessage());
         } catch (Exception e) {
             log.error("删除永久素材异常: {}", e.getMessage(), e);
-            return buildErrorResult(e.getMessage());
+            return ApiResult.failure(e.getMessage());
         }
     }
 
@@ -407,8 +377,8 @@ public class ResourcesManageController {
      * </pre>
      */
     @PostMapping("/permanent/updateNews")
-    public String updatePermanentNews(@PathVariable String appid,
-                                      @RequestBody Map<String, Object> request) {
+    public ApiResult<Void> updatePermanentNews(@PathVariable String appid,
+                                               @RequestBody Map<String, Object> request) {
         try {
             validateAppid(appid);
 
@@ -431,14 +401,10 @@ public class ResourcesManageController {
 
             log.warn("修改永久图文素材功能需要根据实际 WxJava 版本实现");
 
-            Map<String, Object> response = new HashMap<>();
-            response.put("success", false);
-            response.put("message", "功能待实现，请参考 WxJava 官方文档");
-
-            return JsonUtils.toJson(response);
+            return ApiResult.of(false, "功能待实现，请参考 WxJava 官方文档");
         } catch (Exception e) {
             log.error("修改永久图文素材异常: {}", e.getMessage(), e);
-            return buildErrorResult(e.getMessage());
+            return ApiResult.failure(e.getMessage());
         }
     }
 
@@ -448,7 +414,7 @@ public class ResourcesManageController {
      * </pre>
      */
     @GetMapping("/permanent/count")
-    public String getMaterialCount(@PathVariable String appid) {
+    public ApiResult<MaterialCountData> getMaterialCount(@PathVariable String appid) {
         try {
             validateAppid(appid);
 
@@ -460,23 +426,14 @@ public class ResourcesManageController {
                 result.getVoiceCount(), result.getVideoCount(), 
                 result.getImageCount(), result.getNewsCount());
 
-            Map<String, Object> response = new HashMap<>();
-            Map<String, Object> data = new HashMap<>();
-            data.put("voiceCount", result.getVoiceCount());
-            data.put("videoCount", result.getVideoCount());
-            data.put("imageCount", result.getImageCount());
-            data.put("newsCount", result.getNewsCount());
-            response.put("success", true);
-            response.put("data", data);
-            response.put("message", "获取素材总数成功");
-
-            return JsonUtils.toJson(response);
+            return ApiResult.success("获取素材总数成功", new MaterialCountData(
+                result.getVoiceCount(), result.getVideoCount(), result.getImageCount(), result.getNewsCount()));
         } catch (WxErrorException e) {
             log.error("获取素材总数失败: {}", e.getMessage(), e);
-            return buildErrorResult(e.getMessage());
+            return ApiResult.failure(e.getMessage());
         } catch (Exception e) {
             log.error("获取素材总数异常: {}", e.getMessage(), e);
-            return buildErrorResult(e.getMessage());
+            return ApiResult.failure(e.getMessage());
         }
     }
 
@@ -486,10 +443,10 @@ public class ResourcesManageController {
      * </pre>
      */
     @GetMapping("/permanent/list")
-    public String getMaterialList(@PathVariable String appid,
-                                  @RequestParam String mediaType,
-                                  @RequestParam(defaultValue = "0") int offset,
-                                  @RequestParam(defaultValue = "20") int count) {
+    public ApiResult<MaterialListData> getMaterialList(@PathVariable String appid,
+                                                       @RequestParam String mediaType,
+                                                       @RequestParam(defaultValue = "0") int offset,
+                                                       @RequestParam(defaultValue = "20") int count) {
         try {
             validateAppid(appid);
 
@@ -508,32 +465,22 @@ public class ResourcesManageController {
                 result = wxMpService.getMaterialService().materialFileBatchGet(mediaType, offset, count);
             }
 
-            Map<String, Object> response = new HashMap<>();
-            Map<String, Object> data = new HashMap<>();
-            
+            MaterialListData data = null;
             if (result instanceof WxMpMaterialNewsBatchGetResult) {
                 WxMpMaterialNewsBatchGetResult newsResult = (WxMpMaterialNewsBatchGetResult) result;
-                data.put("totalCount", newsResult.getTotalCount());
-                data.put("itemCount", newsResult.getItemCount());
-                data.put("items", newsResult.getItems());
+                data = new MaterialListData(newsResult.getTotalCount(), newsResult.getItemCount(), newsResult.getItems());
             } else if (result instanceof WxMpMaterialFileBatchGetResult) {
                 WxMpMaterialFileBatchGetResult fileResult = (WxMpMaterialFileBatchGetResult) result;
-                data.put("totalCount", fileResult.getTotalCount());
-                data.put("itemCount", fileResult.getItemCount());
-                data.put("items", fileResult.getItems());
+                data = new MaterialListData(fileResult.getTotalCount(), fileResult.getItemCount(), fileResult.getItems());
             }
-            
-            response.put("success", true);
-            response.put("data", data);
-            response.put("message", "获取素材列表成功");
 
-            return JsonUtils.toJson(response);
+            return ApiResult.success("获取素材列表成功", data);
         } catch (WxErrorException e) {
             log.error("获取素材列表失败: {}", e.getMessage(), e);
-            return buildErrorResult(e.getMessage());
+            return ApiResult.failure(e.getMessage());
         } catch (Exception e) {
             log.error("获取素材列表异常: {}", e.getMessage(), e);
-            return buildErrorResult(e.getMessage());
+            return ApiResult.failure(e.getMessage());
         }
     }
 
@@ -555,14 +502,62 @@ public class ResourcesManageController {
         }
     }
 
+    // ========== 响应实体类 ==========
+
     /**
-     * 构建错误结果
+     * 上传素材的返回结果
      */
-    private String buildErrorResult(String error) {
-        Map<String, Object> result = new HashMap<>();
-        result.put("success", false);
-        result.put("error", error);
-        return JsonUtils.toJson(result);
+    @Value
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @AllArgsConstructor(access = AccessLevel.PRIVATE)
+    public static class MediaUploadResponse {
+        boolean success;
+        String message;
+        String error;
+        List<MediaItem> mediaList;
+        Integer count;
+
+        static MediaUploadResponse success(String message, List<MediaItem> mediaList) {
+            return new MediaUploadResponse(true, message, null, mediaList, mediaList.size());
+        }
+
+        static MediaUploadResponse failure(String error) {
+            return new MediaUploadResponse(false, null, error, null, null);
+        }
+    }
+
+    /**
+     * 上传成功的单个素材，不同类型的素材只返回其中部分字段
+     */
+    @Value
+    @Builder
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class MediaItem {
+        String mediaId;
+        String type;
+        Long createdAt;
+        String url;
+        String originalFilename;
+    }
+
+    @Value
+    public static class MediaIdData {
+        String mediaId;
+    }
+
+    @Value
+    public static class MaterialCountData {
+        int voiceCount;
+        int videoCount;
+        int imageCount;
+        int newsCount;
+    }
+
+    @Value
+    public static class MaterialListData {
+        int totalCount;
+        int itemCount;
+        List<?> items;
     }
 
     // ========== 请求实体类 ==========
@@ -0,0 +1,199 @@
+package com.github.binarywang.demo.wx.miniapp.controller.send;
+
+import com.github.binarywang.demo.wx.miniapp.utils.JsonUtils;
+import lombok.Value;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * <pre>
+ * 逐行读取模板消息群发的接收者，每次只解析一行，不把整个文件读入内存
+ *
+ * NDJSON：每行一个 {@link SendMessageWithTemplateController.TemplateMessageRequest}（JSON 对象）；
+ * CSV：第一行为表头，toUser（或 openid）列为接收者，templateId、url、color、campaignId 列可选，其余列都作为模板数据字段。
+ * 行内未指定的 templateId、url、color、campaignId 使用请求参数中的默认值；空行跳过。
+ * 解析失败的行不会中断读取，而是返回带 error 的条目。
+ * </pre>
+ */
+class CampaignRecipientReader implements Iterator<CampaignRecipientReader.Recipient> {
+    private static final String TO_USER = "toUser";
+    private static final String OPENID = "openid";
+    private static final String TEMPLATE_ID = "templateId";
+    private static final String URL = "url";
+    private static final String COLOR = "color";
+    private static final String CAMPAIGN_ID = "campaignId";
+
+    /**
+     * 一个接收者，line 为其在上传内容中的行号（从 1 开始）；message 为 null 时 error 为解析失败的原因
+     */
+    @Value
+    static class Recipient {
+        int line;
+        SendMessageWithTemplateController.TemplateMessageRequest message;
+        String error;
+    }
+
+    private final BufferedReader reader;
+    private final boolean csv;
+    private final SendMessageWithTemplateController.TemplateMessageRequest defaults;
+    private List<String> header;
+    private int lineNumber;
+    private Recipient next;
+
+    CampaignRecipientReader(BufferedReader reader, boolean csv,
+                            SendMessageWithTemplateController.TemplateMessageRequest defaults) {
+        this.reader = reader;
+        this.csv = csv;
+        this.defaults = defaults;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null) {
+            next = readNext();
+        }
+        return next != null;
+    }
+
+    @Override
+    public Recipient next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Recipient recipient = next;
+        next = null;
+        return recipient;
+    }
+
+    private Recipient readNext() {
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (StringUtils.isBlank(line)) {
+                    continue;
+                }
+                if (csv && header == null) {
+                    // Excel 导出的 CSV 可能带 BOM
+                    header = parseCsvLine(StringUtils.removeStart(line, "\uFEFF"));
+                    if (!header.contains(TO_USER) && !header.contains(OPENID)) {
+                        throw new IllegalArgumentException("CSV表头中必须有toUser或openid列！");
+                    }
+                    continue;
+                }
+                return csv ? fromCsv(line) : fromJson(line);
+            }
+            return null;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Recipient fromJson(String line) {
+        SendMessageWithTemplateController.TemplateMessageRequest message =
+            JsonUtils.fromJson(line, SendMessageWithTemplateController.TemplateMessageRequest.class);
+        if (message == null) {
+            return new Recipient(lineNumber, null, "无法解析为JSON对象");
+        }
+        return new Recipient(lineNumber, applyDefaults(message), null);
+    }
+
+    private Recipient fromCsv(String line) {
+        List<String> values = parseCsvLine(line);
+        if (values.size() != header.size()) {
+            return new Recipient(lineNumber, null,
+                String.format("列数（%d）与表头（%d）不一致", values.size(), header.size()));
+        }
+        SendMessageWithTemplateController.TemplateMessageRequest message =
+            new SendMessageWithTemplateController.TemplateMessageRequest();
+        Map<String, String> data = new LinkedHashMap<>();
+        for (int i = 0; i < header.size(); i++) {
+            String column = header.get(i);
+            String value = values.get(i);
+            switch (column) {
+                case TO_USER:
+                case OPENID:
+                    message.setToUser(value);
+                    break;
+                case TEMPLATE_ID:
+                    message.setTemplateId(value);
+                    break;
+                case URL:
+                    message.setUrl(value);
+                    break;
+                case COLOR:
+                    message.setColor(value);
+                    break;
+                case CAMPAIGN_ID:
+                    message.setCampaignId(value);
+                    break;
+                default:
+                    data.put(column, value);
+            }
+        }
+        message.setData(data);
+        return new Recipient(lineNumber, applyDefaults(message), null);
+    }
+
+    private SendMessageWithTemplateController.TemplateMessageRequest applyDefaults(
+        SendMessageWithTemplateController.TemplateMessageRequest message) {
+        if (StringUtils.isBlank(message.getTemplateId())) {
+            message.setTemplateId(defaults.getTemplateId());
+        }
+        if (StringUtils.isBlank(message.getUrl())) {
+            message.setUrl(defaults.getUrl());
+        }
+        if (StringUtils.isBlank(message.getColor())) {
+            message.setColor(defaults.getColor());
+        }
+        if (message.getMiniProgram() == null) {
+            message.setMiniProgram(defaults.getMiniProgram());
+        }
+        if (StringUtils.isBlank(message.getCampaignId())) {
+            message.setCampaignId(defaults.getCampaignId());
+        }
+        return message;
+    }
+
+    /**
+     * 解析一行 CSV：逗号分隔，字段可用双引号包围，引号内的 "" 表示一个双引号（不支持字段内换行）
+     */
+    static List<String> parseCsvLine(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"') {
+                    if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        field.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString().trim());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString().trim());
+        return fields;
+    }
+}
@@ -0,0 +1,168 @@
+package com.github.binarywang.demo.wx.miniapp.controller.send;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.github.binarywang.demo.wx.miniapp.controller.ApiResult;
+import com.github.binarywang.demo.wx.miniapp.job.JobItemResult;
+import com.github.binarywang.demo.wx.miniapp.job.JobManager;
+import com.github.binarywang.demo.wx.miniapp.job.SendJob;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * <pre>
+ * 异步批量发送任务的查询和取消
+ *
+ * 任务通过 /wx/template/{appid}/jobs、/wx/kefu/{appid}/jobs、/wx/mass/{appid}/jobs 提交，提交后立即返回任务 id，
+ * 之后在这里查询进度（已处理、成功、失败条数和发送速率）、逐条结果，或取消任务。
+ * 服务重启后，未完成的任务从上次确认的位置继续发送。
+ * </pre>
+ */
+@RestController
+@AllArgsConstructor
+@Slf4j
+@RequestMapping("/wx/jobs/{appid}")
+public class JobController {
+    private static final int MAX_RESULTS_LIMIT = 1000;
+
+    private final JobManager jobManager;
+
+    /**
+     * <pre>
+     * 查询该公众号的全部任务
+     * </pre>
+     */
+    @GetMapping
+    public ApiResult<List<JobData>> list(@PathVariable String appid) {
+        return ApiResult.successData(jobManager.list(appid).stream().map(JobData::of).collect(Collectors.toList()));
+    }
+
+    /**
+     * <pre>
+     * 查询任务进度
+     * </pre>
+     */
+    @GetMapping("/{jobId}")
+    public ApiResult<JobData> status(@PathVariable String appid, @PathVariable String jobId) {
+        SendJob job = jobManager.get(appid, jobId);
+        if (job == null) {
+            return ApiResult.failure(String.format("未找到jobId=[%s]的任务，可能从未提交或已超过保留期", jobId));
+        }
+        return ApiResult.successData(JobData.of(job));
+    }
+
+    /**
+     * <pre>
+     * 查询任务中每条消息的发送结果（按提交顺序，只包含已处理的条目）
+     * </pre>
+     */
+    @GetMapping("/{jobId}/results")
+    public ApiResult<List<JobItemResult>> results(@PathVariable String appid, @PathVariable String jobId,
+                                                  @RequestParam(defaultValue = "0") long offset,
+                                                  @RequestParam(defaultValue = "100") int limit) {
+        try {
+            if (offset < 0 || limit <= 0 || limit > MAX_RESULTS_LIMIT) {
+                throw new IllegalArgumentException(String.format("offset不能小于0，limit须在1到%d之间！", MAX_RESULTS_LIMIT));
+            }
+            List<JobItemResult> results = jobManager.results(appid, jobId, offset, limit);
+            if (results == null) {
+                return ApiResult.failure(String.format("未找到jobId=[%s]的任务，可能从未提交或已超过保留期", jobId));
+            }
+            return ApiResult.successData(results);
+        } catch (Exception e) {
+            log.error("查询任务结果异常: {}", e.getMessage(), e);
+            return ApiResult.failure(e.getMessage());
+        }
+    }
+
+    /**
+     * <pre>
+     * 取消任务：排队中的任务直接取消，运行中的任务等已在发送中的消息完成后停止
+     * </pre>
+     */
+    @PostMapping("/{jobId}/cancel")
+    public ApiResult<JobData> cancel(@PathVariable String appid, @PathVariable String jobId) {
+        try {
+            SendJob job = jobManager.cancel(appid, jobId);
+            if (job == null) {
+                return ApiResult.failure(String.format("未找到jobId=[%s]的任务，可能从未提交或已超过保留期", jobId));
+            }
+            log.info("取消批量发送任务，appid={}, jobId={}, 状态={}", appid, jobId, job.getStatus());
+            return ApiResult.success("已取消", JobData.of(job));
+        } catch (Exception e) {
+            log.error("取消任务异常: {}", e.getMessage(), e);
+            return ApiResult.failure(e.getMessage());
+        }
+    }
+
+    /**
+     * 校验一批消息并提交为任务；任一条不合法时整批拒绝，不创建任务
+     *
+     * @param toPayload 校验消息并转为 JSON，不合法时抛出 IllegalArgumentException
+     */
+    static <T> JobData submit(JobManager jobManager, String appid, String kind, List<T> items,
+                              Function<T, String> toPayload) throws IOException {
+        if (items == null || items.isEmpty()) {
+            throw new IllegalArgumentException("消息列表不能为空！");
+        }
+        List<String> payloads = new ArrayList<>(items.size());
+        for (int i = 0; i < items.size(); i++) {
+            T item = items.get(i);
+            try {
+                if (item == null) {
+                    throw new IllegalArgumentException("消息不能为空！");
+                }
+                payloads.add(toPayload.apply(item));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException(String.format("第%d条：%s", i, e.getMessage()), e);
+            }
+        }
+        return JobData.of(jobManager.submit(appid, kind, payloads.iterator()));
+    }
+
+    // ========== 响应实体类 ==========
+
+    /**
+     * 任务进度；throughputPerSecond 为运行期间（不含排队）的平均发送速率，etaSeconds 为按该速率估算的剩余时间
+     */
+    @Value
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @AllArgsConstructor(access = AccessLevel.PRIVATE)
+    public static class JobData {
+        String jobId;
+        String kind;
+        SendJob.Status status;
+        long total;
+        long processed;
+        long successCount;
+        long failCount;
+        Double throughputPerSecond;
+        Long etaSeconds;
+        Long createdAt;
+        Long startedAt;
+        Long finishedAt;
+        String error;
+
+        static JobData of(SendJob job) {
+            Double throughput = null;
+            Long eta = null;
+            if (job.getActiveMs() > 0 && job.getProcessed() > 0) {
+                throughput = Math.round(job.getProcessed() * 1000_000.0 / job.getActiveMs()) / 1000.0;
+                if (!job.isTerminal()) {
+                    eta = (long) Math.ceil((job.getTotal() - job.getProcessed()) / throughput);
+                }
+            }
+            return new JobData(job.getId(), job.getKind(), job.getStatus(), job.getTotal(), job.getProcessed(),
+                job.getSuccessCount(), job.getFailCount(), throughput, eta, job.getCreatedAt(), job.getStartedAt(),
+                job.getFinishedAt(), job.getError());
+        }
+    }
+}
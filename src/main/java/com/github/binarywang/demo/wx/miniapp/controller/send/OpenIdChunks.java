@@ -0,0 +1,130 @@
+package com.github.binarywang.demo.wx.miniapp.controller.send;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * <pre>
+ * 把逐个读取的 openid 切分成符合群发接口要求的分片：每片最多 maxSize 个、至少 2 个
+ *
+ * 边读边切，最多缓存 maxSize + 1 个 openid：凑满 maxSize + 2 个才输出一片，保证剩下的至少 2 个；
+ * 读完时剩 maxSize + 1 个则拆成 maxSize - 1 和 2 两片。总数少于 2 个时抛出 IllegalArgumentException。
+ * 不去重，调用方需保证 openid 不重复。
+ * </pre>
+ */
+class OpenIdChunks implements Iterator<List<String>> {
+    static final int MIN_SIZE = 2;
+
+    private final Iterator<String> openIds;
+    private final int maxSize;
+    private List<String> buffer;
+    private List<String> pending;
+    private boolean emitted;
+
+    OpenIdChunks(Iterator<String> openIds, int maxSize) {
+        if (maxSize < MIN_SIZE + 1) {
+            throw new IllegalArgumentException("maxSize must be greater than " + MIN_SIZE);
+        }
+        this.openIds = openIds;
+        this.maxSize = maxSize;
+        this.buffer = new ArrayList<>();
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (pending != null && !pending.isEmpty()) {
+            return true;
+        }
+        if (buffer == null) {
+            return false;
+        }
+        while (openIds.hasNext()) {
+            buffer.add(openIds.next());
+            if (buffer.size() == maxSize + MIN_SIZE) {
+                // 输出前 maxSize 个，剩下的留到下一片
+                List<String> rest = new ArrayList<>(buffer.subList(maxSize, buffer.size()));
+                buffer.subList(maxSize, buffer.size()).clear();
+                pending = buffer;
+                buffer = rest;
+                return true;
+            }
+        }
+        List<String> last = buffer;
+        buffer = null;
+        if (last.isEmpty() && emitted) {
+            return false;
+        }
+        if (last.size() < MIN_SIZE) {
+            throw new IllegalArgumentException(String.format("openid数量不能少于%d个！", MIN_SIZE));
+        }
+        if (last.size() > maxSize) {
+            // maxSize + 1 个：拆成 maxSize - 1 和 2
+            pending = new ArrayList<>(last.subList(0, last.size() - MIN_SIZE));
+            buffer = new ArrayList<>(last.subList(last.size() - MIN_SIZE, last.size()));
+            return true;
+        }
+        pending = last;
+        return true;
+    }
+
+    @Override
+    public List<String> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        List<String> chunk = pending;
+        pending = null;
+        emitted = true;
+        return chunk;
+    }
+
+    /**
+     * 逐行读取 openid：每行一个（CSV 取第一列），跳过空行、BOM 和名为 openid 或 toUser 的表头
+     */
+    static Iterator<String> readLines(BufferedReader reader) {
+        return new Iterator<String>() {
+            private boolean first = true;
+            private String next;
+
+            @Override
+            public boolean hasNext() {
+                try {
+                    String line;
+                    while (next == null && (line = reader.readLine()) != null) {
+                        if (first) {
+                            line = StringUtils.removeStart(line, "\uFEFF");
+                        }
+                        String openId = CampaignRecipientReader.parseCsvLine(line).get(0);
+                        boolean header = first && ("openid".equalsIgnoreCase(openId) || "toUser".equalsIgnoreCase(openId));
+                        if (!StringUtils.isBlank(openId)) {
+                            first = false;
+                        }
+                        if (!StringUtils.isBlank(openId) && !header) {
+                            next = openId;
+                        }
+                    }
+                    return next != null;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+
+            @Override
+            public String next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                String openId = next;
+                next = null;
+                return openId;
+            }
+        };
+    }
+}
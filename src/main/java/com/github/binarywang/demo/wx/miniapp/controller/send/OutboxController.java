@@ -0,0 +1,140 @@
+package com.github.binarywang.demo.wx.miniapp.controller.send;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.github.binarywang.demo.wx.miniapp.controller.ApiResult;
+import com.github.binarywang.demo.wx.miniapp.outbox.Outbox;
+import com.github.binarywang.demo.wx.miniapp.outbox.OutboxEntry;
+import com.google.common.hash.Hashing;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * <pre>
+ * 发件箱查询
+ *
+ * 消息通过 /wx/kefu/{appid}/enqueue、/wx/template/{appid}/enqueue 入队，接收后立即返回，
+ * 之后用入队时的 key 在这里查询发送状态（PENDING、DELIVERED、FAILED）。
+ * </pre>
+ */
+@RestController
+@AllArgsConstructor
+@Slf4j
+@RequestMapping("/wx/outbox/{appid}")
+public class OutboxController {
+    private final Outbox outbox;
+
+    /**
+     * <pre>
+     * 查询消息的发送状态
+     * </pre>
+     */
+    @GetMapping("/{key}")
+    public ApiResult<OutboxEntry> status(@PathVariable String appid, @PathVariable String key) {
+        OutboxEntry entry = outbox.get(appid, key);
+        if (entry == null) {
+            return ApiResult.failure(String.format("未找到key=[%s]的消息，可能从未入队或已超过保留期", key));
+        }
+        return ApiResult.successData(entry);
+    }
+
+    /**
+     * 校验并入队一批消息，返回结果与 items 一一对应
+     *
+     * @param keyOf     取调用方指定的幂等 key，为空时用消息内容的摘要
+     * @param toPayload 校验消息并转为 JSON，不合法时抛出 IllegalArgumentException（该条被拒绝，不影响其他条）
+     */
+    static <T> EnqueueData enqueue(Outbox outbox, String appid, String kind, List<T> items,
+                                   Function<T, String> keyOf, Function<T, String> toPayload) throws IOException {
+        EnqueueItemResult[] results = new EnqueueItemResult[items.size()];
+        List<Outbox.Message> messages = new ArrayList<>(items.size());
+        List<Integer> positions = new ArrayList<>(items.size());
+        for (int i = 0; i < items.size(); i++) {
+            T item = items.get(i);
+            try {
+                if (item == null) {
+                    throw new IllegalArgumentException("消息不能为空！");
+                }
+                String payload = toPayload.apply(item);
+                String key = StringUtils.defaultIfBlank(keyOf.apply(item),
+                    Hashing.sha256().hashString(kind + ":" + payload, StandardCharsets.UTF_8).toString());
+                messages.add(new Outbox.Message(key, kind, payload));
+                positions.add(i);
+            } catch (IllegalArgumentException e) {
+                results[i] = EnqueueItemResult.rejected(i, item == null ? null : keyOf.apply(item), e.getMessage());
+            }
+        }
+
+        List<Outbox.EnqueueResult> enqueued = outbox.enqueue(appid, messages);
+        for (int j = 0; j < enqueued.size(); j++) {
+            int index = positions.get(j);
+            results[index] = EnqueueItemResult.enqueued(index, enqueued.get(j));
+        }
+        return EnqueueData.of(Arrays.asList(results));
+    }
+
+    // ========== 响应实体类 ==========
+
+    /**
+     * 入队结果汇总
+     */
+    @Value
+    public static class EnqueueData {
+        List<EnqueueItemResult> results;
+        int total;
+        int accepted;
+        int duplicates;
+        int rejected;
+
+        static EnqueueData of(List<EnqueueItemResult> results) {
+            int accepted = 0;
+            int duplicates = 0;
+            int rejected = 0;
+            for (EnqueueItemResult result : results) {
+                if (result.getStatus() == null) {
+                    rejected++;
+                } else if (Boolean.TRUE.equals(result.getDuplicate())) {
+                    duplicates++;
+                } else {
+                    accepted++;
+                }
+            }
+            return new EnqueueData(results, results.size(), accepted, duplicates, rejected);
+        }
+    }
+
+    /**
+     * 单条消息的入队结果；duplicate 为 true 时 status 是已有消息的当前状态，被拒绝时只有 error
+     */
+    @Value
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @AllArgsConstructor(access = AccessLevel.PRIVATE)
+    public static class EnqueueItemResult {
+        int index;
+        String key;
+        OutboxEntry.Status status;
+        Boolean duplicate;
+        String msgId;
+        String error;
+
+        static EnqueueItemResult enqueued(int index, Outbox.EnqueueResult result) {
+            OutboxEntry entry = result.getEntry();
+            return new EnqueueItemResult(index, entry.getKey(), entry.getStatus(), result.isDuplicate(),
+                entry.getMsgId(), entry.getError());
+        }
+
+        static EnqueueItemResult rejected(int index, String key, String error) {
+            return new EnqueueItemResult(index, key, null, null, null, error);
+        }
+    }
+}
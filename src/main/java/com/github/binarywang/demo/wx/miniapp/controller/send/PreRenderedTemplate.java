@@ -0,0 +1,60 @@
+package com.github.binarywang.demo.wx.miniapp.controller.send;
+
+import com.github.binarywang.demo.wx.miniapp.utils.JsonUtils;
+
+import java.util.UUID;
+
+/**
+ * <pre>
+ * 预渲染的模板消息：只有 toUser 不同的一批消息，模板内容只序列化一次
+ *
+ * 用占位 toUser 生成一次请求 JSON（与 WxJava 的 sendTemplateMsg 发出的完全一致），在占位处切成前后两段；
+ * 每个接收者的请求体由 前段 + toUser + 后段 直接拼接，不再为每条消息创建 WxMpTemplateMessage 和模板数据列表。
+ * </pre>
+ */
+class PreRenderedTemplate {
+    private final String prefix;
+    private final String suffix;
+
+    /**
+     * @param request 模板消息（toUser 会被忽略，不要求填写，也不会被修改）
+     */
+    PreRenderedTemplate(SendMessageWithTemplateController.TemplateMessageRequest request) {
+        String placeholder = "__toUser_" + UUID.randomUUID().toString().replace("-", "") + "__";
+        String json = SendMessageWithTemplateController.buildTemplateMessage(request, placeholder).toJson();
+
+        int at = json.indexOf(placeholder);
+        if (at < 0 || json.indexOf(placeholder, at + 1) >= 0) {
+            throw new IllegalStateException("模板消息预渲染失败：未找到唯一的toUser位置");
+        }
+        this.prefix = json.substring(0, at);
+        this.suffix = json.substring(at + placeholder.length());
+    }
+
+    /**
+     * 生成发给 toUser 的请求体（JSON）
+     */
+    String render(String toUser) {
+        String user = isPlainAscii(toUser) ? toUser : escape(toUser);
+        return new StringBuilder(prefix.length() + user.length() + suffix.length())
+            .append(prefix).append(user).append(suffix).toString();
+    }
+
+    /**
+     * openid 只含字母、数字、- 和 _，可以直接放进 JSON 字符串；其他内容走完整的转义
+     */
+    private static boolean isPlainAscii(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (!(c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '-' || c == '_')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String escape(String value) {
+        String quoted = JsonUtils.toJson(value);
+        return quoted.substring(1, quoted.length() - 1);
+    }
+}
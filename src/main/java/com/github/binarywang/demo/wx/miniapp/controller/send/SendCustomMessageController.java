@@ -1,19 +1,30 @@
 package com.github.binarywang.demo.wx.miniapp.controller.send;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.github.binarywang.demo.wx.miniapp.config.DispatchProperties;
+import com.github.binarywang.demo.wx.miniapp.controller.ApiResult;
+import com.github.binarywang.demo.wx.miniapp.delivery.TemplateDeliveryIndex;
+import com.github.binarywang.demo.wx.miniapp.dispatch.BulkDispatcher;
+import com.github.binarywang.demo.wx.miniapp.interaction.InteractionWindowIndex;
+import com.github.binarywang.demo.wx.miniapp.job.JobManager;
+import com.github.binarywang.demo.wx.miniapp.outbox.Outbox;
 import com.github.binarywang.demo.wx.miniapp.utils.JsonUtils;
+import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
+import me.chanjar.weixin.common.error.WxError;
 import me.chanjar.weixin.common.error.WxErrorException;
 import me.chanjar.weixin.mp.api.WxMpService;
 import me.chanjar.weixin.mp.bean.kefu.WxMpKefuMessage;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.web.bind.annotation.*;
 
+import javax.annotation.PostConstruct;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 /**
  * 主动发送消息控制器（客服消息）
@@ -26,7 +37,40 @@ import java.util.Map;
 @Slf4j
 @RequestMapping("/wx/kefu/{appid}")
 public class SendCustomMessageController {
+    private static final String OUTBOX_KIND = "kefu";
+    private static final String JOB_KIND = "kefu";
+
     private final WxMpService wxMpService;
+    private final BulkDispatcher bulkDispatcher;
+    private final DispatchProperties dispatchProperties;
+    private final InteractionWindowIndex interactionWindowIndex;
+    private final Outbox outbox;
+    private final JobManager jobManager;
+    private final TemplateDeliveryIndex deliveryIndex;
+
+    /**
+     * 注册发件箱和批量发送任务中客服消息的发送器
+     */
+    @PostConstruct
+    public void registerSenders() {
+        outbox.register(OUTBOX_KIND, entry -> sendPayload(entry.getAppid(), entry.getPayload()));
+        jobManager.register(JOB_KIND, this::sendPayload);
+    }
+
+    /**
+     * 发送 JSON 格式的客服消息（客服消息没有 msgId，返回 null）；运行在后台发送线程上，需要自己切换公众号配置
+     */
+    private String sendPayload(String appid, String payload) throws WxErrorException {
+        if (!wxMpService.switchover(appid)) {
+            throw new IllegalArgumentException(String.format("未找到对应appid=[%s]的公众号配置", appid));
+        }
+        KefuMessageRequest request = JsonUtils.fromJson(payload, KefuMessageRequest.class);
+        if (request == null) {
+            throw new IllegalArgumentException(String.format("消息内容无法解析，appid=[%s]", appid));
+        }
+        sendKefuMessage(appid, buildKefuMessage(request));
+        return null;
+    }
 
     /**
      * <pre>
@@ -34,8 +78,8 @@ public class SendCustomMessageController {
      * </pre>
      */
     @PostMapping("/sendText")
-    public String sendTextMessage(@PathVariable String appid,
-                                  @RequestBody TextMessageRequest request) {
+    public ApiResult<Void> sendTextMessage(@PathVariable String appid,
+                                           @RequestBody TextMessageRequest request) {
         try {
             validateAppid(appid);
 
@@ -54,17 +98,17 @@ public class SendCustomMessageController {
                 .content(request.getContent())
                 .build();
 
-            wxMpService.getKefuService().sendKefuMessage(message);
+            sendKefuMessage(appid, message);
 
             log.info("文本消息发送成功");
 
-            return buildSuccessResult("文本消息发送成功");
+            return ApiResult.success("文本消息发送成功");
         } catch (WxErrorException e) {
             log.error("发送文本消息失败: {}", e.getMessage(), e);
-            return buildErrorResult(e.getMessage());
+            return ApiResult.failure(e.getMessage());
         } catch (Exception e) {
             log.error("发送文本消息异常: {}", e.getMessage(), e);
-            return buildErrorResult(e.getMessage());
+            return ApiResult.failure(e.getMessage());
         }
     }
 
@@ -74,8 +118,8 @@ public class SendCustomMessageController {
      * </pre>
      */
     @PostMapping("/sendImage")
-    public String sendImageMessage(@PathVariable String appid,
-                                   @RequestBody ImageMessageRequest request) {
+    public ApiResult<Void> sendImageMessage(@PathVariable String appid,
+                                            @RequestBody ImageMessageRequest request) {
         try {
             validateAppid(appid);
 
@@ -94,17 +138,17 @@ public class SendCustomMessageController {
                 .mediaId(request.getMediaId())
                 .build();
 
-            wxMpService.getKefuService().sendKefuMessage(message);
+            sendKefuMessage(appid, message);
 
             log.info("图片消息发送成功");
 
-            return buildSuccessResult("图片消息发送成功");
+            return ApiResult.success("图片消息发送成功");
         } catch (WxErrorException e) {
             log.error("发送图片消息失败: {}", e.getMessage(), e);
-            return buildErrorResult(e.getMessage());
+            return ApiResult.failure(e.getMessage());
         } catch (Exception e) {
             log.error("发送图片消息异常: {}", e.getMessage(), e);
-            return buildErrorResult(e.getMessage());
+            return ApiResult.failure(e.getMessage());
         }
     }
 
@@ -114,8 +158,8 @@ public class SendCustomMessageController {
      * </pre>
      */
     @PostMapping("/sendVoice")
-    public String sendVoiceMessage(@PathVariable String appid,
-                                   @RequestBody VoiceMessageRequest request) {
+    public ApiResult<Void> sendVoiceMessage(@PathVariable String appid,
+                                            @RequestBody VoiceMessageRequest request) {
         try {
             validateAppid(appid);
 
@@ -134,17 +178,17 @@ public class SendCustomMessageController {
                 .mediaId(request.getMediaId())
                 .build();
 
-            wxMpService.getKefuService().sendKefuMessage(message);
+            sendKefuMessage(appid, message);
 
             log.info("语音消息发送成功");
 
-            return buildSuccessResult("语音消息发送成功");
+            return ApiResult.success("语音消息发送成功");
         } catch (WxErrorException e) {
             log.error("发送语音消息失败: {}", e.getMessage(), e);
-            return buildErrorResult(e.getMessage());
+            return ApiResult.failure(e.getMessage());
         } catch (Exception e) {
             log.error("发送语音消息异常: {}", e.getMessage(), e);
-            return buildErrorResult(e.getMessage());
+            return ApiResult.failure(e.getMessage());
         }
     }
 
@@ -154,8 +198,8 @@ public class SendCustomMessageController {
      * </pre>
      */
     @PostMapping("/sendVideo")
-    public String sendVideoMessage(@PathVariable String appid,
-                                   @RequestBody VideoMessageRequest request) {
+    public ApiResult<Void> sendVideoMessage(@PathVariable String appid,
+                                            @RequestBody VideoMessageRequest request) {
         try {
             validateAppid(appid);
 
@@ -177,17 +221,17 @@ public class SendCustomMessageController {
                 .description(request.getDescription())
                 .build();
 
-            wxMpService.getKefuService().sendKefuMessage(message);
+            sendKefuMessage(appid, message);
 
             log.info("视频消息发送成功");
 
-            return buildSuccessResult("视频消息发送成功");
+            return ApiResult.success("视频消息发送成功");
         } catch (WxErrorException e) {
             log.error("发送视频消息失败: {}", e.getMessage(), e);
-            return buildErrorResult(e.getMessage());
+            return ApiResult.failure(e.getMessage());
         } catch (Exception e) {
             log.error("发送视频消息异常: {}", e.getMessage(), e);
-            return buildErrorResult(e.getMessage());
+            return ApiResult.failure(e.getMessage());
         }
     }
 
@@ -197,8 +241,8 @@ public class SendCustomMessageController {
      * </pre>
      */
     @PostMapping("/sendMusic")
-    public String sendMusicMessage(@PathVariable String appid,
-                                   @RequestBody MusicMessageRequest request) {
+    public ApiResult<Void> sendMusicMessage(@PathVariable String appid,
+                                            @RequestBody MusicMessageRequest request) {
         try {
             validateAppid(appid);
 
@@ -221,17 +265,17 @@ public class SendCustomMessageController {
                 .description(request.getDescription())
                 .build();
 
-            wxMpService.getKefuService().sendKefuMessage(message);
+            sendKefuMessage(appid, message);
 
             log.info("音乐消息发送成功");
 
-            return buildSuccessResult("音乐消息发送成功");
+            return ApiResult.success("音乐消息发送成功");
         } catch (WxErrorException e) {
             log.error("发送音乐消息失败: {}", e.getMessage(), e);
-            return buildErrorResult(e.getMessage());
+            return ApiResult.failure(e.getMessage());
         } catch (Exception e) {
             log.error("发送音乐消息异常: {}", e.getMessage(), e);
-            return buildErrorResult(e.getMessage());
+            return ApiResult.failure(e.getMessage());
         }
     }
 
@@ -241,8 +285,8 @@ public class SendCustomMessageController {
      * </pre>
      */
     @PostMapping("/sendNews")
-    public String sendNewsMessage(@PathVariable String appid,
-                                  @RequestBody NewsMessageRequest request) {
+    public ApiResult<Void> sendNewsMessage(@PathVariable String appid,
+                                           @RequestBody NewsMessageRequest request) {
         try {
             validateAppid(appid);
 
@@ -273,17 +317,17 @@ public class SendCustomMessageController {
                 .articles(articles)
                 .build();
 
-            wxMpService.getKefuService().sendKefuMessage(message);
+            sendKefuMessage(appid, message);
 
             log.info("图文消息发送成功");
 
-            return buildSuccessResult("图文消息发送成功");
+            return ApiResult.success("图文消息发送成功");
         } catch (WxErrorException e) {
             log.error("发送图文消息失败: {}", e.getMessage(), e);
-            return buildErrorResult(e.getMessage());
+            return ApiResult.failure(e.getMessage());
         } catch (Exception e) {
             log.error("发送图文消息异常: {}", e.getMessage(), e);
-            return buildErrorResult(e.getMessage());
+            return ApiResult.failure(e.getMessage());
         }
     }
 
@@ -293,8 +337,8 @@ public class SendCustomMessageController {
      * </pre>
      */
     @PostMapping("/sendMpNews")
-    public String sendMpNewsMessage(@PathVariable String appid,
-                                    @RequestBody MpNewsMessageRequest request) {
+    public ApiResult<Void> sendMpNewsMessage(@PathVariable String appid,
+                                             @RequestBody MpNewsMessageRequest request) {
         try {
             validateAppid(appid);
 
@@ -313,17 +357,17 @@ public class SendCustomMessageController {
                 .mediaId(request.getMediaId())
                 .build();
 
-            wxMpService.getKefuService().sendKefuMessage(message);
+            sendKefuMessage(appid, message);
 
             log.info("图文消息（mpnews）发送成功");
 
-            return buildSuccessResult("图文消息（mpnews）发送成功");
+            return ApiResult.success("图文消息（mpnews）发送成功");
         } catch (WxErrorException e) {
             log.error("发送图文消息（mpnews）失败: {}", e.getMessage(), e);
-            return buildErrorResult(e.getMessage());
+            return ApiResult.failure(e.getMessage());
         } catch (Exception e) {
             log.error("发送图文消息（mpnews）异常: {}", e.getMessage(), e);
-            return buildErrorResult(e.getMessage());
+            return ApiResult.failure(e.getMessage());
         }
     }
 
@@ -333,8 +377,8 @@ public class SendCustomMessageController {
      * </pre>
      */
     @PostMapping("/sendCard")
-    public String sendCardMessage(@PathVariable String appid,
-                                  @RequestBody CardMessageRequest request) {
+    public ApiResult<Void> sendCardMessage(@PathVariable String appid,
+                                           @RequestBody CardMessageRequest request) {
         try {
             validateAppid(appid);
 
@@ -353,17 +397,17 @@ public class SendCustomMessageController {
                 .cardId(request.getCardId())
                 .build();
 
-            wxMpService.getKefuService().sendKefuMessage(message);
+            sendKefuMessage(appid, message);
 
             log.info("卡券消息发送成功");
 
-            return buildSuccessResult("卡券消息发送成功");
+            return ApiResult.success("卡券消息发送成功");
         } catch (WxErrorException e) {
             log.error("发送卡券消息失败: {}", e.getMessage(), e);
-            return buildErrorResult(e.getMessage());
+            return ApiResult.failure(e.getMessage());
         } catch (Exception e) {
             log.error("发送卡券消息异常: {}", e.getMessage(), e);
-            return buildErrorResult(e.getMessage());
+            return ApiResult.failure(e.getMessage());
         }
     }
 
@@ -373,8 +417,8 @@ public class SendCustomMessageController {
      * </pre>
      */
     @PostMapping("/sendMiniProgramPage")
-    public String sendMiniProgramPageMessage(@PathVariable String appid,
-                                             @RequestBody MiniProgramPageMessageRequest request) {
+    public ApiResult<Void> sendMiniProgramPageMessage(@PathVariable String appid,
+                                                      @RequestBody MiniProgramPageMessageRequest request) {
         try {
             validateAppid(appid);
 
@@ -405,17 +449,17 @@ public class SendCustomMessageController {
                 .thumbMediaId(request.getThumbMediaId())
                 .build();
 
-            wxMpService.getKefuService().sendKefuMessage(message);
+            sendKefuMessage(appid, message);
 
             log.info("小程序卡片消息发送成功");
 
-            return buildSuccessResult("小程序卡片消息发送成功");
+            return ApiResult.success("小程序卡片消息发送成功");
         } catch (WxErrorException e) {
             log.error("发送小程序卡片消息失败: {}", e.getMessage(), e);
-            return buildErrorResult(e.getMessage());
+            return ApiResult.failure(e.getMessage());
         } catch (Exception e) {
             log.error("发送小程序卡片消息异常: {}", e.getMessage(), e);
-            return buildErrorResult(e.getMessage());
+            return ApiResult.failure(e.getMessage());
         }
     }
 
@@ -425,59 +469,24 @@ public class SendCustomMessageController {
      * </pre>
      */
     @PostMapping("/sendWithTemplate")
-    public String sendWithTemplate(@PathVariable String appid,
-                                   @RequestBody CombinedMessageRequest request) {
+    public CombinedSendResponse sendWithTemplate(@PathVariable String appid,
+                                                 @RequestBody CombinedMessageRequest request) {
         try {
             validateAppid(appid);
 
-            Map<String, Object> result = new HashMap<>();
-            List<Map<String, Object>> results = new ArrayList<>();
+            List<ChannelSendResult> results = new ArrayList<>(2);
 
             // 1. 先发送客服消息
             if (request.getKefuMessage() != null) {
                 try {
-                    KefuMessageRequest kefuMsg = request.getKefuMessage();
-                    WxMpKefuMessage message = null;
-
-                    switch (kefuMsg.getMsgType().toLowerCase()) {
-                        case "text":
-                            message = WxMpKefuMessage.TEXT()
-                                .toUser(kefuMsg.getToUser())
-                                .content(kefuMsg.getContent())
-                                .build();
-                            break;
-                        case "image":
-                            message = WxMpKefuMessage.IMAGE()
-                                .toUser(kefuMsg.getToUser())
-                                .mediaId(kefuMsg.getMediaId())
-                                .build();
-                            break;
-                        case "voice":
-                            message = WxMpKefuMessage.VOICE()
-                                .toUser(kefuMsg.getToUser())
-                                .mediaId(kefuMsg.getMediaId())
-                                .build();
-                            break;
-                        default:
-                            throw new IllegalArgumentException("不支持的客服消息类型: " + kefuMsg.getMsgType());
-                    }
+                    WxMpKefuMessage message = buildKefuMessage(request.getKefuMessage());
 
-                    if (message != null) {
-                        wxMpService.getKefuService().sendKefuMessage(message);
-                        Map<String, Object> kefuResult = new HashMap<>();
-                        kefuResult.put("type", "kefu");
-                        kefuResult.put("success", true);
-                        kefuResult.put("message", "客服消息发送成功");
-                        results.add(kefuResult);
-                        log.info("客服消息发送成功");
-                    }
+                    sendKefuMessage(appid, message);
+                    results.add(ChannelSendResult.success("kefu", null, "客服消息发送成功"));
+                    log.info("客服消息发送成功");
                 } catch (Exception e) {
                     log.error("发送客服消息失败: {}", e.getMessage());
-                    Map<String, Object> kefuResult = new HashMap<>();
-                    kefuResult.put("type", "kefu");
-                    kefuResult.put("success", false);
-                    kefuResult.put("error", e.getMessage());
-                    results.add(kefuResult);
+                    results.add(ChannelSendResult.failure("kefu", e.getMessage()));
                 }
             }
 
@@ -486,46 +495,236 @@ public class SendCustomMessageController {
                 try {
                     SendMessageWithTemplateController.TemplateMessageRequest templateMsg = request.getTemplateMessage();
 
-                    me.chanjar.weixin.mp.bean.template.WxMpTemplateMessage templateMessage =
-                        me.chanjar.weixin.mp.bean.template.WxMpTemplateMessage.builder()
-                        .toUser(templateMsg.getToUser())
-                        .templateId(templateMsg.getTemplateId())
-                        .url(templateMsg.getUrl())
-                        .miniProgram(templateMsg.getMiniProgram())
-                        .build();
-
-                    List<me.chanjar.weixin.mp.bean.template.WxMpTemplateData> templateDataList = new ArrayList<>();
-                    for (Map.Entry<String, String> entry : templateMsg.getData().entrySet()) {
-                        templateDataList.add(new me.chanjar.weixin.mp.bean.template.WxMpTemplateData(
-                            entry.getKey(), entry.getValue(), templateMsg.getColor()));
-                    }
-                    templateMessage.setData(templateDataList);
-
-                    String msgId = wxMpService.getTemplateMsgService().sendTemplateMsg(templateMessage);
+                    String msgId = wxMpService.getTemplateMsgService().sendTemplateMsg(
+                        SendMessageWithTemplateController.buildTemplateMessage(templateMsg));
+                    deliveryIndex.sent(appid, templateMsg.getCampaignId(), templateMsg.getToUser(), msgId);
 
-                    Map<String, Object> templateResult = new HashMap<>();
-                    templateResult.put("type", "template");
-                    templateResult.put("success", true);
-                    templateResult.put("msgId", msgId);
-                    templateResult.put("message", "模板消息发送成功");
-                    results.add(templateResult);
+                    results.add(ChannelSendResult.success("template", msgId, "模板消息发送成功"));
                     log.info("模板消息发送成功，msgId={}", msgId);
                 } catch (Exception e) {
                     log.error("发送模板消息失败: {}", e.getMessage());
-                    Map<String, Object> templateResult = new HashMap<>();
-                    templateResult.put("type", "template");
-                    templateResult.put("success", false);
-                    templateResult.put("error", e.getMessage());
-                    results.add(templateResult);
+                    results.add(ChannelSendResult.failure("template", e.getMessage()));
                 }
             }
 
-            result.put("success", true);
-            result.put("results", results);
-            return JsonUtils.toJson(result);
+            return CombinedSendResponse.success(results);
         } catch (Exception e) {
             log.error("组合发送消息异常: {}", e.getMessage(), e);
-            return buildErrorResult(e.getMessage());
+            return CombinedSendResponse.failure(e.getMessage());
+        }
+    }
+
+    /**
+     * <pre>
+     * 批量发送客服消息，一次请求可以包含不同类型、不同接收者的消息
+     *
+     * 各条消息在共享的发送线程池上并发发送，受 dispatch 配置的并发度和 appid 限流约束；
+     * 单条失败不影响其他条，返回结果与请求中的 messages 一一对应。
+     * </pre>
+     */
+    @PostMapping("/bulkSend")
+    public ApiResult<BulkSendData> bulkSend(@PathVariable String appid,
+                                            @RequestBody BulkKefuMessageRequest request) {
+        try {
+            validateAppid(appid);
+
+            List<KefuMessageRequest> messages = request.getMessages();
+            if (messages == null || messages.isEmpty()) {
+                throw new IllegalArgumentException("messages参数不能为空！");
+            }
+            if (messages.size() > dispatchProperties.getMaxBatchSize()) {
+                throw new IllegalArgumentException(String.format("messages最多%d条！", dispatchProperties.getMaxBatchSize()));
+            }
+            if (messages.contains(null)) {
+                throw new IllegalArgumentException("messages中不能有空元素！");
+            }
+
+            log.info("开始批量发送客服消息，appid={}, 总数={}", appid, messages.size());
+
+            List<BulkItemResult> results = bulkDispatcher.dispatch(appid, messages,
+                (index, message) -> {
+                    // 运行在发送线程上，switchover 是线程本地的，需要重新切换
+                    wxMpService.switchover(appid);
+                    sendKefuMessage(appid, buildKefuMessage(message));
+                    return BulkItemResult.success(index, message.getToUser());
+                },
+                (index, message, e) -> {
+                    log.warn("批量发送客服消息失败，index={}, toUser={}: {}", index, message.getToUser(), e.getMessage());
+                    return BulkItemResult.failure(index, message.getToUser(), e);
+                });
+
+            int successCount = (int) results.stream().filter(BulkItemResult::isSuccess).count();
+            log.info("批量发送客服消息完成，总数={}, 成功={}, 失败={}", results.size(), successCount, results.size() - successCount);
+
+            return ApiResult.success("批量发送完成",
+                new BulkSendData(results, results.size(), successCount, results.size() - successCount));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return ApiResult.failure("批量发送被中断");
+        } catch (Exception e) {
+            log.error("批量发送客服消息异常: {}", e.getMessage(), e);
+            return ApiResult.failure(e.getMessage());
+        }
+    }
+
+    /**
+     * <pre>
+     * 客服消息入队：写入发件箱后立即返回，由后台线程发送，失败按 errcode 自动重试
+     *
+     * 每条可指定幂等 key（为空时用消息内容的摘要），相同 key 的消息只发送一次，
+     * 调用方重试整批时不会重复发送已成功的消息；发送状态通过 /wx/outbox/{appid}/{key} 查询。
+     * </pre>
+     */
+    @PostMapping("/enqueue")
+    public ApiResult<OutboxController.EnqueueData> enqueue(@PathVariable String appid,
+                                                           @RequestBody EnqueueKefuMessageRequest request) {
+        try {
+            validateAppid(appid);
+
+            List<KeyedKefuMessage> messages = request.getMessages();
+            if (messages == null || messages.isEmpty()) {
+                throw new IllegalArgumentException("messages参数不能为空！");
+            }
+            if (messages.size() > dispatchProperties.getMaxBatchSize()) {
+                throw new IllegalArgumentException(String.format("messages最多%d条！", dispatchProperties.getMaxBatchSize()));
+            }
+
+            OutboxController.EnqueueData data = OutboxController.enqueue(outbox, appid, OUTBOX_KIND, messages,
+                KeyedKefuMessage::getKey,
+                message -> {
+                    buildKefuMessage(message);
+                    return JsonUtils.toJson(message);
+                });
+
+            log.info("客服消息入队完成，appid={}, 新入队={}, 重复={}, 拒绝={}", appid, data.getAccepted(),
+                data.getDuplicates(), data.getRejected());
+
+            return ApiResult.success("已接收", data);
+        } catch (Exception e) {
+            log.error("客服消息入队异常: {}", e.getMessage(), e);
+            return ApiResult.failure(e.getMessage());
+        }
+    }
+
+    /**
+     * <pre>
+     * 提交客服消息批量发送任务：消息写入任务目录后立即返回任务 id，由后台按 appid 限流并发发送
+     *
+     * 进度、逐条结果和取消通过 /wx/jobs/{appid}/{jobId} 完成；服务重启后从上次确认的位置继续。
+     * </pre>
+     */
+    @PostMapping("/jobs")
+    public ApiResult<JobController.JobData> submitJob(@PathVariable String appid,
+                                                      @RequestBody KefuJobRequest request) {
+        try {
+            validateAppid(appid);
+
+            JobController.JobData data = JobController.submit(jobManager, appid, JOB_KIND, request.getMessages(),
+                message -> {
+                    buildKefuMessage(message);
+                    return JsonUtils.toJson(message);
+                });
+
+            return ApiResult.success("任务已提交", data);
+        } catch (Exception e) {
+            log.error("提交客服消息任务异常: {}", e.getMessage(), e);
+            return ApiResult.failure(e.getMessage());
+        }
+    }
+
+    /**
+     * 发送客服消息；启用了互动窗口检查的 appid，窗口外的用户直接在本地返回 45015，不调用微信接口
+     */
+    private void sendKefuMessage(String appid, WxMpKefuMessage message) throws WxErrorException {
+        if (interactionWindowIndex.isEnforced(appid) && !interactionWindowIndex.isOpen(appid, message.getToUser())) {
+            throw new WxErrorException(WxError.builder()
+                .errorCode(45015)
+                .errorMsg("用户超过48小时未与公众号互动，不能发送客服消息（本地判断）")
+                .build());
+        }
+        wxMpService.getKefuService().sendKefuMessage(message);
+    }
+
+    /**
+     * 按 msgType 构建客服消息
+     */
+    private WxMpKefuMessage buildKefuMessage(KefuMessageRequest kefuMsg) {
+        if (StringUtils.isBlank(kefuMsg.getToUser())) {
+            throw new IllegalArgumentException("toUser参数不能为空！");
+        }
+        if (StringUtils.isBlank(kefuMsg.getMsgType())) {
+            throw new IllegalArgumentException("msgType参数不能为空！");
+        }
+
+        switch (kefuMsg.getMsgType().toLowerCase()) {
+            case "text":
+                return WxMpKefuMessage.TEXT()
+                    .toUser(kefuMsg.getToUser())
+                    .content(kefuMsg.getContent())
+                    .build();
+            case "image":
+                return WxMpKefuMessage.IMAGE()
+                    .toUser(kefuMsg.getToUser())
+                    .mediaId(kefuMsg.getMediaId())
+                    .build();
+            case "voice":
+                return WxMpKefuMessage.VOICE()
+                    .toUser(kefuMsg.getToUser())
+                    .mediaId(kefuMsg.getMediaId())
+                    .build();
+            case "video":
+                return WxMpKefuMessage.VIDEO()
+                    .toUser(kefuMsg.getToUser())
+                    .mediaId(kefuMsg.getMediaId())
+                    .thumbMediaId(kefuMsg.getThumbMediaId())
+                    .title(kefuMsg.getTitle())
+                    .description(kefuMsg.getDescription())
+                    .build();
+            case "music":
+                return WxMpKefuMessage.MUSIC()
+                    .toUser(kefuMsg.getToUser())
+                    .musicUrl(kefuMsg.getMusicUrl())
+                    .hqMusicUrl(kefuMsg.getHqMusicUrl())
+                    .thumbMediaId(kefuMsg.getThumbMediaId())
+                    .title(kefuMsg.getTitle())
+                    .description(kefuMsg.getDescription())
+                    .build();
+            case "news":
+                List<WxMpKefuMessage.WxArticle> articles = new ArrayList<>();
+                if (kefuMsg.getArticles() != null) {
+                    for (NewsArticle articleData : kefuMsg.getArticles()) {
+                        WxMpKefuMessage.WxArticle article = new WxMpKefuMessage.WxArticle();
+                        article.setTitle(articleData.getTitle());
+                        article.setDescription(articleData.getDescription());
+                        article.setPicUrl(articleData.getPicUrl());
+                        article.setUrl(articleData.getUrl());
+                        articles.add(article);
+                    }
+                }
+                return WxMpKefuMessage.NEWS()
+                    .toUser(kefuMsg.getToUser())
+                    .articles(articles)
+                    .build();
+            case "mpnews":
+                return WxMpKefuMessage.MPNEWS()
+                    .toUser(kefuMsg.getToUser())
+                    .mediaId(kefuMsg.getMediaId())
+                    .build();
+            case "wxcard":
+                return WxMpKefuMessage.WXCARD()
+                    .toUser(kefuMsg.getToUser())
+                    .cardId(kefuMsg.getCardId())
+                    .build();
+            case "miniprogrampage":
+                return WxMpKefuMessage.MINIPROGRAMPAGE()
+                    .toUser(kefuMsg.getToUser())
+                    .title(kefuMsg.getTitle())
+                    .appId(kefuMsg.getAppId())
+                    .pagePath(kefuMsg.getPagePath())
+                    .thumbMediaId(kefuMsg.getThumbMediaId())
+                    .build();
+            default:
+                throw new IllegalArgumentException("不支持的客服消息类型: " + kefuMsg.getMsgType());
         }
     }
 
@@ -547,24 +746,82 @@ public class SendCustomMessageController {
         }
     }
 
+    // ========== 响应实体类 ==========
+
     /**
-     * 构建成功结果
+     * 组合发送的返回结果
      */
-    private String buildSuccessResult(String message) {
-        Map<String, Object> result = new HashMap<>();
-        result.put("success", true);
-        result.put("message", message);
-        return JsonUtils.toJson(result);
+    @Value
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @AllArgsConstructor(access = AccessLevel.PRIVATE)
+    public static class CombinedSendResponse {
+        boolean success;
+        String error;
+        List<ChannelSendResult> results;
+
+        static CombinedSendResponse success(List<ChannelSendResult> results) {
+            return new CombinedSendResponse(true, null, results);
+        }
+
+        static CombinedSendResponse failure(String error) {
+            return new CombinedSendResponse(false, error, null);
+        }
     }
 
     /**
-     * 构建错误结果
+     * 组合发送中单个渠道（kefu、template）的发送结果
      */
-    private String buildErrorResult(String error) {
-        Map<String, Object> result = new HashMap<>();
-        result.put("success", false);
-        result.put("error", error);
-        return JsonUtils.toJson(result);
+    @Value
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @AllArgsConstructor(access = AccessLevel.PRIVATE)
+    public static class ChannelSendResult {
+        String type;
+        boolean success;
+        String msgId;
+        String message;
+        String error;
+
+        static ChannelSendResult success(String type, String msgId, String message) {
+            return new ChannelSendResult(type, true, msgId, message, null);
+        }
+
+        static ChannelSendResult failure(String type, String error) {
+            return new ChannelSendResult(type, false, null, null, error);
+        }
+    }
+
+    /**
+     * 批量发送的返回数据
+     */
+    @Value
+    public static class BulkSendData {
+        List<BulkItemResult> results;
+        int total;
+        int successCount;
+        int failCount;
+    }
+
+    /**
+     * 批量发送中单条消息的结果，index 为该条在请求 messages 中的下标
+     */
+    @Value
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @AllArgsConstructor(access = AccessLevel.PRIVATE)
+    public static class BulkItemResult {
+        int index;
+        String toUser;
+        boolean success;
+        Integer errcode;
+        String error;
+
+        static BulkItemResult success(int index, String toUser) {
+            return new BulkItemResult(index, toUser, true, null, null);
+        }
+
+        static BulkItemResult failure(int index, String toUser, Exception e) {
+            Integer errcode = e instanceof WxErrorException ? ((WxErrorException) e).getError().getErrorCode() : null;
+            return new BulkItemResult(index, toUser, false, errcode, e.getMessage());
+        }
     }
 
     // ========== 请求实体类 ==========
@@ -643,10 +900,43 @@ public class SendCustomMessageController {
 
     @Data
     public static class KefuMessageRequest {
-        private String msgType; // text, image, voice
+        private String msgType; // text, image, voice, video, music, news, mpnews, wxcard, miniprogrampage
         private String toUser;
         private String content; // text消息使用
-        private String mediaId; // image/voice消息使用
+        private String mediaId; // image/voice/video/mpnews消息使用
+        private String thumbMediaId; // video/music/miniprogrampage消息使用
+        private String title; // video/music/miniprogrampage消息使用
+        private String description; // video/music消息使用
+        private String musicUrl; // music消息使用
+        private String hqMusicUrl; // music消息使用
+        private List<NewsArticle> articles; // news消息使用
+        private String cardId; // wxcard消息使用
+        private String appId; // miniprogrampage消息使用
+        private String pagePath; // miniprogrampage消息使用
+    }
+
+    @Data
+    public static class BulkKefuMessageRequest {
+        private List<KefuMessageRequest> messages;
+    }
+
+    /**
+     * 带幂等 key 的客服消息
+     */
+    @Data
+    @EqualsAndHashCode(callSuper = true)
+    public static class KeyedKefuMessage extends KefuMessageRequest {
+        private String key;
+    }
+
+    @Data
+    public static class EnqueueKefuMessageRequest {
+        private List<KeyedKefuMessage> messages;
+    }
+
+    @Data
+    public static class KefuJobRequest {
+        private List<KefuMessageRequest> messages;
     }
 
     @Data
@@ -1,16 +1,41 @@
 package com.github.binarywang.demo.wx.miniapp.controller.send;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.github.binarywang.demo.wx.miniapp.controller.ApiResult;
+import com.github.binarywang.demo.wx.miniapp.dispatch.BulkDispatcher;
+import com.github.binarywang.demo.wx.miniapp.job.JobManager;
+import com.github.binarywang.demo.wx.miniapp.mass.MassStatus;
+import com.github.binarywang.demo.wx.miniapp.mass.MassStatusIndex;
 import com.github.binarywang.demo.wx.miniapp.utils.JsonUtils;
+import com.google.common.collect.Iterators;
+import com.google.common.hash.Hashing;
+import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
+import me.chanjar.weixin.common.api.WxConsts;
+import me.chanjar.weixin.common.error.WxErrorException;
 import me.chanjar.weixin.mp.api.WxMpService;
+import me.chanjar.weixin.mp.bean.WxMpMassOpenIdsMessage;
+import me.chanjar.weixin.mp.bean.WxMpMassTagMessage;
+import me.chanjar.weixin.mp.bean.result.WxMpMassGetResult;
+import me.chanjar.weixin.mp.bean.result.WxMpMassSendResult;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.web.bind.annotation.*;
 
-import java.util.HashMap;
+import javax.annotation.PostConstruct;
+import javax.servlet.http.HttpServletRequest;
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
 
 /**
  * 群发消息控制器
@@ -26,16 +51,73 @@ import java.util.Map;
 @Slf4j
 @RequestMapping("/wx/mass/{appid}")
 public class SendGroupMessageController {
+    private static final String JOB_KIND = "mass";
+    /**
+     * 按 OpenID 列表群发时，每次最多的接收者数量（至少 2 个，见 {@link OpenIdChunks}）
+     */
+    private static final int MAX_OPENIDS = 10000;
+    private static final Set<String> MSG_TYPES = new HashSet<>(Arrays.asList(WxConsts.MassMsgType.TEXT,
+        WxConsts.MassMsgType.IMAGE, WxConsts.MassMsgType.VOICE, WxConsts.MassMsgType.MPNEWS, WxConsts.MassMsgType.MPVIDEO));
+
     private final WxMpService wxMpService;
+    private final JobManager jobManager;
+    private final BulkDispatcher bulkDispatcher;
+    private final MassStatusIndex massStatusIndex;
+
+    /**
+     * 注册批量发送任务中群发消息的发送器
+     */
+    @PostConstruct
+    public void registerSenders() {
+        jobManager.register(JOB_KIND, (appid, payload) -> {
+            // 运行在后台发送线程上，需要自己切换公众号配置
+            if (!wxMpService.switchover(appid)) {
+                throw new IllegalArgumentException(String.format("未找到对应appid=[%s]的公众号配置", appid));
+            }
+            return sendMassMessage(appid, JsonUtils.fromJson(payload, MassJobMessage.class)).getMsgId();
+        });
+    }
+
+    /**
+     * <pre>
+     * 提交群发任务：每条是一次群发（按 OpenID 列表或按标签），写入任务目录后立即返回任务 id，由后台依次发送
+     *
+     * 未指定 clientMsgId 的群发在提交时生成随机的 clientMsgId，随消息写入任务目录，服务重启后续发时不变，由微信去重；
+     * 内容相同的两个任务（如每天的同一条通知）都会发出。
+     * 进度、逐条结果（含 msgId）和取消通过 /wx/jobs/{appid}/{jobId} 完成。
+     * </pre>
+     */
+    @PostMapping("/jobs")
+    public ApiResult<JobController.JobData> submitJob(@PathVariable String appid,
+                                                      @RequestBody MassJobRequest request) {
+        try {
+            validateAppid(appid);
+
+            JobController.JobData data = JobController.submit(jobManager, appid, JOB_KIND, request.getMessages(),
+                message -> {
+                    validateMassMessage(message);
+                    message.setClientMsgId(clientMsgIdSeed(message.getClientMsgId()));
+                    return JsonUtils.toJson(message);
+                });
+
+            return ApiResult.success("任务已提交", data);
+        } catch (Exception e) {
+            log.error("提交群发任务异常: {}", e.getMessage(), e);
+            return ApiResult.failure(e.getMessage());
+        }
+    }
 
     /**
      * <pre>
      * 根据OpenID列表群发文本消息
+     *
+     * openIds 超过 10000 个时自动分片（每片 2 到 10000 个），各片并发提交、按 appid 限流，返回每片的 msgId；
+     * 指定 clientMsgId 时重复提交同一请求由微信去重，不指定时每次请求都会发送
      * </pre>
      */
     @PostMapping("/sendTextByOpenIds")
-    public String sendTextByOpenIds(@PathVariable String appid,
-                                     @RequestBody MassTextByOpenIdsRequest request) {
+    public ApiResult<MassSendData> sendTextByOpenIds(@PathVariable String appid,
+                                                     @RequestBody MassTextByOpenIdsRequest request) {
         try {
             validateAppid(appid);
 
@@ -48,36 +130,25 @@ public class SendGroupMessageController {
 
             log.info("开始根据OpenID列表群发文本消息，appid={}, openId数量={}", appid, request.getOpenIds().size());
 
-            // TODO: 根据实际 WxJava 版本使用正确的 API
-            // 示例代码（需要根据实际版本调整）：
-            // WxMpMassOpenIdsMessage message = new WxMpMassOpenIdsMessage();
-            // message.setMsgType(WxConsts.MassMsgType.TEXT);
-            // message.setContent(request.getContent());
-            // message.setToUsers(request.getOpenIds());
-            // WxMpMassSendResult result = wxMpService.getMassMessageService().massOpenIdsMessageSend(message);
-
-            log.warn("群发消息功能需要根据实际 WxJava 版本实现，请参考官方文档");
-
-            Map<String, Object> response = new HashMap<>();
-            response.put("success", false);
-            response.put("message", "群发消息功能需要根据实际 WxJava 版本实现");
-            response.put("note", "请参考文档：https://github.com/binarywang/WxJava/wiki/MP_%E7%BE%A4%E5%8F%91%E6%B6%88%E6%81%AF");
-
-            return JsonUtils.toJson(response);
+            MassJobMessage message = new MassJobMessage();
+            message.setMsgType(WxConsts.MassMsgType.TEXT);
+            message.setContent(request.getContent());
+            message.setClientMsgId(request.getClientMsgId());
+            return sendInChunks(appid, request.getOpenIds().iterator(), message);
         } catch (Exception e) {
             log.error("群发文本消息异常: {}", e.getMessage(), e);
-            return buildErrorResult(e.getMessage());
+            return ApiResult.failure(e.getMessage());
         }
     }
 
     /**
      * <pre>
-     * 根据OpenID列表群发图片消息
+     * 根据OpenID列表群发图片消息（分片同 sendTextByOpenIds）
      * </pre>
      */
     @PostMapping("/sendImageByOpenIds")
-    public String sendImageByOpenIds(@PathVariable String appid,
-                                      @RequestBody MassImageByOpenIdsRequest request) {
+    public ApiResult<MassSendData> sendImageByOpenIds(@PathVariable String appid,
+                                                      @RequestBody MassImageByOpenIdsRequest request) {
         try {
             validateAppid(appid);
 
@@ -91,23 +162,25 @@ public class SendGroupMessageController {
             log.info("开始根据OpenID列表群发图片消息，appid={}, openId数量={}, mediaId={}", 
                 appid, request.getOpenIds().size(), request.getMediaId());
 
-            // TODO: 实现群发图片消息逻辑
-
-            return buildErrorResult("功能待实现，请参考 WxJava 官方文档");
+            MassJobMessage message = new MassJobMessage();
+            message.setMsgType(WxConsts.MassMsgType.IMAGE);
+            message.setMediaId(request.getMediaId());
+            message.setClientMsgId(request.getClientMsgId());
+            return sendInChunks(appid, request.getOpenIds().iterator(), message);
         } catch (Exception e) {
             log.error("群发图片消息异常: {}", e.getMessage(), e);
-            return buildErrorResult(e.getMessage());
+            return ApiResult.failure(e.getMessage());
         }
     }
 
     /**
      * <pre>
-     * 根据OpenID列表群发图文消息
+     * 根据OpenID列表群发图文消息（分片同 sendTextByOpenIds）
      * </pre>
      */
     @PostMapping("/sendNewsByOpenIds")
-    public String sendNewsByOpenIds(@PathVariable String appid,
-                                     @RequestBody MassNewsByOpenIdsRequest request) {
+    public ApiResult<MassSendData> sendNewsByOpenIds(@PathVariable String appid,
+                                                     @RequestBody MassNewsByOpenIdsRequest request) {
         try {
             validateAppid(appid);
 
@@ -121,12 +194,77 @@ public class SendGroupMessageController {
             log.info("开始根据OpenID列表群发图文消息，appid={}, openId数量={}, mediaId={}", 
                 appid, request.getOpenIds().size(), request.getMediaId());
 
-            // TODO: 实现群发图文消息逻辑
-
-            return buildErrorResult("功能待实现，请参考 WxJava 官方文档");
+            MassJobMessage message = new MassJobMessage();
+            message.setMsgType(WxConsts.MassMsgType.MPNEWS);
+            message.setMediaId(request.getMediaId());
+            message.setClientMsgId(request.getClientMsgId());
+            return sendInChunks(appid, request.getOpenIds().iterator(), message);
         } catch (Exception e) {
             log.error("群发图文消息异常: {}", e.getMessage(), e);
-            return buildErrorResult(e.getMessage());
+            return ApiResult.failure(e.getMessage());
+        }
+    }
+
+    /**
+     * <pre>
+     * 按上传的 openid 文件群发：请求体每行一个 openid（CSV 取第一列，可带 openid 表头）
+     *
+     * 边读边分片发送，最多 dispatch.max-concurrency-per-request 片在发送中，内存占用与文件大小无关；
+     * 返回每片的 msgId。
+     * </pre>
+     */
+    @PostMapping("/sendByOpenIdFile")
+    public ApiResult<MassSendData> sendByOpenIdFile(@PathVariable String appid,
+                                                    @RequestParam String msgType,
+                                                    @RequestParam(required = false) String content,
+                                                    @RequestParam(required = false) String mediaId,
+                                                    @RequestParam(defaultValue = "false") Boolean sendIgnoreReprint,
+                                                    @RequestParam(required = false) String clientMsgId,
+                                                    HttpServletRequest request) {
+        try {
+            validateAppid(appid);
+
+            MassJobMessage message = massMessage(msgType, content, mediaId, sendIgnoreReprint, clientMsgId);
+            log.info("开始按openid文件群发，appid={}, msgType={}", appid, msgType);
+
+            BufferedReader reader = new BufferedReader(new InputStreamReader(request.getInputStream(), StandardCharsets.UTF_8));
+            return sendInChunks(appid, OpenIdChunks.readLines(reader), message);
+        } catch (Exception e) {
+            log.error("按openid文件群发异常: {}", e.getMessage(), e);
+            return ApiResult.failure(e.getMessage());
+        }
+    }
+
+    /**
+     * <pre>
+     * 按上传的 openid 文件提交群发任务（文件格式同 sendByOpenIdFile）：分片写入任务目录后立即返回任务 id
+     *
+     * 每片是任务中的一条，进度、每片的 msgId 和取消通过 /wx/jobs/{appid}/{jobId} 完成。
+     * 每片的 clientMsgId 规则同 sendByOpenIdFile，在提交时确定并写入任务目录，续发时不变。
+     * </pre>
+     */
+    @PostMapping("/jobs/openIdFile")
+    public ApiResult<JobController.JobData> submitOpenIdFileJob(@PathVariable String appid,
+                                                                @RequestParam String msgType,
+                                                                @RequestParam(required = false) String content,
+                                                                @RequestParam(required = false) String mediaId,
+                                                                @RequestParam(defaultValue = "false") Boolean sendIgnoreReprint,
+                                                                @RequestParam(required = false) String clientMsgId,
+                                                                HttpServletRequest request) {
+        try {
+            validateAppid(appid);
+
+            MassJobMessage message = massMessage(msgType, content, mediaId, sendIgnoreReprint, clientMsgId);
+            String seed = clientMsgIdSeed(clientMsgId);
+            BufferedReader reader = new BufferedReader(new InputStreamReader(request.getInputStream(), StandardCharsets.UTF_8));
+            Iterator<String> payloads = Iterators.transform(
+                new OpenIdChunks(OpenIdChunks.readLines(reader), MAX_OPENIDS),
+                openIds -> JsonUtils.toJson(chunkMessage(message, openIds, seed)));
+
+            return ApiResult.success("任务已提交", JobController.JobData.of(jobManager.submit(appid, JOB_KIND, payloads)));
+        } catch (Exception e) {
+            log.error("提交openid文件群发任务异常: {}", e.getMessage(), e);
+            return ApiResult.failure(e.getMessage());
         }
     }
 
@@ -136,8 +274,8 @@ public class SendGroupMessageController {
      * </pre>
      */
     @PostMapping("/sendTextByTag")
-    public String sendTextByTag(@PathVariable String appid,
-                                 @RequestBody MassTextByTagRequest request) {
+    public ApiResult<Void> sendTextByTag(@PathVariable String appid,
+                                         @RequestBody MassTextByTagRequest request) {
         try {
             validateAppid(appid);
 
@@ -158,10 +296,10 @@ public class SendGroupMessageController {
             // message.setTagId(request.getTagId());
             // WxMpMassSendResult result = wxMpService.getMassMessageService().massTagMessageSend(message);
 
-            return buildErrorResult("功能待实现，请参考 WxJava 官方文档");
+            return ApiResult.failure("功能待实现，请参考 WxJava 官方文档");
         } catch (Exception e) {
             log.error("根据标签群发文本消息异常: {}", e.getMessage(), e);
-            return buildErrorResult(e.getMessage());
+            return ApiResult.failure(e.getMessage());
         }
     }
 
@@ -171,8 +309,8 @@ public class SendGroupMessageController {
      * </pre>
      */
     @PostMapping("/sendNewsByTag")
-    public String sendNewsByTag(@PathVariable String appid,
-                                 @RequestBody MassNewsByTagRequest request) {
+    public ApiResult<Void> sendNewsByTag(@PathVariable String appid,
+                                         @RequestBody MassNewsByTagRequest request) {
         try {
             validateAppid(appid);
 
@@ -188,10 +326,10 @@ public class SendGroupMessageController {
 
             // TODO: 实现根据标签群发图文消息逻辑
 
-            return buildErrorResult("功能待实现，请参考 WxJava 官方文档");
+            return ApiResult.failure("功能待实现，请参考 WxJava 官方文档");
         } catch (Exception e) {
             log.error("根据标签群发图文消息异常: {}", e.getMessage(), e);
-            return buildErrorResult(e.getMessage());
+            return ApiResult.failure(e.getMessage());
         }
     }
 
@@ -201,8 +339,8 @@ public class SendGroupMessageController {
      * </pre>
      */
     @PostMapping("/preview")
-    public String previewMessage(@PathVariable String appid,
-                                 @RequestBody PreviewMessageRequest request) {
+    public ApiResult<Void> previewMessage(@PathVariable String appid,
+                                          @RequestBody PreviewMessageRequest request) {
         try {
             validateAppid(appid);
 
@@ -218,36 +356,42 @@ public class SendGroupMessageController {
 
             // TODO: 实现预览消息逻辑
 
-            return buildErrorResult("功能待实现，请参考 WxJava 官方文档");
+            return ApiResult.failure("功能待实现，请参考 WxJava 官方文档");
         } catch (Exception e) {
             log.error("预览消息异常: {}", e.getMessage(), e);
-            return buildErrorResult(e.getMessage());
+            return ApiResult.failure(e.getMessage());
         }
     }
 
     /**
      * <pre>
      * 查询群发消息状态
+     *
+     * 状态来自本地索引：本服务发出时登记，收到 MASSSENDJOBFINISH 事件时更新（含送达、过滤、失败数量），
+     * 超时未收到事件的由后台调用查询接口补齐。
      * </pre>
      */
     @GetMapping("/status/{msgId}")
-    public String getMassMessageStatus(@PathVariable String appid,
-                                       @PathVariable String msgId) {
+    public ApiResult<MassStatus> getMassMessageStatus(@PathVariable String appid,
+                                                      @PathVariable String msgId) {
         try {
             validateAppid(appid);
 
-            if (StringUtils.isBlank(msgId)) {
-                throw new IllegalArgumentException("msgId参数不能为空！");
+            if (!StringUtils.isNumeric(msgId)) {
+                throw new IllegalArgumentException("msgId参数必须是数字！");
             }
 
-            log.info("查询群发消息状态，appid={}, msgId={}", appid, msgId);
-
-            // TODO: 实现查询群发消息状态逻辑
-
-            return buildErrorResult("功能待实现，请参考 WxJava 官方文档");
+            // 优先用本地索引（由群发结果事件更新），本服务之外发出、还没有记录的群发才调用查询接口
+            MassStatus status = massStatusIndex.get(appid, msgId);
+            if (status == null) {
+                log.info("本地没有群发状态，调用接口查询，appid={}, msgId={}", appid, msgId);
+                WxMpMassGetResult result = wxMpService.getMassMessageService().messageMassGet(Long.valueOf(msgId));
+                status = massStatusIndex.onPolled(appid, msgId, result.getMsgstatus());
+            }
+            return ApiResult.successData(status);
         } catch (Exception e) {
             log.error("查询群发消息状态异常: {}", e.getMessage(), e);
-            return buildErrorResult(e.getMessage());
+            return ApiResult.failure(e.getMessage());
         }
     }
 
@@ -257,9 +401,9 @@ public class SendGroupMessageController {
      * </pre>
      */
     @DeleteMapping("/delete/{msgId}")
-    public String deleteMassMessage(@PathVariable String appid,
-                                    @PathVariable String msgId,
-                                    @RequestParam(required = false, defaultValue = "0") Integer articleIdx) {
+    public ApiResult<Void> deleteMassMessage(@PathVariable String appid,
+                                             @PathVariable String msgId,
+                                             @RequestParam(required = false, defaultValue = "0") Integer articleIdx) {
         try {
             validateAppid(appid);
 
@@ -271,13 +415,154 @@ public class SendGroupMessageController {
 
             // TODO: 实现删除群发消息逻辑
 
-            return buildErrorResult("功能待实现，请参考 WxJava 官方文档");
+            return ApiResult.failure("功能待实现，请参考 WxJava 官方文档");
         } catch (Exception e) {
             log.error("删除群发消息异常: {}", e.getMessage(), e);
-            return buildErrorResult(e.getMessage());
+            return ApiResult.failure(e.getMessage());
+        }
+    }
+
+    /**
+     * 校验一条群发消息，不合法时抛出 IllegalArgumentException
+     */
+    static void validateMassMessage(MassJobMessage message) {
+        validateMassContent(message);
+
+        boolean byOpenIds = message.getOpenIds() != null && !message.getOpenIds().isEmpty();
+        boolean byTag = message.getTagId() != null || Boolean.TRUE.equals(message.getSendAll());
+        if (byOpenIds == byTag) {
+            throw new IllegalArgumentException("openIds与tagId（或sendAll）必须且只能指定一种！");
+        }
+        if (byOpenIds && (message.getOpenIds().size() < OpenIdChunks.MIN_SIZE || message.getOpenIds().size() > MAX_OPENIDS)) {
+            throw new IllegalArgumentException(String.format("openIds数量须在%d到%d之间！", OpenIdChunks.MIN_SIZE, MAX_OPENIDS));
         }
     }
 
+    /**
+     * 校验群发的消息类型、内容和 clientMsgId（不含接收者）
+     */
+    private static void validateMassContent(MassJobMessage message) {
+        if (!MSG_TYPES.contains(message.getMsgType())) {
+            throw new IllegalArgumentException(String.format("msgType必须是%s之一！", MSG_TYPES));
+        }
+        if (WxConsts.MassMsgType.TEXT.equals(message.getMsgType())) {
+            if (StringUtils.isBlank(message.getContent())) {
+                throw new IllegalArgumentException("content参数不能为空！");
+            }
+        } else if (StringUtils.isBlank(message.getMediaId())) {
+            throw new IllegalArgumentException("mediaId参数不能为空！");
+        }
+        if (message.getClientMsgId() != null && message.getClientMsgId().length() > 64) {
+            throw new IllegalArgumentException("clientMsgId最长64个字符！");
+        }
+    }
+
+    /**
+     * <pre>
+     * 把 openIds 切分为不超过 10000 个的分片，用同一内容并发群发，返回每片的结果（按分片顺序）
+     *
+     * 调用方指定了 clientMsgId 时，每片的 clientMsgId 由该片的内容（含 openid 和调用方的 clientMsgId）生成，
+     * 重复提交同一请求时由微信去重；未指定时混入本次请求的随机数，内容相同的两次群发（如每天的同一条通知）都会发出。
+     * </pre>
+     */
+    private ApiResult<MassSendData> sendInChunks(String appid, Iterator<String> openIds,
+                                                 MassJobMessage message) throws InterruptedException {
+        validateMassContent(message);
+        String seed = clientMsgIdSeed(message.getClientMsgId());
+        List<MassChunkResult> results = new ArrayList<>();
+        bulkDispatcher.dispatchStream(appid,
+            Iterators.transform(new OpenIdChunks(openIds, MAX_OPENIDS), chunk -> chunkMessage(message, chunk, seed)),
+            (index, chunk) -> {
+                // 运行在发送线程上，switchover 是线程本地的，需要重新切换
+                wxMpService.switchover(appid);
+                WxMpMassSendResult result = sendMassMessage(appid, chunk);
+                return MassChunkResult.success(index, chunk.getOpenIds().size(), result.getMsgId(), result.getMsgDataId());
+            },
+            (index, chunk, e) -> MassChunkResult.failure(index, chunk.getOpenIds().size(),
+                e instanceof WxErrorException ? ((WxErrorException) e).getError().getErrorCode() : null, e.getMessage()),
+            results::add);
+
+        MassSendData data = MassSendData.of(results);
+        log.info("群发完成，appid={}, openId数量={}, 分片数={}, 失败分片数={}", appid, data.getTotal(),
+            data.getChunkCount(), data.getFailedChunks());
+        return ApiResult.success(String.format("共%d个openid，分%d片群发，失败%d片",
+            data.getTotal(), data.getChunkCount(), data.getFailedChunks()), data);
+    }
+
+    private static MassJobMessage massMessage(String msgType, String content, String mediaId,
+                                              Boolean sendIgnoreReprint, String clientMsgId) {
+        MassJobMessage message = new MassJobMessage();
+        message.setMsgType(msgType);
+        message.setContent(content);
+        message.setMediaId(mediaId);
+        message.setSendIgnoreReprint(sendIgnoreReprint);
+        message.setClientMsgId(clientMsgId);
+        validateMassContent(message);
+        return message;
+    }
+
+    /**
+     * 同一内容发给一个分片的群发消息，clientMsgId 为该片内容与 seed 的摘要
+     *
+     * @param seed 参与摘要的 clientMsgId，见 {@link #clientMsgIdSeed(String)}
+     */
+    private static MassJobMessage chunkMessage(MassJobMessage message, List<String> openIds, String seed) {
+        MassJobMessage chunk = new MassJobMessage();
+        chunk.setOpenIds(openIds);
+        chunk.setMsgType(message.getMsgType());
+        chunk.setContent(message.getContent());
+        chunk.setMediaId(message.getMediaId());
+        chunk.setSendIgnoreReprint(message.getSendIgnoreReprint());
+        chunk.setClientMsgId(seed);
+        chunk.setClientMsgId(digestClientMsgId(chunk));
+        return chunk;
+    }
+
+    /**
+     * 调用方指定的 clientMsgId（重复提交由微信去重），未指定时为本次请求生成的随机值（每次请求都会发出）
+     */
+    private static String clientMsgIdSeed(String clientMsgId) {
+        return StringUtils.isBlank(clientMsgId) ? UUID.randomUUID().toString() : clientMsgId;
+    }
+
+    /**
+     * 用消息内容的摘要作为 clientMsgId（64 个字符）
+     */
+    private static String digestClientMsgId(MassJobMessage message) {
+        return Hashing.sha256().hashString(JsonUtils.toJson(message), StandardCharsets.UTF_8).toString();
+    }
+
+    /**
+     * 发送一条群发消息（需已切换到对应公众号），并在群发状态索引中登记
+     */
+    private WxMpMassSendResult sendMassMessage(String appid, MassJobMessage message) throws WxErrorException {
+        boolean ignoreReprint = Boolean.TRUE.equals(message.getSendIgnoreReprint());
+        WxMpMassSendResult result;
+        if (message.getOpenIds() != null && !message.getOpenIds().isEmpty()) {
+            WxMpMassOpenIdsMessage openIdsMessage = new WxMpMassOpenIdsMessage();
+            openIdsMessage.setMsgType(message.getMsgType());
+            openIdsMessage.setContent(message.getContent());
+            openIdsMessage.setMediaId(message.getMediaId());
+            openIdsMessage.setToUsers(message.getOpenIds());
+            openIdsMessage.setSendIgnoreReprint(ignoreReprint);
+            openIdsMessage.setClientMsgId(message.getClientMsgId());
+            result = wxMpService.getMassMessageService().massOpenIdsMessageSend(openIdsMessage);
+        } else {
+            WxMpMassTagMessage tagMessage = new WxMpMassTagMessage();
+            tagMessage.setMsgType(message.getMsgType());
+            tagMessage.setContent(message.getContent());
+            tagMessage.setMediaId(message.getMediaId());
+            tagMessage.setTagId(message.getTagId());
+            tagMessage.setSendAll(Boolean.TRUE.equals(message.getSendAll()));
+            tagMessage.setSendIgnoreReprint(ignoreReprint);
+            tagMessage.setClientMsgId(message.getClientMsgId());
+            result = wxMpService.getMassMessageService().massGroupMessageSend(tagMessage);
+        }
+        massStatusIndex.sent(appid, result.getMsgId(), result.getMsgDataId(),
+            message.getOpenIds() == null ? null : message.getOpenIds().size());
+        return result;
+    }
+
     /**
      * 验证appid并切换配置
      */
@@ -296,34 +581,27 @@ public class SendGroupMessageController {
         }
     }
 
-    /**
-     * 构建错误结果
-     */
-    private String buildErrorResult(String error) {
-        Map<String, Object> result = new HashMap<>();
-        result.put("success", false);
-        result.put("error", error);
-        return JsonUtils.toJson(result);
-    }
-
     // ========== 请求实体类 ==========
 
     @Data
     public static class MassTextByOpenIdsRequest {
         private List<String> openIds;
         private String content;
+        private String clientMsgId; // 可选，指定后重复提交由微信去重，最长64个字符
     }
 
     @Data
     public static class MassImageByOpenIdsRequest {
         private List<String> openIds;
         private String mediaId;
+        private String clientMsgId; // 可选，指定后重复提交由微信去重，最长64个字符
     }
 
     @Data
     public static class MassNewsByOpenIdsRequest {
         private List<String> openIds;
         private String mediaId;
+        private String clientMsgId; // 可选，指定后重复提交由微信去重，最长64个字符
     }
 
     @Data
@@ -340,6 +618,26 @@ public class SendGroupMessageController {
         private Integer sendIgnoreReprint; // 0-不忽略，1-忽略
     }
 
+    /**
+     * 群发任务中的一条群发：openIds 与 tagId（或 sendAll）二选一
+     */
+    @Data
+    public static class MassJobMessage {
+        private List<String> openIds;
+        private Long tagId;
+        private Boolean sendAll; // 发给全部粉丝
+        private String msgType; // text, image, voice, mpnews, mpvideo
+        private String content; // 文本消息内容
+        private String mediaId; // 媒体消息的mediaId
+        private Boolean sendIgnoreReprint; // 图文被判定为转载时是否继续群发
+        private String clientMsgId; // 群发的幂等id，最长64个字符
+    }
+
+    @Data
+    public static class MassJobRequest {
+        private List<MassJobMessage> messages;
+    }
+
     @Data
     public static class PreviewMessageRequest {
         private String toUser; // 接收消息的用户openid
@@ -348,4 +646,58 @@ public class SendGroupMessageController {
         private String content; // 文本消息内容
         private String mediaId; // 媒体消息的mediaId
     }
+
+    // ========== 响应实体类 ==========
+
+    /**
+     * 分片群发结果汇总；successCount、failCount 按 openid 个数统计
+     */
+    @Value
+    public static class MassSendData {
+        List<MassChunkResult> chunks;
+        int total;
+        int chunkCount;
+        int failedChunks;
+        int successCount;
+        int failCount;
+
+        static MassSendData of(List<MassChunkResult> chunks) {
+            int total = 0;
+            int failedChunks = 0;
+            int successCount = 0;
+            for (MassChunkResult chunk : chunks) {
+                total += chunk.getSize();
+                if (chunk.isSuccess()) {
+                    successCount += chunk.getSize();
+                } else {
+                    failedChunks++;
+                }
+            }
+            return new MassSendData(chunks, total, chunks.size(), failedChunks, successCount, total - successCount);
+        }
+    }
+
+    /**
+     * 一个分片的群发结果，index 为分片序号（从 0 开始），size 为该片的 openid 个数
+     */
+    @Value
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @AllArgsConstructor(access = AccessLevel.PRIVATE)
+    public static class MassChunkResult {
+        int index;
+        int size;
+        boolean success;
+        String msgId;
+        String msgDataId;
+        Integer errcode;
+        String error;
+
+        static MassChunkResult success(int index, int size, String msgId, String msgDataId) {
+            return new MassChunkResult(index, size, true, msgId, msgDataId, null, null);
+        }
+
+        static MassChunkResult failure(int index, int size, Integer errcode, String error) {
+            return new MassChunkResult(index, size, false, null, null, errcode, error);
+        }
+    }
 }
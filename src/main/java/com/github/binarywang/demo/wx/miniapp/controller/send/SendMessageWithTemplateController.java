@@ -1,20 +1,40 @@
 package com.github.binarywang.demo.wx.miniapp.controller.send;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.github.binarywang.demo.wx.miniapp.config.DispatchProperties;
+import com.github.binarywang.demo.wx.miniapp.controller.ApiResult;
+import com.github.binarywang.demo.wx.miniapp.delivery.TemplateDeliveryIndex;
+import com.github.binarywang.demo.wx.miniapp.dispatch.BulkDispatcher;
+import com.github.binarywang.demo.wx.miniapp.job.JobManager;
+import com.github.binarywang.demo.wx.miniapp.outbox.Outbox;
 import com.github.binarywang.demo.wx.miniapp.utils.JsonUtils;
+import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
 import me.chanjar.weixin.common.error.WxErrorException;
 import me.chanjar.weixin.mp.api.WxMpService;
 import me.chanjar.weixin.mp.bean.template.WxMpTemplateData;
 import me.chanjar.weixin.mp.bean.template.WxMpTemplateMessage;
+import me.chanjar.weixin.mp.enums.WxMpApiUrl;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.web.bind.annotation.*;
 
+import javax.annotation.PostConstruct;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
 
 /**
  * 发送模板消息控制器
@@ -27,7 +47,40 @@ import java.util.Map;
 @Slf4j
 @RequestMapping("/wx/template/{appid}")
 public class SendMessageWithTemplateController {
+    private static final String OUTBOX_KIND = "template";
+    private static final String JOB_KIND = "template";
+
     private final WxMpService wxMpService;
+    private final Outbox outbox;
+    private final BulkDispatcher bulkDispatcher;
+    private final DispatchProperties dispatchProperties;
+    private final JobManager jobManager;
+    private final TemplateDeliveryIndex deliveryIndex;
+
+    /**
+     * 注册发件箱和批量发送任务中模板消息的发送器
+     */
+    @PostConstruct
+    public void registerSenders() {
+        outbox.register(OUTBOX_KIND, entry -> sendPayload(entry.getAppid(), entry.getPayload()));
+        jobManager.register(JOB_KIND, this::sendPayload);
+    }
+
+    /**
+     * 发送 JSON 格式的模板消息；运行在后台发送线程上，需要自己切换公众号配置
+     */
+    private String sendPayload(String appid, String payload) throws WxErrorException {
+        if (!wxMpService.switchover(appid)) {
+            throw new IllegalArgumentException(String.format("未找到对应appid=[%s]的公众号配置", appid));
+        }
+        TemplateMessageRequest request = JsonUtils.fromJson(payload, TemplateMessageRequest.class);
+        if (request == null) {
+            throw new IllegalArgumentException(String.format("消息内容无法解析，appid=[%s]", appid));
+        }
+        String msgId = wxMpService.getTemplateMsgService().sendTemplateMsg(buildTemplateMessage(request));
+        deliveryIndex.sent(appid, request.getCampaignId(), request.getToUser(), msgId);
+        return msgId;
+    }
 
     /**
      * <pre>
@@ -35,8 +88,8 @@ public class SendMessageWithTemplateController {
      * </pre>
      */
     @PostMapping("/send")
-    public String sendTemplateMessage(@PathVariable String appid,
-                                      @RequestBody TemplateMessageRequest request) {
+    public ApiResult<TemplateSendData> sendTemplateMessage(@PathVariable String appid,
+                                                           @RequestBody TemplateMessageRequest request) {
         try {
             // 切换公众号配置
             if (StringUtils.isBlank(appid)) {
@@ -53,33 +106,9 @@ public class SendMessageWithTemplateController {
                 throw new IllegalArgumentException(String.format("公众号配置加载失败，appid=[%s]的配置中appId为空，请在application.yml中填写正确的appId！", appid));
             }
 
-            // 参数验证
-            if (StringUtils.isBlank(request.getToUser())) {
-                throw new IllegalArgumentException("toUser参数不能为空！");
-            }
-            if (StringUtils.isBlank(request.getTemplateId())) {
-                throw new IllegalArgumentException("templateId参数不能为空！");
-            }
-            if (request.getData() == null || request.getData().isEmpty()) {
-                throw new IllegalArgumentException("data参数不能为空！");
-            }
-
             log.info("开始发送模板消息，appid={}, toUser={}, templateId={}", appid, request.getToUser(), request.getTemplateId());
 
-            // 构建模板消息
-            WxMpTemplateMessage templateMessage = WxMpTemplateMessage.builder()
-                .toUser(request.getToUser())
-                .templateId(request.getTemplateId())
-                .url(request.getUrl())
-                .miniProgram(request.getMiniProgram())
-                .build();
-
-            // 添加模板数据
-            List<WxMpTemplateData> templateDataList = new ArrayList<>();
-            for (Map.Entry<String, String> entry : request.getData().entrySet()) {
-                templateDataList.add(new WxMpTemplateData(entry.getKey(), entry.getValue(), request.getColor()));
-            }
-            templateMessage.setData(templateDataList);
+            WxMpTemplateMessage templateMessage = buildTemplateMessage(request);
 
             log.info("模板消息内容: {}", JsonUtils.toJson(templateMessage));
 
@@ -87,41 +116,29 @@ public class SendMessageWithTemplateController {
             String msgId = wxMpService.getTemplateMsgService().sendTemplateMsg(templateMessage);
 
             log.info("模板消息发送成功，msgId={}", msgId);
+            deliveryIndex.sent(appid, request.getCampaignId(), request.getToUser(), msgId);
 
-            // 构建返回结果
-            Map<String, Object> result = new HashMap<>();
-            Map<String, Object> data = new HashMap<>();
-            data.put("msgId", msgId);
-            data.put("toUser", request.getToUser());
-            data.put("templateId", request.getTemplateId());
-            result.put("data", data);
-            result.put("success", true);
-            result.put("message", "模板消息发送成功");
-
-            return JsonUtils.toJson(result);
+            return ApiResult.success("模板消息发送成功",
+                new TemplateSendData(msgId, request.getToUser(), request.getTemplateId()));
         } catch (WxErrorException e) {
             log.error("发送模板消息失败: {}", e.getMessage(), e);
-            Map<String, Object> errorResult = new HashMap<>();
-            errorResult.put("success", false);
-            errorResult.put("error", e.getMessage());
-            return JsonUtils.toJson(errorResult);
+            return ApiResult.failure(e.getMessage());
         } catch (Exception e) {
             log.error("发送模板消息异常: {}", e.getMessage(), e);
-            Map<String, Object> errorResult = new HashMap<>();
-            errorResult.put("success", false);
-            errorResult.put("error", e.getMessage());
-            return JsonUtils.toJson(errorResult);
+            return ApiResult.failure(e.getMessage());
         }
     }
 
     /**
      * <pre>
      * 批量发送模板消息
+     *
+     * 各条消息在共享的发送线程池上并发发送，受 dispatch 配置的并发度和 appid 限流约束，返回结果保持请求中的顺序。
      * </pre>
      */
     @PostMapping("/batchSend")
-    public String batchSendTemplateMessage(@PathVariable String appid,
-                                           @RequestBody BatchTemplateMessageRequest request) {
+    public ApiResult<BatchSendData> batchSendTemplateMessage(@PathVariable String appid,
+                                                             @RequestBody BatchTemplateMessageRequest request) {
         try {
             // 切换公众号配置
             if (StringUtils.isBlank(appid)) {
@@ -142,88 +159,398 @@ public class SendMessageWithTemplateController {
             if (request.getMessages() == null || request.getMessages().isEmpty()) {
                 throw new IllegalArgumentException("messages参数不能为空！");
             }
+            if (request.getMessages().size() > dispatchProperties.getMaxBatchSize()) {
+                throw new IllegalArgumentException(String.format("messages最多%d条！", dispatchProperties.getMaxBatchSize()));
+            }
+            if (request.getMessages().contains(null)) {
+                throw new IllegalArgumentException("messages中不能有空元素！");
+            }
 
             log.info("开始批量发送模板消息，appid={}, 消息数量={}", appid, request.getMessages().size());
 
-            List<Map<String, Object>> results = new ArrayList<>();
-            int successCount = 0;
-            int failCount = 0;
+            List<TemplateSendResult> results = bulkDispatcher.dispatch(appid, request.getMessages(),
+                (index, msgRequest) -> {
+                    // 运行在发送线程上，switchover 是线程本地的，需要重新切换
+                    wxMpService.switchover(appid);
+                    String msgId = wxMpService.getTemplateMsgService().sendTemplateMsg(buildTemplateMessage(msgRequest));
+                    deliveryIndex.sent(appid, msgRequest.getCampaignId(), msgRequest.getToUser(), msgId);
+                    return TemplateSendResult.success(msgRequest.getToUser(), msgId);
+                },
+                (index, msgRequest, e) -> {
+                    log.error("发送模板消息失败，toUser={}: {}", msgRequest.getToUser(), e.getMessage());
+                    return TemplateSendResult.failure(msgRequest.getToUser(), e.getMessage());
+                });
+            int successCount = (int) results.stream().filter(TemplateSendResult::isSuccess).count();
+            int failCount = results.size() - successCount;
+
+            BatchSendData data = new BatchSendData(results, request.getMessages().size(), successCount, failCount);
+
+            log.info("批量发送模板消息完成，成功={}, 失败={}", successCount, failCount);
 
-            for (TemplateMessageRequest msgRequest : request.getMessages()) {
-                Map<String, Object> result = new HashMap<>();
-                try {
-                    // 参数验证
-                    if (StringUtils.isBlank(msgRequest.getToUser())) {
+            return ApiResult.successData(data);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return ApiResult.failure("批量发送被中断");
+        } catch (Exception e) {
+            log.error("批量发送模板消息异常: {}", e.getMessage(), e);
+            return ApiResult.failure(e.getMessage());
+        }
+    }
+
+    /**
+     * <pre>
+     * 模板消息入队：写入发件箱后立即返回，由后台线程发送，失败按 errcode 自动重试
+     *
+     * 每条可指定幂等 key（为空时用消息内容的摘要），相同 key 的消息只发送一次；
+     * 发送状态（含 msgId）通过 /wx/outbox/{appid}/{key} 查询。
+     * </pre>
+     */
+    @PostMapping("/enqueue")
+    public ApiResult<OutboxController.EnqueueData> enqueue(@PathVariable String appid,
+                                                           @RequestBody EnqueueTemplateMessageRequest request) {
+        try {
+            if (StringUtils.isBlank(appid)) {
+                throw new IllegalArgumentException("appid参数不能为空！");
+            }
+            if (!wxMpService.switchover(appid)) {
+                throw new IllegalArgumentException(String.format("未找到对应appid=[%s]的公众号配置，请检查application.yml中的wx.mp.configs配置，确保appId已正确填写！", appid));
+            }
+
+            List<KeyedTemplateMessage> messages = request.getMessages();
+            if (messages == null || messages.isEmpty()) {
+                throw new IllegalArgumentException("messages参数不能为空！");
+            }
+            if (messages.size() > dispatchProperties.getMaxBatchSize()) {
+                throw new IllegalArgumentException(String.format("messages最多%d条！", dispatchProperties.getMaxBatchSize()));
+            }
+
+            OutboxController.EnqueueData data = OutboxController.enqueue(outbox, appid, OUTBOX_KIND, messages,
+                KeyedTemplateMessage::getKey,
+                message -> {
+                    buildTemplateMessage(message);
+                    return JsonUtils.toJson(message);
+                });
+
+            log.info("模板消息入队完成，appid={}, 新入队={}, 重复={}, 拒绝={}", appid, data.getAccepted(),
+                data.getDuplicates(), data.getRejected());
+
+            return ApiResult.success("已接收", data);
+        } catch (Exception e) {
+            log.error("模板消息入队异常: {}", e.getMessage(), e);
+            return ApiResult.failure(e.getMessage());
+        }
+    }
+
+    /**
+     * <pre>
+     * 提交模板消息批量发送任务：消息写入任务目录后立即返回任务 id，由后台按 appid 限流并发发送
+     *
+     * 进度、逐条结果和取消通过 /wx/jobs/{appid}/{jobId} 完成；服务重启后从上次确认的位置继续。
+     * </pre>
+     */
+    @PostMapping("/jobs")
+    public ApiResult<JobController.JobData> submitJob(@PathVariable String appid,
+                                                      @RequestBody TemplateJobRequest request) {
+        try {
+            if (StringUtils.isBlank(appid)) {
+                throw new IllegalArgumentException("appid参数不能为空！");
+            }
+            if (!wxMpService.switchover(appid)) {
+                throw new IllegalArgumentException(String.format("未找到对应appid=[%s]的公众号配置，请检查application.yml中的wx.mp.configs配置，确保appId已正确填写！", appid));
+            }
+
+            JobController.JobData data = JobController.submit(jobManager, appid, JOB_KIND, request.getMessages(),
+                message -> {
+                    buildTemplateMessage(message);
+                    return JsonUtils.toJson(message);
+                });
+
+            return ApiResult.success("任务已提交", data);
+        } catch (Exception e) {
+            log.error("提交模板消息任务异常: {}", e.getMessage(), e);
+            return ApiResult.failure(e.getMessage());
+        }
+    }
+
+    /**
+     * <pre>
+     * 同一模板内容批量发给多个接收者（只有 toUser 不同）
+     *
+     * 模板内容只构建、序列化一次（见 {@link PreRenderedTemplate}），每个接收者的请求体由字符串拼接得到，
+     * 经 WxJava 的请求执行器 POST 到模板消息接口；并发度、appid 限流与 batchSend 相同，返回结果与 toUsers 顺序一致。
+     * </pre>
+     */
+    @PostMapping("/batchSendToUsers")
+    public ApiResult<BatchSendData> batchSendToUsers(@PathVariable String appid,
+                                                     @RequestBody BatchToUsersRequest request) {
+        try {
+            if (StringUtils.isBlank(appid)) {
+                throw new IllegalArgumentException("appid参数不能为空！");
+            }
+            if (!wxMpService.switchover(appid)) {
+                throw new IllegalArgumentException(String.format("未找到对应appid=[%s]的公众号配置，请检查application.yml中的wx.mp.configs配置，确保appId已正确填写！", appid));
+            }
+
+            List<String> toUsers = request.getToUsers();
+            if (toUsers == null || toUsers.isEmpty()) {
+                throw new IllegalArgumentException("toUsers参数不能为空！");
+            }
+            if (toUsers.size() > dispatchProperties.getMaxBatchSize()) {
+                throw new IllegalArgumentException(String.format("toUsers最多%d条！", dispatchProperties.getMaxBatchSize()));
+            }
+            if (request.getTemplate() == null) {
+                throw new IllegalArgumentException("template参数不能为空！");
+            }
+            // 预渲染时用占位符代替 toUser，只校验模板本身
+            PreRenderedTemplate template = new PreRenderedTemplate(request.getTemplate());
+
+            log.info("开始批量发送模板消息（预渲染），appid={}, templateId={}, 接收者数量={}", appid,
+                request.getTemplate().getTemplateId(), toUsers.size());
+
+            List<TemplateSendResult> results = bulkDispatcher.dispatch(appid, toUsers,
+                (index, toUser) -> {
+                    if (StringUtils.isBlank(toUser)) {
                         throw new IllegalArgumentException("toUser参数不能为空！");
                     }
-                    if (StringUtils.isBlank(msgRequest.getTemplateId())) {
-                        throw new IllegalArgumentException("templateId参数不能为空！");
-                    }
-                    if (msgRequest.getData() == null || msgRequest.getData().isEmpty()) {
-                        throw new IllegalArgumentException("data参数不能为空！");
-                    }
+                    // 运行在发送线程上，switchover 是线程本地的，需要重新切换
+                    wxMpService.switchover(appid);
+                    String msgId = sendPreRendered(template.render(toUser));
+                    deliveryIndex.sent(appid, request.getTemplate().getCampaignId(), toUser, msgId);
+                    return TemplateSendResult.success(toUser, msgId);
+                },
+                (index, toUser, e) -> {
+                    log.error("发送模板消息失败，toUser={}: {}", toUser, e.getMessage());
+                    return TemplateSendResult.failure(toUser, e.getMessage());
+                });
+            int successCount = (int) results.stream().filter(TemplateSendResult::isSuccess).count();
+
+            log.info("批量发送模板消息（预渲染）完成，成功={}, 失败={}", successCount, results.size() - successCount);
+
+            return ApiResult.successData(new BatchSendData(results, results.size(), successCount, results.size() - successCount));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return ApiResult.failure("批量发送被中断");
+        } catch (Exception e) {
+            log.error("批量发送模板消息（预渲染）异常: {}", e.getMessage(), e);
+            return ApiResult.failure(e.getMessage());
+        }
+    }
 
-                    // 构建模板消息
-                    WxMpTemplateMessage templateMessage = WxMpTemplateMessage.builder()
-                        .toUser(msgRequest.getToUser())
-                        .templateId(msgRequest.getTemplateId())
-                        .url(msgRequest.getUrl())
-                        .miniProgram(msgRequest.getMiniProgram())
-                        .build();
-
-                    // 添加模板数据
-                    List<WxMpTemplateData> templateDataList = new ArrayList<>();
-                    for (Map.Entry<String, String> entry : msgRequest.getData().entrySet()) {
-                        templateDataList.add(new WxMpTemplateData(entry.getKey(), entry.getValue(), msgRequest.getColor()));
-                    }
-                    templateMessage.setData(templateDataList);
+    /**
+     * 用当前线程已切换的公众号配置发送已渲染好的模板消息请求体，返回 msgid；
+     * 经 WxJava 的请求执行器发出，access_token 失效、系统繁忙的重试和错误码解析与 sendTemplateMsg 相同
+     */
+    private String sendPreRendered(String body) throws WxErrorException {
+        String response = wxMpService.post(WxMpApiUrl.TemplateMsg.MESSAGE_TEMPLATE_SEND, body);
+        return JsonUtils.getString(JsonUtils.parseObject(response), "msgid");
+    }
 
-                    // 发送模板消息
+    /**
+     * <pre>
+     * 模板消息群发（流式）：逐行读取上传的接收者列表，边读边发，逐条返回结果
+     *
+     * 请求体为 NDJSON（Content-Type: application/x-ndjson，每行一个模板消息 JSON）
+     * 或 CSV（Content-Type: text/csv，表头见 {@link CampaignRecipientReader}）；
+     * 行内未指定的 templateId、url、color 使用请求参数中的值。
+     * 最多 dispatch.max-concurrency-per-request 条在发送中，窗口满时暂停读取上传内容，内存占用与接收者数量无关。
+     *
+     * 响应为 NDJSON：按上传顺序每个接收者一行结果（line 为上传内容中的行号），最后一行为汇总（done = true）。
+     * 本次群发记为活动 campaignId（未指定时生成一个，在汇总行中返回），送达统计通过 /wx/template/{appid}/delivery/campaigns/{campaignId} 查询。
+     * </pre>
+     */
+    @PostMapping(value = "/campaign", produces = "application/x-ndjson")
+    public void campaign(@PathVariable String appid,
+                         @RequestParam(name = "templateId", required = false) String templateId,
+                         @RequestParam(name = "url", required = false) String url,
+                         @RequestParam(name = "color", required = false) String color,
+                         @RequestParam(name = "campaignId", required = false) String campaignId,
+                         HttpServletRequest request,
+                         HttpServletResponse response) throws IOException {
+        response.setContentType("application/x-ndjson;charset=UTF-8");
+        OutputStream out = response.getOutputStream();
+        try {
+            if (StringUtils.isBlank(appid)) {
+                throw new IllegalArgumentException("appid参数不能为空！");
+            }
+            if (!wxMpService.switchover(appid)) {
+                throw new IllegalArgumentException(String.format("未找到对应appid=[%s]的公众号配置，请检查application.yml中的wx.mp.configs配置，确保appId已正确填写！", appid));
+            }
+
+            boolean csv = StringUtils.containsIgnoreCase(request.getContentType(), "csv");
+            TemplateMessageRequest defaults = new TemplateMessageRequest();
+            defaults.setTemplateId(templateId);
+            defaults.setUrl(url);
+            defaults.setColor(color);
+            defaults.setCampaignId(StringUtils.isBlank(campaignId) ? UUID.randomUUID().toString() : campaignId);
+            BufferedReader reader = new BufferedReader(new InputStreamReader(request.getInputStream(), StandardCharsets.UTF_8));
+
+            log.info("开始模板消息群发，appid={}, 格式={}, templateId={}, campaignId={}", appid, csv ? "csv" : "ndjson",
+                templateId, defaults.getCampaignId());
+
+            int[] counts = new int[2];
+            bulkDispatcher.dispatchStream(appid, new CampaignRecipientReader(reader, csv, defaults),
+                (index, recipient) -> {
+                    if (recipient.getMessage() == null) {
+                        throw new IllegalArgumentException(recipient.getError());
+                    }
+                    WxMpTemplateMessage templateMessage = buildTemplateMessage(recipient.getMessage());
+                    // 运行在发送线程上，switchover 是线程本地的，需要重新切换
+                    wxMpService.switchover(appid);
                     String msgId = wxMpService.getTemplateMsgService().sendTemplateMsg(templateMessage);
+                    deliveryIndex.sent(appid, recipient.getMessage().getCampaignId(), templateMessage.getToUser(), msgId);
+                    return CampaignLineResult.success(recipient.getLine(), templateMessage.getToUser(), msgId);
+                },
+                (index, recipient, e) -> CampaignLineResult.failure(recipient.getLine(),
+                    recipient.getMessage() == null ? null : recipient.getMessage().getToUser(), e.getMessage()),
+                result -> {
+                    counts[result.isSuccess() ? 0 : 1]++;
+                    writeLine(out, result);
+                });
+
+            log.info("模板消息群发完成，appid={}, 成功={}, 失败={}", appid, counts[0], counts[1]);
+            writeLine(out, new CampaignSummary(true, defaults.getCampaignId(), counts[0] + counts[1], counts[0], counts[1]));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            writeLine(out, ApiResult.failure("群发被中断"));
+        } catch (UncheckedIOException e) {
+            // 读取上传内容或写出结果失败（通常是客户端断开），已在发送中的消息仍会发完
+            log.warn("模板消息群发中断，appid={}: {}", appid, e.getMessage());
+        } catch (Exception e) {
+            log.error("模板消息群发异常: {}", e.getMessage(), e);
+            writeLine(out, ApiResult.failure(e.getMessage()));
+        }
+        out.flush();
+    }
 
-                    result.put("success", true);
-                    result.put("toUser", msgRequest.getToUser());
-                    result.put("msgId", msgId);
-                    result.put("message", "发送成功");
-                    successCount++;
-                } catch (WxErrorException e) {
-                    log.error("发送模板消息失败，toUser={}: {}", msgRequest.getToUser(), e.getMessage());
-                    result.put("success", false);
-                    result.put("toUser", msgRequest.getToUser());
-                    result.put("error", e.getMessage());
-                    failCount++;
-                } catch (Exception e) {
-                    log.error("发送模板消息异常，toUser={}: {}", msgRequest.getToUser(), e.getMessage());
-                    result.put("success", false);
-                    result.put("toUser", msgRequest.getToUser());
-                    result.put("error", e.getMessage());
-                    failCount++;
-                }
-                results.add(result);
-            }
+    /**
+     * 写出一行 NDJSON 结果；由容器的响应缓冲区攒批发送
+     */
+    private static void writeLine(OutputStream out, Object value) {
+        try {
+            JsonUtils.writeTo(out, value);
+            out.write('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
 
-            // 构建返回结果
-            Map<String, Object> response = new HashMap<>();
-            Map<String, Object> data = new HashMap<>();
-            data.put("results", results);
-            data.put("total", request.getMessages().size());
-            data.put("successCount", successCount);
-            data.put("failCount", failCount);
-            response.put("data", data);
-            response.put("success", true);
+    /**
+     * 校验参数并构建模板消息（campaignId 不发给微信，由调用方在发送成功后登记到 {@link TemplateDeliveryIndex}）
+     */
+    public static WxMpTemplateMessage buildTemplateMessage(TemplateMessageRequest request) {
+        if (StringUtils.isBlank(request.getToUser())) {
+            throw new IllegalArgumentException("toUser参数不能为空！");
+        }
+        return buildTemplateMessage(request, request.getToUser());
+    }
 
-            log.info("批量发送模板消息完成，成功={}, 失败={}", successCount, failCount);
+    /**
+     * 校验模板本身（不含 toUser）并构建发给 toUser 的模板消息，不修改 request
+     */
+    static WxMpTemplateMessage buildTemplateMessage(TemplateMessageRequest request, String toUser) {
+        if (StringUtils.isBlank(request.getTemplateId())) {
+            throw new IllegalArgumentException("templateId参数不能为空！");
+        }
+        if (request.getData() == null || request.getData().isEmpty()) {
+            throw new IllegalArgumentException("data参数不能为空！");
+        }
 
-            return JsonUtils.toJson(response);
-        } catch (Exception e) {
-            log.error("批量发送模板消息异常: {}", e.getMessage(), e);
-            Map<String, Object> errorResult = new HashMap<>();
-            errorResult.put("success", false);
-            errorResult.put("error", e.getMessage());
-            return JsonUtils.toJson(errorResult);
+        WxMpTemplateMessage templateMessage = WxMpTemplateMessage.builder()
+            .toUser(toUser)
+            .templateId(request.getTemplateId())
+            .url(request.getUrl())
+            .miniProgram(request.getMiniProgram())
+            .build();
+
+        List<WxMpTemplateData> templateDataList = new ArrayList<>(request.getData().size());
+        for (Map.Entry<String, String> entry : request.getData().entrySet()) {
+            templateDataList.add(new WxMpTemplateData(entry.getKey(), entry.getValue(), request.getColor()));
+        }
+        templateMessage.setData(templateDataList);
+        return templateMessage;
+    }
+
+    // ========== 响应实体类 ==========
+
+    /**
+     * 单条模板消息发送结果
+     */
+    @Value
+    public static class TemplateSendData {
+        String msgId;
+        String toUser;
+        String templateId;
+    }
+
+    /**
+     * 批量发送中单条消息的结果
+     */
+    @Value
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @AllArgsConstructor(access = AccessLevel.PRIVATE)
+    public static class TemplateSendResult {
+        boolean success;
+        String toUser;
+        String msgId;
+        String message;
+        String error;
+
+        static TemplateSendResult success(String toUser, String msgId) {
+            return new TemplateSendResult(true, toUser, msgId, "发送成功", null);
+        }
+
+        static TemplateSendResult failure(String toUser, String error) {
+            return new TemplateSendResult(false, toUser, null, null, error);
+        }
+    }
+
+    /**
+     * 批量发送结果汇总
+     */
+    @Value
+    public static class BatchSendData {
+        List<TemplateSendResult> results;
+        int total;
+        int successCount;
+        int failCount;
+    }
+
+    /**
+     * 流式群发中单个接收者的结果
+     */
+    @Value
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @AllArgsConstructor(access = AccessLevel.PRIVATE)
+    public static class CampaignLineResult {
+        int line;
+        String toUser;
+        boolean success;
+        String msgId;
+        String error;
+
+        static CampaignLineResult success(int line, String toUser, String msgId) {
+            return new CampaignLineResult(line, toUser, true, msgId, null);
+        }
+
+        static CampaignLineResult failure(int line, String toUser, String error) {
+            return new CampaignLineResult(line, toUser, false, null, error);
         }
     }
 
+    /**
+     * 流式群发的汇总（响应的最后一行）
+     */
+    @Value
+    public static class CampaignSummary {
+        boolean done;
+        String campaignId;
+        int total;
+        int successCount;
+        int failCount;
+    }
+
+    // ========== 请求实体类 ==========
+
     /**
      * 模板消息请求实体类
      */
@@ -260,6 +587,11 @@ public class SendMessageWithTemplateController {
          * 模板内容字体颜色（可选）
          */
         private String color;
+
+        /**
+         * 所属活动id（可选），用于按活动统计送达结果，不发给微信
+         */
+        private String campaignId;
     }
 
     /**
@@ -272,4 +604,54 @@ public class SendMessageWithTemplateController {
          */
         private List<TemplateMessageRequest> messages;
     }
+
+    /**
+     * 同一模板内容批量发给多个接收者的请求实体类
+     */
+    @Data
+    public static class BatchToUsersRequest {
+        /**
+         * 模板消息（toUser 不填）
+         */
+        private TemplateMessageRequest template;
+
+        /**
+         * 接收者openid列表
+         */
+        private List<String> toUsers;
+    }
+
+    /**
+     * 带幂等 key 的模板消息
+     */
+    @Data
+    @EqualsAndHashCode(callSuper = true)
+    public static class KeyedTemplateMessage extends TemplateMessageRequest {
+        /**
+         * 幂等 key（可选），为空时用消息内容的摘要
+         */
+        private String key;
+    }
+
+    /**
+     * 模板消息入队请求实体类
+     */
+    @Data
+    public static class EnqueueTemplateMessageRequest {
+        /**
+         * 模板消息列表
+         */
+        private List<KeyedTemplateMessage> messages;
+    }
+
+    /**
+     * 模板消息批量发送任务请求实体类
+     */
+    @Data
+    public static class TemplateJobRequest {
+        /**
+         * 模板消息列表
+         */
+        private List<TemplateMessageRequest> messages;
+    }
 }
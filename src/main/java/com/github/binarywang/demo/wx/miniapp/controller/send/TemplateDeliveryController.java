@@ -0,0 +1,75 @@
+package com.github.binarywang.demo.wx.miniapp.controller.send;
+
+import com.github.binarywang.demo.wx.miniapp.controller.ApiResult;
+import com.github.binarywang.demo.wx.miniapp.delivery.CampaignDeliveryStats;
+import com.github.binarywang.demo.wx.miniapp.delivery.TemplateDelivery;
+import com.github.binarywang.demo.wx.miniapp.delivery.TemplateDeliveryIndex;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+/**
+ * <pre>
+ * 模板消息送达结果查询
+ *
+ * 本服务发出的模板消息按 msgId 登记所属活动（发送时的 campaignId）、接收者和发送时间，
+ * 收到 TEMPLATESENDJOBFINISH 事件后更新送达状态；这里按单条消息或按活动查询，不调用微信接口。
+ * 记录只保留 template-delivery.retention-hours 小时，进程重启后清空。
+ * </pre>
+ */
+@RestController
+@AllArgsConstructor
+@Slf4j
+@RequestMapping("/wx/template/{appid}/delivery")
+public class TemplateDeliveryController {
+    private final TemplateDeliveryIndex deliveryIndex;
+
+    /**
+     * <pre>
+     * 查询单条模板消息的送达状态（PENDING 表示尚未收到结果事件）
+     * </pre>
+     */
+    @GetMapping("/msg/{msgId}")
+    public ApiResult<TemplateDelivery> delivery(@PathVariable String appid, @PathVariable String msgId) {
+        try {
+            if (!StringUtils.isNumeric(msgId)) {
+                throw new IllegalArgumentException("msgId参数必须是数字！");
+            }
+            TemplateDelivery delivery = deliveryIndex.get(appid, msgId);
+            if (delivery == null) {
+                return ApiResult.failure(String.format("未找到msgId=[%s]的发送记录，可能不是本服务发出或已超过保留期", msgId));
+            }
+            return ApiResult.successData(delivery);
+        } catch (Exception e) {
+            log.error("查询模板消息送达状态异常: {}", e.getMessage(), e);
+            return ApiResult.failure(e.getMessage());
+        }
+    }
+
+    /**
+     * <pre>
+     * 查询该公众号全部活动的送达统计，最近发送的在前；未指定活动的发送汇总为 campaignId 为空的一项
+     * </pre>
+     */
+    @GetMapping("/campaigns")
+    public ApiResult<List<CampaignDeliveryStats>> campaigns(@PathVariable String appid) {
+        return ApiResult.successData(deliveryIndex.campaigns(appid));
+    }
+
+    /**
+     * <pre>
+     * 查询一个活动的送达统计：已发送、成功、用户拒收、系统失败、其他失败、待回执条数和送达率
+     * </pre>
+     */
+    @GetMapping("/campaigns/{campaignId}")
+    public ApiResult<CampaignDeliveryStats> campaign(@PathVariable String appid, @PathVariable String campaignId) {
+        CampaignDeliveryStats stats = deliveryIndex.campaign(appid, campaignId);
+        if (stats == null) {
+            return ApiResult.failure(String.format("未找到campaignId=[%s]的发送记录，可能从未发送或已超过保留期", campaignId));
+        }
+        return ApiResult.successData(stats);
+    }
+}
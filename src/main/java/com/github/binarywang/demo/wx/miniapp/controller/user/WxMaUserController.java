@@ -5,10 +5,16 @@ import cn.binarywang.wx.miniapp.bean.WxMaJscode2SessionResult;
 import cn.binarywang.wx.miniapp.bean.WxMaPhoneNumberInfo;
 import cn.binarywang.wx.miniapp.bean.WxMaUserInfo;
 import cn.binarywang.wx.miniapp.util.WxMaConfigHolder;
+import com.github.binarywang.demo.wx.miniapp.controller.ApiResult;
+import com.github.binarywang.demo.wx.miniapp.session.Jscode2SessionCoalescer;
+import com.github.binarywang.demo.wx.miniapp.session.WxMaSession;
+import com.github.binarywang.demo.wx.miniapp.session.WxMaSessionStore;
 import com.github.binarywang.demo.wx.miniapp.utils.JsonUtils;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
 import me.chanjar.weixin.common.error.WxErrorException;
 import me.chanjar.weixin.mp.api.WxMpService;
@@ -23,9 +29,7 @@ import org.springframework.web.bind.annotation.RestController;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.stream.Collectors;
 
 /**
@@ -40,9 +44,16 @@ import java.util.stream.Collectors;
 public class WxMaUserController {
     private final WxMaService wxMaService;
     private final WxMpService wxMpService;
+    private final WxMaSessionStore sessionStore;
+    private final Jscode2SessionCoalescer jscode2SessionCoalescer;
 
     /**
+     * <pre>
      * 登陆接口
+     *
+     * session_key 保存在服务端，只返回 token、openid 和 unionid；之后调用 /info、/phone 时传 token 即可。
+     * 重复提交的相同 code 共用一次 jscode2session 调用（见 {@link Jscode2SessionCoalescer}）。
+     * </pre>
      */
     @GetMapping("/login")
     public String login(@PathVariable String appid, String code) {
@@ -55,11 +66,12 @@ public class WxMaUserController {
         }
 
         try {
-            WxMaJscode2SessionResult session = wxMaService.getUserService().getSessionInfo(code);
-            log.info(session.getSessionKey());
+            WxMaJscode2SessionResult session = jscode2SessionCoalescer.getSessionInfo(appid, code,
+                () -> wxMaService.getUserService().getSessionInfo(code));
             log.info(session.getOpenid());
             //TODO 可以增加自己的逻辑，关联业务相关数据
-            return JsonUtils.toJson(session);
+            String token = sessionStore.create(appid, session.getOpenid(), session.getUnionid(), session.getSessionKey());
+            return JsonUtils.toJson(new LoginData(token, session.getOpenid(), session.getUnionid()));
         } catch (WxErrorException e) {
             log.error(e.getMessage(), e);
             return e.toString();
@@ -71,15 +83,23 @@ public class WxMaUserController {
     /**
      * <pre>
      * 获取用户信息接口
+     *
+     * 传 login 返回的 token；未传 token 时使用客户端自己保存的 sessionKey。
      * </pre>
      */
     @GetMapping("/info")
-    public String info(@PathVariable String appid, String sessionKey,
+    public String info(@PathVariable String appid, String token, String sessionKey,
                        String signature, String rawData, String encryptedData, String iv) {
         if (!wxMaService.switchover(appid)) {
             throw new IllegalArgumentException(String.format("未找到对应appid=[%s]的配置，请核实！", appid));
         }
 
+        sessionKey = resolveSessionKey(appid, token, sessionKey);
+        if (sessionKey == null) {
+            WxMaConfigHolder.remove();//清理ThreadLocal
+            return "session expired";
+        }
+
         // 用户信息校验
         if (!wxMaService.getUserService().checkUserInfo(sessionKey, rawData, signature)) {
             WxMaConfigHolder.remove();//清理ThreadLocal
@@ -95,15 +115,23 @@ public class WxMaUserController {
     /**
      * <pre>
      * 获取用户绑定手机号信息
+     *
+     * 传 login 返回的 token；未传 token 时使用客户端自己保存的 sessionKey。
      * </pre>
      */
     @GetMapping("/phone")
-    public String phone(@PathVariable String appid, String sessionKey, String signature,
+    public String phone(@PathVariable String appid, String token, String sessionKey, String signature,
                         String rawData, String encryptedData, String iv) {
         if (!wxMaService.switchover(appid)) {
             throw new IllegalArgumentException(String.format("未找到对应appid=[%s]的配置，请核实！", appid));
         }
 
+        sessionKey = resolveSessionKey(appid, token, sessionKey);
+        if (sessionKey == null) {
+            WxMaConfigHolder.remove();//清理ThreadLocal
+            return "session expired";
+        }
+
         // 用户信息校验
         if (!wxMaService.getUserService().checkUserInfo(sessionKey, rawData, signature)) {
             WxMaConfigHolder.remove();//清理ThreadLocal
@@ -116,14 +144,25 @@ public class WxMaUserController {
         return JsonUtils.toJson(phoneNoInfo);
     }
 
+    /**
+     * 有 token 时取服务端会话中的 session_key（会话不存在或已过期返回 null），否则使用请求中的 sessionKey
+     */
+    private String resolveSessionKey(String appid, String token, String sessionKey) {
+        if (StringUtils.isBlank(token)) {
+            return StringUtils.trimToNull(sessionKey);
+        }
+        WxMaSession session = sessionStore.get(appid, token);
+        return session == null ? null : session.getSessionKey();
+    }
+
     /**
      * <pre>
      * 根据openid列表批量获取用户信息
      * </pre>
      */
     @GetMapping("/userInfoList")
-    public String userInfoList(@PathVariable String appid,
-                              @RequestParam String openids) {
+    public ApiResult<UserListData> userInfoList(@PathVariable String appid,
+                                                @RequestParam String openids) {
         try {
             // 切换公众号配置
             if (StringUtils.isBlank(appid)) {
@@ -214,25 +253,17 @@ public class WxMaUserController {
             }
 
             // 构建返回结果
-            Map<String, Object> result = new HashMap<>();
-            Map<String, Object> data = new HashMap<>();
-            data.put("list", userList);
-            data.put("total", userList.size());
-            result.put("data", data);
+            UserListData data = new UserListData(userList, (long) userList.size(), null, null);
 
             log.info("返回用户信息列表，共{}个用户", userList.size());
 
-            return JsonUtils.toJson(result);
+            return ApiResult.data(data);
         } catch (WxErrorException e) {
             log.error("获取用户信息失败: {}", e.getMessage(), e);
-            Map<String, Object> errorResult = new HashMap<>();
-            errorResult.put("error", e.getMessage());
-            return JsonUtils.toJson(errorResult);
+            return ApiResult.error(e.getMessage());
         } catch (Exception e) {
             log.error("获取用户信息异常: {}", e.getMessage(), e);
-            Map<String, Object> errorResult = new HashMap<>();
-            errorResult.put("error", e.getMessage());
-            return JsonUtils.toJson(errorResult);
+            return ApiResult.error(e.getMessage());
         }
     }
 
@@ -242,8 +273,8 @@ public class WxMaUserController {
      * </pre>
      */
     @GetMapping("/list")
-    public String getUserList(@PathVariable String appid,
-                              @RequestParam(required = false) String nextOpenid) {
+    public ApiResult<UserListData> getUserList(@PathVariable String appid,
+                                               @RequestParam(required = false) String nextOpenid) {
         try {
             // 切换公众号配置
             if (StringUtils.isBlank(appid)) {
@@ -338,38 +369,47 @@ public class WxMaUserController {
                 }
             }
 
-            // 构建返回结果
-            Map<String, Object> result = new HashMap<>();
-            Map<String, Object> data = new HashMap<>();
-            data.put("list", userList);
-
-            // 添加统计信息
-            if (wxMpUserList != null) {
-                data.put("total", wxMpUserList.getTotal());
-                data.put("count", wxMpUserList.getCount());
-                if (StringUtils.isNotBlank(wxMpUserList.getNextOpenid())) {
-                    data.put("nextOpenid", wxMpUserList.getNextOpenid());
-                }
-            }
-
-            result.put("data", data);
+            // 构建返回结果（附带统计信息）
+            UserListData data = wxMpUserList == null
+                ? new UserListData(userList, null, null, null)
+                : new UserListData(userList, wxMpUserList.getTotal(), wxMpUserList.getCount(),
+                    StringUtils.trimToNull(wxMpUserList.getNextOpenid()));
 
             log.info("返回用户列表，共{}个用户", userList.size());
 
-            return JsonUtils.toJson(result);
+            return ApiResult.data(data);
         } catch (WxErrorException e) {
             log.error("获取用户列表失败: {}", e.getMessage(), e);
-            Map<String, Object> errorResult = new HashMap<>();
-            errorResult.put("error", e.getMessage());
-            return JsonUtils.toJson(errorResult);
+            return ApiResult.error(e.getMessage());
         } catch (Exception e) {
             log.error("获取用户列表异常: {}", e.getMessage(), e);
-            Map<String, Object> errorResult = new HashMap<>();
-            errorResult.put("error", e.getMessage());
-            return JsonUtils.toJson(errorResult);
+            return ApiResult.error(e.getMessage());
         }
     }
 
+    /**
+     * 登录结果：token 用于之后的 /info、/phone 调用，unionid 为空时不输出
+     */
+    @Value
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class LoginData {
+        String token;
+        String openid;
+        String unionid;
+    }
+
+    /**
+     * 用户列表返回数据，total、count、nextOpenid 为空时不输出
+     */
+    @Value
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class UserListData {
+        List<UserInfo> list;
+        Long total;
+        Integer count;
+        String nextOpenid;
+    }
+
     /**
      * 用户信息实体类
      */
@@ -0,0 +1,22 @@
+package com.github.binarywang.demo.wx.miniapp.dedup;
+
+/**
+ * <pre>
+ * 消息去重存储（SPI）
+ *
+ * 默认实现为进程内的 {@link LocalDedupStore}；多节点部署时使用 {@link RedisDedupStore}，
+ * 保证同一条回调落到不同节点上也只会触发一次业务逻辑。
+ * </pre>
+ */
+public interface DedupStore {
+
+    /**
+     * 原子判重：同一 namespace 下的 key 在 ttlMs 内重复出现返回 true；否则记录本次出现并返回 false
+     *
+     * @param namespace 命名空间，用于区分不同用途的去重（如请求内容、出站请求）
+     * @param key       去重键（通常为内容摘要）
+     * @param ttlMs     去重窗口，单位毫秒
+     */
+    boolean isDuplicate(String namespace, String key, long ttlMs);
+
+}
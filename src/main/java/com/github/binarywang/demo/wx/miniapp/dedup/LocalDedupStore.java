@@ -0,0 +1,61 @@
+package com.github.binarywang.demo.wx.miniapp.dedup;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 进程内去重实现，只在当前 JVM 内有效
+ */
+public class LocalDedupStore implements DedupStore {
+    /**
+     * 清理过期项的最小间隔
+     */
+    private static final long CLEANUP_INTERVAL_MS = 5_000L;
+
+    /**
+     * key: namespace + ":" + key，value: 过期时间点
+     */
+    private final ConcurrentHashMap<String, Long> expireAtByKey = new ConcurrentHashMap<>();
+    private final AtomicLong lastCleanupMs = new AtomicLong(0L);
+
+    @Override
+    public boolean isDuplicate(String namespace, String key, long ttlMs) {
+        if (StringUtils.isBlank(key) || ttlMs <= 0) {
+            return false;
+        }
+        long now = System.currentTimeMillis();
+        maybeCleanup(now);
+        final boolean[] dup = {false};
+        expireAtByKey.compute(namespace + ":" + key, (k, expireAt) -> {
+            if (expireAt != null && now < expireAt) {
+                dup[0] = true;
+                return expireAt;
+            }
+            return now + ttlMs;
+        });
+        return dup[0];
+    }
+
+    /**
+     * 移除某个 key 的记录
+     */
+    void forget(String namespace, String key) {
+        expireAtByKey.remove(namespace + ":" + key);
+    }
+
+    /**
+     * 轻量清理：每隔一段时间触发一次，移除过期项，避免缓存无限增长。
+     */
+    private void maybeCleanup(long now) {
+        long last = lastCleanupMs.get();
+        if ((now - last) < CLEANUP_INTERVAL_MS) {
+            return;
+        }
+        if (!lastCleanupMs.compareAndSet(last, now)) {
+            return;
+        }
+        expireAtByKey.entrySet().removeIf(e -> e.getValue() == null || now >= e.getValue());
+    }
+}
@@ -0,0 +1,59 @@
+package com.github.binarywang.demo.wx.miniapp.dedup;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.params.SetParams;
+
+/**
+ * <pre>
+ * 基于 Redis 的集群级去重实现（SET key 1 NX PX ttl）
+ *
+ * 本地近端缓存：本节点成功写入的 key 在 ttl 内一定还在 Redis 中，
+ * 再次判重时直接返回重复，不需要网络往返；其余情况才访问 Redis。
+ * Redis 不可用时降级为本地判重，只影响跨节点去重，不影响回调处理。
+ * </pre>
+ */
+@Slf4j
+public class RedisDedupStore implements DedupStore, AutoCloseable {
+    private final JedisPool jedisPool;
+    private final String keyPrefix;
+    private final LocalDedupStore nearCache = new LocalDedupStore();
+    private final LocalDedupStore fallback = new LocalDedupStore();
+
+    public RedisDedupStore(JedisPool jedisPool, String keyPrefix) {
+        this.jedisPool = jedisPool;
+        this.keyPrefix = keyPrefix;
+    }
+
+    @Override
+    public boolean isDuplicate(String namespace, String key, long ttlMs) {
+        if (StringUtils.isBlank(key) || ttlMs <= 0) {
+            return false;
+        }
+        // 近端缓存：这里的 isDuplicate 顺带把 key 记为本节点已写入，只有 Redis 写入成功时才保留该记录
+        if (nearCache.isDuplicate(namespace, key, ttlMs)) {
+            return true;
+        }
+
+        try (Jedis jedis = jedisPool.getResource()) {
+            String reply = jedis.set(keyPrefix + namespace + ":" + key, "1", SetParams.setParams().nx().px(ttlMs));
+            if ("OK".equals(reply)) {
+                return false;
+            }
+            // 其他节点已经写入，剩余 ttl 未知，近端缓存不能保留
+            nearCache.forget(namespace, key);
+            return true;
+        } catch (Exception e) {
+            log.warn("Redis去重失败，降级为本地去重，namespace={}: {}", namespace, e.getMessage());
+            nearCache.forget(namespace, key);
+            return fallback.isDuplicate(namespace, key, ttlMs);
+        }
+    }
+
+    @Override
+    public void close() {
+        jedisPool.close();
+    }
+}
@@ -0,0 +1,27 @@
+package com.github.binarywang.demo.wx.miniapp.delivery;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Value;
+
+/**
+ * <pre>
+ * 一个活动的模板消息送达统计
+ *
+ * pending 为已发出、尚未收到结果事件的条数；deliveryRate 为 success / (sent - pending)，没有结果时为 null。
+ * </pre>
+ */
+@Value
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class CampaignDeliveryStats {
+    String campaignId;
+    long sent;
+    long success;
+    long userBlock;
+    long systemFailed;
+    long failed;
+    long pending;
+    Double deliveryRate;
+    Long firstSentAt;
+    Long lastSentAt;
+    Long lastEventAt;
+}
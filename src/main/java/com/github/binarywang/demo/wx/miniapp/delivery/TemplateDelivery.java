@@ -0,0 +1,37 @@
+package com.github.binarywang.demo.wx.miniapp.delivery;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Value;
+
+/**
+ * 一条模板消息的发送记录及送达状态；campaignId 为空表示发送时未指定活动
+ */
+@Value
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class TemplateDelivery {
+    public enum Status {
+        /**
+         * 已发出，尚未收到送达结果事件
+         */
+        PENDING,
+        SUCCESS,
+        /**
+         * 用户拒收（failed:user block）
+         */
+        USER_BLOCK,
+        /**
+         * 发送失败（failed: system failed）
+         */
+        SYSTEM_FAILED,
+        /**
+         * 其他失败
+         */
+        FAILED
+    }
+
+    String msgId;
+    String campaignId;
+    String toUser;
+    long sentAt;
+    Status status;
+}
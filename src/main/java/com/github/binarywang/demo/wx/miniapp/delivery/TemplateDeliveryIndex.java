@@ -0,0 +1,444 @@
+package com.github.binarywang.demo.wx.miniapp.delivery;
+
+import com.github.binarywang.demo.wx.miniapp.utils.JsonUtils;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * <pre>
+ * 模板消息送达索引：记录本服务发出的每条模板消息（msgId -> 活动、接收者、发送时间），
+ * 收到 TEMPLATESENDJOBFINISH 事件时按 msgId 找到对应的发送记录，更新送达状态和所属活动的统计
+ *
+ * 存储：按发送时间分桶（template-delivery.bucket-minutes），桶内为开放寻址表，
+ * msgId、活动编号、发送时间偏移、状态各存一个基本类型数组，接收者 openid 追加存放在桶的字节数组中，
+ * 每条约 50 字节；桶超过保留期（template-delivery.retention-hours）后整桶丢弃，不逐条清理。
+ * 活动统计按 appid + campaignId 累计，最后一次发送超过保留期后一并丢弃。
+ *
+ * 同一 msgId 只接受第一次送达结果，重复推送的事件不重复计数。进程重启后索引为空。
+ * 事件处理结果记录在指标 wx.template.delivery.events（tag：result = matched、duplicate、unknown）中。
+ * </pre>
+ */
+@Slf4j
+public class TemplateDeliveryIndex {
+    public static final String EVENT_TEMPLATE_SEND_JOB_FINISH = "TEMPLATESENDJOBFINISH";
+
+    private static final TemplateDelivery.Status[] STATUSES = TemplateDelivery.Status.values();
+
+    private final long retentionMs;
+    private final long bucketMs;
+    private final MeterRegistry meterRegistry;
+    private final ConcurrentHashMap<String, Campaign> campaigns = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, Campaign> campaignsByRef = new ConcurrentHashMap<>();
+    private final AtomicInteger nextRef = new AtomicInteger();
+    /**
+     * 新的桶在前；只在 {@link #rotate(long)} 中替换
+     */
+    private volatile Bucket[] buckets = new Bucket[0];
+
+    public TemplateDeliveryIndex(long retentionHours, int bucketMinutes, MeterRegistry meterRegistry) {
+        if (retentionHours <= 0) {
+            throw new IllegalArgumentException("template-delivery.retention-hours必须大于0");
+        }
+        if (bucketMinutes <= 0 || bucketMinutes > TimeUnit.DAYS.toMinutes(7)) {
+            throw new IllegalArgumentException("template-delivery.bucket-minutes须在1到10080之间");
+        }
+        this.retentionMs = TimeUnit.HOURS.toMillis(retentionHours);
+        this.bucketMs = TimeUnit.MINUTES.toMillis(bucketMinutes);
+        this.meterRegistry = meterRegistry;
+        Gauge.builder("wx.template.delivery.entries", this, TemplateDeliveryIndex::size)
+            .description("模板消息送达索引中的发送记录数")
+            .register(meterRegistry);
+    }
+
+    /**
+     * 是否为模板消息送达结果事件
+     */
+    public static boolean isTemplateSendJobFinish(String msgType, String event) {
+        return "event".equals(msgType) && EVENT_TEMPLATE_SEND_JOB_FINISH.equalsIgnoreCase(event);
+    }
+
+    /**
+     * 登记一条发送成功的模板消息；msgId 为空或不是数字时忽略
+     *
+     * @param campaignId 所属活动，可以为空
+     */
+    public void sent(String appid, String campaignId, String toUser, String msgId) {
+        long key = parseMsgId(msgId);
+        if (key == 0) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        Campaign campaign = campaigns.computeIfAbsent(campaignKey(appid, campaignId), k -> {
+            Campaign created = new Campaign(nextRef.incrementAndGet(), appid, StringUtils.trimToNull(campaignId), now);
+            campaignsByRef.put(created.ref, created);
+            return created;
+        });
+        campaign.onSent(now);
+        Bucket bucket = rotate(now)[0];
+        bucket.put(key, appid, campaign.ref, (int) (now - bucket.start), toUser, campaignsByRef);
+    }
+
+    /**
+     * 处理 TEMPLATESENDJOBFINISH 事件，fields 为事件的全部字段（MsgID、Status）
+     *
+     * @return 更新后的发送记录；不是本服务发出的、或已超过保留期的返回 null
+     */
+    public TemplateDelivery onSendJobFinish(String appid, Map<String, Object> fields) {
+        String msgId = JsonUtils.getString(fields, "MsgID");
+        if (StringUtils.isBlank(msgId)) {
+            msgId = JsonUtils.getString(fields, "MsgId");
+        }
+        String status = JsonUtils.getString(fields, "Status");
+        long key = parseMsgId(msgId);
+        if (key == 0) {
+            log.warn("模板消息送达事件中没有有效的MsgID，appid={}, fields={}", appid, fields);
+            record("unknown");
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        TemplateDelivery.Status parsed = parseStatus(status);
+        for (Bucket bucket : rotate(now)) {
+            int previous = bucket.complete(key, appid, parsed, campaignsByRef);
+            if (previous < 0) {
+                continue;
+            }
+            boolean first = previous == TemplateDelivery.Status.PENDING.ordinal();
+            TemplateDelivery delivery = bucket.get(key, appid, campaignsByRef);
+            if (first && delivery != null) {
+                Campaign campaign = campaigns.get(campaignKey(appid, delivery.getCampaignId()));
+                if (campaign != null) {
+                    campaign.onCompleted(parsed, now);
+                }
+            }
+            record(first ? "matched" : "duplicate");
+            if (first) {
+                log.info("收到模板消息送达事件，appid={}, msgId={}, campaignId={}, status={}", appid, msgId,
+                    delivery == null ? null : delivery.getCampaignId(), status);
+            } else {
+                log.info("重复的模板消息送达事件，已忽略，appid={}, msgId={}, status={}", appid, msgId, status);
+            }
+            return delivery;
+        }
+        record("unknown");
+        log.info("收到模板消息送达事件，但没有对应的发送记录，appid={}, msgId={}, status={}", appid, msgId, status);
+        return null;
+    }
+
+    /**
+     * 查询一条发送记录，没有记录时返回 null
+     */
+    public TemplateDelivery get(String appid, String msgId) {
+        long key = parseMsgId(msgId);
+        if (key == 0) {
+            return null;
+        }
+        for (Bucket bucket : rotate(System.currentTimeMillis())) {
+            TemplateDelivery delivery = bucket.get(key, appid, campaignsByRef);
+            if (delivery != null) {
+                return delivery;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 查询一个活动的送达统计，没有记录时返回 null；campaignId 为空表示未指定活动的发送
+     */
+    public CampaignDeliveryStats campaign(String appid, String campaignId) {
+        rotate(System.currentTimeMillis());
+        Campaign campaign = campaigns.get(campaignKey(appid, campaignId));
+        return campaign == null ? null : campaign.stats();
+    }
+
+    /**
+     * 该 appid 下全部活动的送达统计，最近发送的在前
+     */
+    public List<CampaignDeliveryStats> campaigns(String appid) {
+        rotate(System.currentTimeMillis());
+        return campaigns.values().stream()
+            .filter(c -> c.appid.equals(appid))
+            .sorted(Comparator.comparingLong((Campaign c) -> c.lastSentAt).reversed())
+            .map(Campaign::stats)
+            .collect(Collectors.toList());
+    }
+
+    int size() {
+        int size = 0;
+        for (Bucket bucket : buckets) {
+            size += bucket.size();
+        }
+        return size;
+    }
+
+    /**
+     * 需要时新建当前桶，并丢弃超过保留期的桶和活动统计；返回当前的桶列表
+     */
+    private Bucket[] rotate(long now) {
+        Bucket[] current = buckets;
+        long cutoff = now - retentionMs;
+        if (current.length > 0 && now < current[0].start + bucketMs
+            && current[current.length - 1].start + bucketMs > cutoff) {
+            return current;
+        }
+        synchronized (this) {
+            current = buckets;
+            long start = now - now % bucketMs;
+            boolean newBucket = current.length == 0 || current[0].start < start;
+            Bucket[] rotated = Arrays.stream(current)
+                .filter(b -> b.start + bucketMs > cutoff)
+                .toArray(Bucket[]::new);
+            if (newBucket) {
+                Bucket[] withNew = new Bucket[rotated.length + 1];
+                withNew[0] = new Bucket(start);
+                System.arraycopy(rotated, 0, withNew, 1, rotated.length);
+                rotated = withNew;
+            }
+            if (rotated.length != current.length || newBucket) {
+                buckets = rotated;
+                // 活动的最后一次发送所在的桶已丢弃，统计不会再变化
+                campaigns.values().removeIf(c -> {
+                    boolean expired = c.lastSentAt + bucketMs <= cutoff;
+                    if (expired) {
+                        campaignsByRef.remove(c.ref);
+                    }
+                    return expired;
+                });
+            }
+            return rotated;
+        }
+    }
+
+    private void record(String result) {
+        meterRegistry.counter("wx.template.delivery.events", "result", result).increment();
+    }
+
+    static TemplateDelivery.Status parseStatus(String status) {
+        String normalized = StringUtils.deleteWhitespace(StringUtils.defaultString(status)).toLowerCase();
+        switch (normalized) {
+            case "success":
+                return TemplateDelivery.Status.SUCCESS;
+            case "failed:userblock":
+                return TemplateDelivery.Status.USER_BLOCK;
+            case "failed:systemfailed":
+                return TemplateDelivery.Status.SYSTEM_FAILED;
+            default:
+                return TemplateDelivery.Status.FAILED;
+        }
+    }
+
+    /**
+     * 模板消息的 msgId 为正整数；0 作为空槽位，无法解析的也返回 0
+     */
+    private static long parseMsgId(String msgId) {
+        try {
+            long key = msgId == null ? 0 : Long.parseLong(msgId.trim());
+            return key > 0 ? key : 0;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static String campaignKey(String appid, String campaignId) {
+        return appid + ":" + StringUtils.trimToEmpty(campaignId);
+    }
+
+    /**
+     * 活动的累计统计
+     */
+    private static final class Campaign {
+        private final int ref;
+        private final String appid;
+        private final String campaignId;
+        private final long firstSentAt;
+        private volatile long lastSentAt;
+        private volatile long lastEventAt;
+        private final LongAdder sent = new LongAdder();
+        private final LongAdder[] completed = new LongAdder[STATUSES.length];
+
+        private Campaign(int ref, String appid, String campaignId, long now) {
+            this.ref = ref;
+            this.appid = appid;
+            this.campaignId = campaignId;
+            this.firstSentAt = now;
+            this.lastSentAt = now;
+            for (int i = 0; i < completed.length; i++) {
+                completed[i] = new LongAdder();
+            }
+        }
+
+        void onSent(long now) {
+            sent.increment();
+            lastSentAt = Math.max(lastSentAt, now);
+        }
+
+        void onCompleted(TemplateDelivery.Status status, long now) {
+            completed[status.ordinal()].increment();
+            lastEventAt = Math.max(lastEventAt, now);
+        }
+
+        CampaignDeliveryStats stats() {
+            long sentCount = sent.sum();
+            long success = completed[TemplateDelivery.Status.SUCCESS.ordinal()].sum();
+            long userBlock = completed[TemplateDelivery.Status.USER_BLOCK.ordinal()].sum();
+            long systemFailed = completed[TemplateDelivery.Status.SYSTEM_FAILED.ordinal()].sum();
+            long failed = completed[TemplateDelivery.Status.FAILED.ordinal()].sum();
+            long resolved = success + userBlock + systemFailed + failed;
+            Double rate = resolved == 0 ? null : Math.round(success * 10000.0 / resolved) / 10000.0;
+            return new CampaignDeliveryStats(campaignId, sentCount, success, userBlock, systemFailed, failed,
+                Math.max(sentCount - resolved, 0), rate, firstSentAt, lastSentAt,
+                lastEventAt == 0 ? null : lastEventAt);
+        }
+    }
+
+    /**
+     * 一个时间段内的发送记录：msgId -> 活动编号、发送时间偏移（毫秒）、状态、接收者
+     *
+     * 接收者按 [长度][UTF-8 字节] 追加到 users 中，记录其位置；只整桶丢弃，不需要回收。
+     * 不同 appid 的 msgId 可能相同，按活动编号对应的 appid 区分。
+     */
+    private static final class Bucket {
+        private static final int MIN_CAPACITY = 64;
+
+        private final long start;
+        private long[] msgIds = new long[MIN_CAPACITY];
+        private int[] refs = new int[MIN_CAPACITY];
+        private int[] sentOffsets = new int[MIN_CAPACITY];
+        private byte[] statuses = new byte[MIN_CAPACITY];
+        private int[] userOffsets = new int[MIN_CAPACITY];
+        private byte[] users = new byte[MIN_CAPACITY * 32];
+        private int usersSize;
+        private int size;
+
+        private Bucket(long start) {
+            this.start = start;
+        }
+
+        synchronized void put(long msgId, String appid, int ref, int sentOffset, String toUser,
+                              Map<Integer, Campaign> byRef) {
+            int i = find(msgId, appid, byRef);
+            if (i < 0) {
+                i = ~i;
+                msgIds[i] = msgId;
+                size++;
+            }
+            refs[i] = ref;
+            sentOffsets[i] = sentOffset;
+            statuses[i] = (byte) TemplateDelivery.Status.PENDING.ordinal();
+            userOffsets[i] = appendUser(toUser);
+            if (size > msgIds.length * 3 / 4) {
+                grow();
+            }
+        }
+
+        /**
+         * 写入送达结果（已有结果时不覆盖）
+         *
+         * @return 写入前的状态序号，没有记录时返回 -1
+         */
+        synchronized int complete(long msgId, String appid, TemplateDelivery.Status status, Map<Integer, Campaign> byRef) {
+            int i = find(msgId, appid, byRef);
+            if (i < 0) {
+                return -1;
+            }
+            int previous = statuses[i];
+            if (previous == TemplateDelivery.Status.PENDING.ordinal()) {
+                statuses[i] = (byte) status.ordinal();
+            }
+            return previous;
+        }
+
+        synchronized TemplateDelivery get(long msgId, String appid, Map<Integer, Campaign> byRef) {
+            int i = find(msgId, appid, byRef);
+            if (i < 0) {
+                return null;
+            }
+            Campaign campaign = byRef.get(refs[i]);
+            int length = users[userOffsets[i]] & 0xFF;
+            String toUser = length == 0 ? null
+                : new String(users, userOffsets[i] + 1, length, StandardCharsets.UTF_8);
+            return new TemplateDelivery(String.valueOf(msgId), campaign == null ? null : campaign.campaignId, toUser,
+                start + sentOffsets[i], STATUSES[statuses[i]]);
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        /**
+         * 查找 appid 下的 msgId，找到时返回位置，否则返回 ~插入位置
+         */
+        private int find(long msgId, String appid, Map<Integer, Campaign> byRef) {
+            int mask = msgIds.length - 1;
+            int i = slot(msgId, mask);
+            while (msgIds[i] != 0) {
+                if (msgIds[i] == msgId) {
+                    Campaign campaign = byRef.get(refs[i]);
+                    if (campaign == null || campaign.appid.equals(appid)) {
+                        return i;
+                    }
+                }
+                i = (i + 1) & mask;
+            }
+            return ~i;
+        }
+
+        private int appendUser(String toUser) {
+            byte[] bytes = StringUtils.defaultString(toUser).getBytes(StandardCharsets.UTF_8);
+            int length = Math.min(bytes.length, 255);
+            if (usersSize + length + 1 > users.length) {
+                users = Arrays.copyOf(users, Math.max(users.length * 2, usersSize + length + 1));
+            }
+            int offset = usersSize;
+            users[usersSize++] = (byte) length;
+            System.arraycopy(bytes, 0, users, usersSize, length);
+            usersSize += length;
+            return offset;
+        }
+
+        private void grow() {
+            long[] oldMsgIds = msgIds;
+            int[] oldRefs = refs;
+            int[] oldSentOffsets = sentOffsets;
+            byte[] oldStatuses = statuses;
+            int[] oldUserOffsets = userOffsets;
+            int capacity = oldMsgIds.length * 2;
+            msgIds = new long[capacity];
+            refs = new int[capacity];
+            sentOffsets = new int[capacity];
+            statuses = new byte[capacity];
+            userOffsets = new int[capacity];
+            int mask = capacity - 1;
+            for (int i = 0; i < oldMsgIds.length; i++) {
+                if (oldMsgIds[i] != 0) {
+                    int j = slot(oldMsgIds[i], mask);
+                    while (msgIds[j] != 0) {
+                        j = (j + 1) & mask;
+                    }
+                    msgIds[j] = oldMsgIds[i];
+                    refs[j] = oldRefs[i];
+                    sentOffsets[j] = oldSentOffsets[i];
+                    statuses[j] = oldStatuses[i];
+                    userOffsets[j] = oldUserOffsets[i];
+                }
+            }
+        }
+
+        private static int slot(long msgId, int mask) {
+            // msgId 基本连续，打散后再取低位
+            return (int) ((msgId * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.github.binarywang.demo.wx.miniapp.dispatch;
+
+import com.github.binarywang.demo.wx.miniapp.config.DispatchProperties;
+import com.github.binarywang.demo.wx.miniapp.ratelimit.TokenBucket;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <pre>
+ * 主动发送按 appid 限流：每个 appid 一个令牌桶，所有批量请求共享
+ *
+ * appid 数量有限（来自配置），令牌桶不做淘汰；
+ * 结果记录在指标 wx.dispatch.rate_limit（tag：appid、outcome = acquired、timeout）中。
+ * </pre>
+ */
+public class AppidRateLimiter {
+    private final DispatchProperties properties;
+    private final MeterRegistry meterRegistry;
+    private final ConcurrentHashMap<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+
+    public AppidRateLimiter(DispatchProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * 为 appid 获取一次发送配额，令牌不足时等待，最多等待 dispatch.acquire-timeout-ms
+     *
+     * @return 获取成功返回 true，超时返回 false
+     */
+    public boolean acquire(String appid) throws InterruptedException {
+        return acquire(appid, properties.getAcquireTimeoutMs());
+    }
+
+    /**
+     * 为 appid 获取一次发送配额，最多等待 timeoutMs 毫秒
+     *
+     * @return 获取成功返回 true，超时返回 false
+     */
+    public boolean acquire(String appid, long timeoutMs) throws InterruptedException {
+        boolean acquired = buckets.computeIfAbsent(appid, this::newBucket)
+            .tryAcquire(timeoutMs, TimeUnit.MILLISECONDS);
+        meterRegistry.counter("wx.dispatch.rate_limit",
+            "appid", appid, "outcome", acquired ? "acquired" : "timeout").increment();
+        return acquired;
+    }
+
+    private TokenBucket newBucket(String appid) {
+        DispatchProperties.Limit limit = properties.getAppids().get(appid);
+        if (limit == null) {
+            limit = properties.getDefaultLimit();
+        }
+        return new TokenBucket(limit.getCapacity(), limit.getRefillPerMinute());
+    }
+}
@@ -0,0 +1,160 @@
+package com.github.binarywang.demo.wx.miniapp.dispatch;
+
+import com.github.binarywang.demo.wx.miniapp.config.DispatchProperties;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * <pre>
+ * 批量主动发送：在共享线程池上并发发送一批消息，按 appid 限流，结果按原顺序返回
+ *
+ * 1. 每个批量请求最多同时有 dispatch.max-concurrency-per-request 条在发送中（按顺序输出结果的窗口）；
+ * 2. 每条发送前先从 {@link AppidRateLimiter} 取得令牌（在提交线程上等待，不占用发送线程）；
+ *    交互式请求等待超时即判为失败，后台任务（blockOnRateLimit）则一直等到取得令牌；
+ * 3. 线程池队列满时由提交线程自己执行。
+ *
+ * 注意：WxJava 的 switchover(appid) 是线程本地的，发送逻辑运行在发送线程上，需要自己先调用 switchover。
+ * 每条的结果记录在指标 wx.dispatch.items（tag：appid、outcome = sent、failed、throttled）中。
+ * </pre>
+ */
+@Slf4j
+public class BulkDispatcher {
+    private final DispatchProperties properties;
+    private final AppidRateLimiter rateLimiter;
+    private final MeterRegistry meterRegistry;
+    private final ThreadPoolExecutor executor;
+
+    public BulkDispatcher(DispatchProperties properties, AppidRateLimiter rateLimiter, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.rateLimiter = rateLimiter;
+        this.meterRegistry = meterRegistry;
+        this.executor = new ThreadPoolExecutor(properties.getThreads(), properties.getThreads(),
+            60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(properties.getThreads() * 4),
+            new ThreadFactoryBuilder().setNameFormat("wx-dispatch-%d").setDaemon(true).build(),
+            new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /**
+     * 发送一条消息，运行在发送线程上
+     */
+    @FunctionalInterface
+    public interface Sender<T, R> {
+        R send(int index, T item) throws Exception;
+    }
+
+    /**
+     * 发送失败（含限流超时）时生成该条的结果
+     */
+    @FunctionalInterface
+    public interface FailureHandler<T, R> {
+        R onFailure(int index, T item, Exception e);
+    }
+
+    /**
+     * 并发发送一批消息，等全部完成后按原顺序返回每条的结果
+     *
+     * @param appid          限流使用的 appid
+     * @param items          待发送的条目
+     * @param sender         发送逻辑
+     * @param failureHandler 发送抛出异常或等待令牌超时时调用
+     */
+    public <T, R> List<R> dispatch(String appid, List<T> items, Sender<T, R> sender,
+                                   FailureHandler<T, R> failureHandler) throws InterruptedException {
+        List<R> results = new ArrayList<>(items.size());
+        dispatchStream(appid, items.iterator(), sender, failureHandler, results::add);
+        return results;
+    }
+
+    /**
+     * <pre>
+     * 流式发送：边从 items 读取边发送，每条完成后按原顺序交给 resultConsumer
+     *
+     * 最多 dispatch.max-concurrency-per-request 条在发送中（含已完成但排在前面的条目未完成而等待输出的），
+     * 窗口满时不再读取 items，内存占用与总条数无关。
+     * resultConsumer 在调用线程上执行。等待令牌超时的条目判为失败。
+     * </pre>
+     */
+    public <T, R> void dispatchStream(String appid, Iterator<T> items, Sender<T, R> sender,
+                                      FailureHandler<T, R> failureHandler,
+                                      Consumer<R> resultConsumer) throws InterruptedException {
+        dispatchStream(appid, items, sender, failureHandler, resultConsumer, false);
+    }
+
+    /**
+     * 流式发送，同 {@link #dispatchStream(String, Iterator, Sender, FailureHandler, Consumer)}
+     *
+     * @param blockOnRateLimit 为 true 时一直等到取得令牌（只有线程被中断才停止），不会因限流产生失败的条目；
+     *                         用于后台任务，避免因限流跳过接收者
+     */
+    public <T, R> void dispatchStream(String appid, Iterator<T> items, Sender<T, R> sender,
+                                      FailureHandler<T, R> failureHandler, Consumer<R> resultConsumer,
+                                      boolean blockOnRateLimit) throws InterruptedException {
+        int window = Math.max(properties.getMaxConcurrencyPerRequest(), 1);
+        ArrayDeque<CompletableFuture<R>> inFlight = new ArrayDeque<>(window);
+        try {
+            int index = 0;
+            while (items.hasNext()) {
+                T item = items.next();
+                int current = index++;
+                while (inFlight.size() >= window) {
+                    resultConsumer.accept(inFlight.poll().join());
+                }
+                inFlight.add(submit(appid, current, item, sender, failureHandler, blockOnRateLimit));
+                // 顺带输出已完成的条目，不等窗口满
+                while (!inFlight.isEmpty() && inFlight.peek().isDone()) {
+                    resultConsumer.accept(inFlight.poll().join());
+                }
+            }
+            while (!inFlight.isEmpty()) {
+                resultConsumer.accept(inFlight.poll().join());
+            }
+        } catch (InterruptedException e) {
+            // 请求被中断：已提交的不再等待
+            inFlight.forEach(f -> f.cancel(false));
+            throw e;
+        }
+    }
+
+    private <T, R> CompletableFuture<R> submit(String appid, int index, T item, Sender<T, R> sender,
+                                               FailureHandler<T, R> failureHandler,
+                                               boolean blockOnRateLimit) throws InterruptedException {
+        if (blockOnRateLimit) {
+            while (!rateLimiter.acquire(appid)) {
+                log.debug("等待发送配额，appid={}", appid);
+            }
+        } else if (!rateLimiter.acquire(appid)) {
+            record(appid, "throttled");
+            return CompletableFuture.completedFuture(failureHandler.onFailure(index, item,
+                new IllegalStateException("发送频率超过限制，等待超时")));
+        }
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                R result = sender.send(index, item);
+                record(appid, "sent");
+                return result;
+            } catch (Exception e) {
+                record(appid, "failed");
+                return failureHandler.onFailure(index, item, e);
+            }
+        }, executor);
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private void record(String appid, String outcome) {
+        meterRegistry.counter("wx.dispatch.items", "appid", appid, "outcome", outcome).increment();
+    }
+}
@@ -0,0 +1,292 @@
+package com.github.binarywang.demo.wx.miniapp.interaction;
+
+import com.google.common.hash.Hashing;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <pre>
+ * 48小时互动窗口索引：记录每个用户（appid + openid）最近一次互动的时间
+ *
+ * 客服消息只能发给48小时内与公众号/小程序互动过的用户，否则微信返回 45015。
+ * 发送前先查本索引，窗口外的用户直接在本地拒绝，省掉一次注定失败的接口调用。
+ *
+ * 存储：appid + openid 取 64 位指纹作为 key，互动时间存为 int（2020-01-01 起的秒数），
+ * 分段的开放寻址 long -> int 表，每条约 12~24 字节；过期条目在扩容和定期清理时丢弃。
+ * 指纹在不同进程间保持一致，可以写入快照文件，重启后恢复。
+ * </pre>
+ */
+@Slf4j
+public class InteractionWindowIndex {
+    /**
+     * 互动时间的起点：2020-01-01 00:00:00 UTC
+     */
+    private static final long BASE_EPOCH_SECONDS = 1_577_836_800L;
+    private static final int SEGMENT_BITS = 4;
+    private static final int SNAPSHOT_MAGIC = 0x57494E31;
+
+    /**
+     * 会打开互动窗口的事件（小写）；其他事件（如取消关注、模板消息/群发结果推送、上报地理位置）不算用户互动
+     */
+    private static final Set<String> INTERACTION_EVENTS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+        "subscribe", "scan", "click", "scancode_push", "scancode_waitmsg", "pic_sysphoto", "pic_photo_or_album",
+        "pic_weixin", "location_select", "user_enter_tempsession")));
+
+    private final long windowSeconds;
+    private final Set<String> enforceAppids;
+    private final MeterRegistry meterRegistry;
+    private final Segment[] segments = new Segment[1 << SEGMENT_BITS];
+
+    public InteractionWindowIndex(int windowHours, Set<String> enforceAppids, MeterRegistry meterRegistry) {
+        this.windowSeconds = TimeUnit.HOURS.toSeconds(windowHours);
+        this.enforceAppids = enforceAppids;
+        this.meterRegistry = meterRegistry;
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new Segment();
+        }
+        Gauge.builder("wx.interaction_window.entries", this, InteractionWindowIndex::size)
+            .description("互动窗口索引中的用户数")
+            .register(meterRegistry);
+    }
+
+    /**
+     * 判断一条推送消息是否算作用户互动：普通消息都算，事件只算 {@link #INTERACTION_EVENTS} 中的
+     */
+    public static boolean isInteraction(String msgType, String event) {
+        if (StringUtils.isBlank(msgType)) {
+            return false;
+        }
+        if (!"event".equalsIgnoreCase(msgType)) {
+            return true;
+        }
+        return event != null && INTERACTION_EVENTS.contains(event.toLowerCase());
+    }
+
+    /**
+     * 记录用户的一次互动
+     *
+     * @param createTime 消息的创建时间（秒），为空时使用当前时间
+     */
+    public void record(String appid, String openid, Long createTime) {
+        if (StringUtils.isAnyBlank(appid, openid)) {
+            return;
+        }
+        long now = nowSeconds();
+        long seconds = createTime == null ? now : Math.min(createTime - BASE_EPOCH_SECONDS, now);
+        int cutoff = cutoff(now);
+        if (seconds < cutoff) {
+            return;
+        }
+        long key = keyOf(appid, openid);
+        segmentFor(key).put(key, (int) seconds, cutoff);
+    }
+
+    /**
+     * 是否需要在发送前检查该 appid 的互动窗口
+     */
+    public boolean isEnforced(String appid) {
+        return enforceAppids.contains(appid);
+    }
+
+    /**
+     * 用户是否在互动窗口内；从未互动过的用户返回 false
+     */
+    public boolean isOpen(String appid, String openid) {
+        long key = keyOf(appid, openid);
+        int last = segmentFor(key).get(key);
+        boolean open = last != 0 && last >= cutoff(nowSeconds());
+        meterRegistry.counter("wx.interaction_window.check", "outcome", open ? "open" : "closed").increment();
+        return open;
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    /**
+     * 丢弃窗口外的条目
+     */
+    public void prune() {
+        int cutoff = cutoff(nowSeconds());
+        for (Segment segment : segments) {
+            segment.prune(cutoff);
+        }
+    }
+
+    /**
+     * 把窗口内的条目写入快照文件（先写临时文件再替换）
+     */
+    public void writeSnapshot(Path file) throws IOException {
+        int cutoff = cutoff(nowSeconds());
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        int count = 0;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            for (Segment segment : segments) {
+                long[] keys;
+                int[] values;
+                synchronized (segment) {
+                    keys = segment.keys.clone();
+                    values = segment.values.clone();
+                }
+                for (int i = 0; i < keys.length; i++) {
+                    if (keys[i] != 0 && values[i] >= cutoff) {
+                        out.writeLong(keys[i]);
+                        out.writeInt(values[i]);
+                        count++;
+                    }
+                }
+            }
+            // key 不会为 0，用作结束标记
+            out.writeLong(0L);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        log.debug("互动窗口快照已写入，file={}, 条数={}", file, count);
+    }
+
+    /**
+     * 从快照文件恢复，窗口外的条目直接跳过
+     */
+    public void loadSnapshot(Path file) throws IOException {
+        int cutoff = cutoff(nowSeconds());
+        int count = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != SNAPSHOT_MAGIC) {
+                throw new IOException("不是互动窗口快照文件：" + file);
+            }
+            for (long key = in.readLong(); key != 0; key = in.readLong()) {
+                int value = in.readInt();
+                if (value >= cutoff) {
+                    segmentFor(key).put(key, value, cutoff);
+                    count++;
+                }
+            }
+        }
+        log.info("已从快照恢复互动窗口，file={}, 条数={}", file, count);
+    }
+
+    private Segment segmentFor(long key) {
+        return segments[(int) (key >>> (64 - SEGMENT_BITS))];
+    }
+
+    private int cutoff(long now) {
+        return (int) (now - windowSeconds);
+    }
+
+    private static long nowSeconds() {
+        return System.currentTimeMillis() / 1000 - BASE_EPOCH_SECONDS;
+    }
+
+    private static long keyOf(String appid, String openid) {
+        long key = Hashing.farmHashFingerprint64()
+            .hashString(appid + ":" + openid, StandardCharsets.UTF_8).asLong();
+        return key == 0 ? 1 : key;
+    }
+
+    /**
+     * 开放寻址（线性探测）的 long -> int 表，key 为 0 表示空槽；
+     * 不支持单条删除，过期条目在重建时丢弃
+     */
+    private static final class Segment {
+        private static final int MIN_CAPACITY = 16;
+
+        private long[] keys = new long[MIN_CAPACITY];
+        private int[] values = new int[MIN_CAPACITY];
+        private int size;
+
+        synchronized void put(long key, int value, int cutoff) {
+            int mask = keys.length - 1;
+            int i = (int) key & mask;
+            while (keys[i] != 0) {
+                if (keys[i] == key) {
+                    values[i] = Math.max(values[i], value);
+                    return;
+                }
+                i = (i + 1) & mask;
+            }
+            keys[i] = key;
+            values[i] = value;
+            if (++size > keys.length * 3 / 4) {
+                rebuild(cutoff);
+            }
+        }
+
+        synchronized int get(long key) {
+            int mask = keys.length - 1;
+            int i = (int) key & mask;
+            while (keys[i] != 0) {
+                if (keys[i] == key) {
+                    return values[i];
+                }
+                i = (i + 1) & mask;
+            }
+            return 0;
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        synchronized void prune(int cutoff) {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != 0 && values[i] < cutoff) {
+                    rebuild(cutoff);
+                    return;
+                }
+            }
+        }
+
+        /**
+         * 丢弃过期条目，并按剩余条数重新分配容量（负载不超过 1/2）
+         */
+        private void rebuild(int cutoff) {
+            int live = 0;
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != 0 && values[i] >= cutoff) {
+                    live++;
+                }
+            }
+            int capacity = MIN_CAPACITY;
+            while (capacity < live * 2) {
+                capacity <<= 1;
+            }
+            long[] oldKeys = keys;
+            int[] oldValues = values;
+            keys = new long[capacity];
+            values = new int[capacity];
+            int mask = capacity - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != 0 && oldValues[i] >= cutoff) {
+                    int j = (int) oldKeys[i] & mask;
+                    while (keys[j] != 0) {
+                        j = (j + 1) & mask;
+                    }
+                    keys[j] = oldKeys[i];
+                    values[j] = oldValues[i];
+                }
+            }
+            size = live;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.github.binarywang.demo.wx.miniapp.interaction;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <pre>
+ * 互动窗口索引的后台维护：启动时从快照恢复，之后定期清理过期条目并写快照，关闭时再写一次
+ *
+ * snapshotFile 为空时只做定期清理。
+ * </pre>
+ */
+@Slf4j
+public class InteractionWindowMaintainer {
+    private final InteractionWindowIndex index;
+    private final Path snapshotFile;
+    private final long intervalSeconds;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+        new ThreadFactoryBuilder().setNameFormat("interaction-window-%d").setDaemon(true).build());
+
+    public InteractionWindowMaintainer(InteractionWindowIndex index, Path snapshotFile, long intervalSeconds) {
+        this.index = index;
+        this.snapshotFile = snapshotFile;
+        this.intervalSeconds = Math.max(intervalSeconds, 1);
+    }
+
+    public void start() {
+        if (snapshotFile != null && Files.exists(snapshotFile)) {
+            try {
+                index.loadSnapshot(snapshotFile);
+            } catch (Exception e) {
+                log.warn("互动窗口快照恢复失败，从空索引开始，file={}: {}", snapshotFile, e.getMessage());
+            }
+        }
+        scheduler.scheduleWithFixedDelay(this::maintain, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    public void shutdown() {
+        scheduler.shutdownNow();
+        writeSnapshot();
+    }
+
+    private void maintain() {
+        index.prune();
+        writeSnapshot();
+    }
+
+    private void writeSnapshot() {
+        if (snapshotFile == null) {
+            return;
+        }
+        try {
+            index.writeSnapshot(snapshotFile);
+        } catch (Exception e) {
+            log.warn("互动窗口快照写入失败，file={}: {}", snapshotFile, e.getMessage());
+        }
+    }
+}
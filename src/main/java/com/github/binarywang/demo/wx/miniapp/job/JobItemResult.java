@@ -0,0 +1,21 @@
+package com.github.binarywang.demo.wx.miniapp.job;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 任务中一条消息的发送结果，即 results.ndjson 中的一行；index 为该条在提交时的位置（从 0 开始）
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class JobItemResult {
+    private long index;
+    private boolean success;
+    private String msgId;
+    private Integer errcode;
+    private String error;
+}
@@ -0,0 +1,375 @@
+package com.github.binarywang.demo.wx.miniapp.job;
+
+import com.github.binarywang.demo.wx.miniapp.config.JobProperties;
+import com.github.binarywang.demo.wx.miniapp.dispatch.BulkDispatcher;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import me.chanjar.weixin.common.error.WxErrorException;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * <pre>
+ * 异步批量发送任务：提交后立即返回任务 id，由后台线程通过 {@link BulkDispatcher} 发送，可查询进度、取消
+ *
+ * 1. 提交：消息先写入任务目录（见 {@link JobStore}），写完即返回；
+ * 2. 运行：最多 job.concurrent-jobs 个任务同时运行，每条的结果按提交顺序追加到结果文件，
+ *    每隔 job.checkpoint-interval-ms 写盘并保存任务状态；
+ * 3. 取消：排队中的任务直接取消；运行中的任务不再读取新的消息，等已在发送中的完成后结束；
+ * 4. 恢复：停机时运行中的任务同样在发送中的完成后停下；启动时以结果文件为准恢复进度，
+ *    对应类型的发送器注册后从上次确认的下一条继续。
+ *
+ * 注意：进程崩溃时，最后一个检查点之后已发送的消息在重启后会再发一次（至少一次投递）。
+ * 任务结束时记录指标 wx.jobs.finished（tag：kind、status）。
+ * </pre>
+ */
+@Slf4j
+public class JobManager {
+
+    /**
+     * 发送器：把一条消息发出去，返回微信的 msgId（没有时返回 null）；运行在 {@link BulkDispatcher} 的发送线程上
+     */
+    @FunctionalInterface
+    public interface Sender {
+        String send(String appid, String payload) throws Exception;
+    }
+
+    private final JobProperties properties;
+    private final BulkDispatcher bulkDispatcher;
+    private final MeterRegistry meterRegistry;
+    private final JobStore store;
+    private final Map<String, SendJob> jobs = new ConcurrentHashMap<>();
+    private final Map<String, Sender> senders = new ConcurrentHashMap<>();
+    private final Set<String> scheduled = ConcurrentHashMap.newKeySet();
+    private final ThreadPoolExecutor runners;
+    private volatile boolean stopping;
+
+    public JobManager(JobProperties properties, BulkDispatcher bulkDispatcher, MeterRegistry meterRegistry) throws IOException {
+        this.properties = properties;
+        this.bulkDispatcher = bulkDispatcher;
+        this.meterRegistry = meterRegistry;
+        this.store = new JobStore(Paths.get(properties.getDir()), properties.isFsync());
+        int concurrentJobs = Math.max(properties.getConcurrentJobs(), 1);
+        this.runners = new ThreadPoolExecutor(concurrentJobs, concurrentJobs, 0, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>(), new ThreadFactoryBuilder().setNameFormat("wx-job-%d").setDaemon(true).build());
+        Gauge.builder("wx.jobs.active", jobs, m -> m.values().stream().filter(job -> !job.isTerminal()).count())
+            .description("排队中和运行中的任务数")
+            .register(meterRegistry);
+    }
+
+    /**
+     * 注册某类任务的发送器，并开始运行该类型中等待继续的任务
+     */
+    public void register(String kind, Sender sender) {
+        senders.put(kind, sender);
+        jobs.values().stream()
+            .filter(job -> kind.equals(job.getKind()))
+            .sorted(Comparator.comparing(SendJob::getCreatedAt))
+            .forEach(this::scheduleIfReady);
+    }
+
+    /**
+     * 读取任务目录，恢复未结束任务的进度
+     */
+    public void start() throws IOException {
+        int resumable = 0;
+        for (SendJob job : store.loadAll()) {
+            if (!job.isTerminal()) {
+                store.recoverProgress(job);
+                if (job.getProcessed() >= job.getTotal()) {
+                    job.setStatus(SendJob.Status.COMPLETED);
+                    job.setFinishedAt(System.currentTimeMillis());
+                } else if (job.isCancelRequested()) {
+                    job.setStatus(SendJob.Status.CANCELLED);
+                    job.setFinishedAt(System.currentTimeMillis());
+                } else {
+                    job.setStatus(SendJob.Status.QUEUED);
+                    resumable++;
+                }
+                store.saveState(job);
+            }
+            jobs.put(idOf(job.getAppid(), job.getId()), job);
+        }
+        evictExpired();
+        log.info("批量发送任务已加载，dir={}, 任务数={}, 待继续={}", properties.getDir(), jobs.size(), resumable);
+    }
+
+    /**
+     * 停止接收新任务；运行中的任务在发送中的消息完成后停下，保存进度，下次启动时继续
+     */
+    public void shutdown() throws InterruptedException {
+        stopping = true;
+        runners.shutdown();
+        if (!runners.awaitTermination(30, TimeUnit.SECONDS)) {
+            log.warn("等待批量发送任务停止超时");
+            runners.shutdownNow();
+        }
+    }
+
+    /**
+     * 提交任务：payloads 中每个元素是一条消息的 JSON（不能含换行），全部写入任务目录后返回
+     *
+     * @throws IllegalArgumentException 未注册该类型的发送器，或 payloads 读取时校验失败
+     * @throws IOException              写任务文件失败，任务未创建
+     */
+    public SendJob submit(String appid, String kind, Iterator<String> payloads) throws IOException {
+        if (stopping) {
+            throw new IllegalStateException("服务正在停止，不再接收新任务");
+        }
+        if (!senders.containsKey(kind)) {
+            throw new IllegalArgumentException(String.format("不支持的任务类型：%s", kind));
+        }
+        SendJob job = new SendJob();
+        job.setId(UUID.randomUUID().toString().replace("-", ""));
+        job.setAppid(appid);
+        job.setKind(kind);
+        job.setStatus(SendJob.Status.QUEUED);
+        job.setCreatedAt(System.currentTimeMillis());
+        try {
+            store.create(job, payloads);
+        } catch (IOException | RuntimeException e) {
+            store.delete(job);
+            throw e;
+        }
+
+        jobs.put(idOf(appid, job.getId()), job);
+        meterRegistry.counter("wx.jobs.submitted", "kind", kind).increment();
+        log.info("已提交批量发送任务，appid={}, kind={}, jobId={}, 条数={}", appid, kind, job.getId(), job.getTotal());
+        scheduleIfReady(job);
+        evictExpired();
+        return snapshot(job);
+    }
+
+    /**
+     * 查询任务状态，不存在（或已过保留期）时返回 null
+     */
+    public SendJob get(String appid, String jobId) {
+        SendJob job = jobs.get(idOf(appid, jobId));
+        return job == null ? null : snapshot(job);
+    }
+
+    /**
+     * 该 appid 的全部任务，按提交时间倒序
+     */
+    public List<SendJob> list(String appid) {
+        return jobs.values().stream()
+            .filter(job -> appid.equals(job.getAppid()))
+            .map(this::snapshot)
+            .sorted(Comparator.comparing(SendJob::getCreatedAt).reversed())
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * 取消任务，返回取消后的状态；任务不存在时返回 null，已结束的任务不受影响
+     */
+    public SendJob cancel(String appid, String jobId) throws IOException {
+        SendJob job = jobs.get(idOf(appid, jobId));
+        if (job == null) {
+            return null;
+        }
+        SendJob snapshot;
+        synchronized (job) {
+            if (job.isTerminal()) {
+                return job.copy();
+            }
+            job.setCancelRequested(true);
+            if (job.getStatus() == SendJob.Status.QUEUED) {
+                job.setStatus(SendJob.Status.CANCELLED);
+                job.setFinishedAt(System.currentTimeMillis());
+            }
+            snapshot = job.copy();
+        }
+        store.saveState(snapshot);
+        if (snapshot.isTerminal()) {
+            finished(snapshot);
+        }
+        return snapshot;
+    }
+
+    /**
+     * 读取任务中第 offset 条起最多 limit 条的发送结果；任务不存在时返回 null
+     */
+    public List<JobItemResult> results(String appid, String jobId, long offset, int limit) throws IOException {
+        SendJob job = jobs.get(idOf(appid, jobId));
+        return job == null ? null : store.readResults(job, offset, limit);
+    }
+
+    private void scheduleIfReady(SendJob job) {
+        if (!stopping && job.getStatus() == SendJob.Status.QUEUED && senders.containsKey(job.getKind())
+            && scheduled.add(job.getId())) {
+            runners.execute(() -> run(job));
+        }
+    }
+
+    private void run(SendJob job) {
+        Sender sender = senders.get(job.getKind());
+        long runStartedAt = System.currentTimeMillis();
+        long activeBefore;
+        synchronized (job) {
+            if (stopping || job.getStatus() != SendJob.Status.QUEUED) {
+                scheduled.remove(job.getId());
+                return;
+            }
+            job.setStatus(SendJob.Status.RUNNING);
+            if (job.getStartedAt() == null) {
+                job.setStartedAt(runStartedAt);
+            }
+            activeBefore = job.getActiveMs();
+        }
+        String appid = job.getAppid();
+        long base = job.getProcessed();
+        log.info("开始运行批量发送任务，appid={}, jobId={}, 从第{}条开始，共{}条", appid, job.getId(), base, job.getTotal());
+
+        String error = null;
+        try (JobStore.ItemReader items = store.openItems(job, base);
+             JobStore.ResultWriter results = store.openResults(job)) {
+            checkpoint(job, results, activeBefore, runStartedAt);
+            Iterator<String> source = new Iterator<String>() {
+                @Override
+                public boolean hasNext() {
+                    synchronized (job) {
+                        if (stopping || job.isCancelRequested()) {
+                            return false;
+                        }
+                    }
+                    return items.hasNext();
+                }
+
+                @Override
+                public String next() {
+                    return items.next();
+                }
+            };
+            long[] lastCheckpoint = {runStartedAt};
+            bulkDispatcher.dispatchStream(appid, source,
+                (index, payload) -> new JobItemResult(base + index, true, sender.send(appid, payload), null, null),
+                (index, payload, e) -> new JobItemResult(base + index, false, null,
+                    e instanceof WxErrorException ? ((WxErrorException) e).getError().getErrorCode() : null,
+                    e.getMessage()),
+                result -> {
+                    try {
+                        results.append(result);
+                        synchronized (job) {
+                            job.setProcessed(job.getProcessed() + 1);
+                            if (result.isSuccess()) {
+                                job.setSuccessCount(job.getSuccessCount() + 1);
+                            } else {
+                                job.setFailCount(job.getFailCount() + 1);
+                            }
+                        }
+                        long now = System.currentTimeMillis();
+                        if (now - lastCheckpoint[0] >= properties.getCheckpointIntervalMs()) {
+                            checkpoint(job, results, activeBefore, runStartedAt);
+                            lastCheckpoint[0] = now;
+                        }
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                },
+                // 后台任务等待限流配额，不把限流超时记为失败（否则该条会被永久跳过）
+                true);
+            results.flush();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            error = e.getMessage();
+            log.error("批量发送任务出错，appid={}, jobId={}: {}", appid, job.getId(), e.getMessage(), e);
+        }
+
+        SendJob snapshot;
+        synchronized (job) {
+            long now = System.currentTimeMillis();
+            job.setActiveMs(activeBefore + now - runStartedAt);
+            if (error != null) {
+                job.setStatus(SendJob.Status.FAILED);
+                job.setError(error);
+                job.setFinishedAt(now);
+            } else if (job.getProcessed() >= job.getTotal()) {
+                job.setStatus(SendJob.Status.COMPLETED);
+                job.setFinishedAt(now);
+            } else if (job.isCancelRequested()) {
+                job.setStatus(SendJob.Status.CANCELLED);
+                job.setFinishedAt(now);
+            } else {
+                // 停机：下次启动时继续
+                job.setStatus(SendJob.Status.QUEUED);
+            }
+            snapshot = job.copy();
+        }
+        try {
+            store.saveState(snapshot);
+        } catch (IOException e) {
+            log.error("批量发送任务状态写入失败，appid={}, jobId={}: {}", appid, job.getId(), e.getMessage(), e);
+        }
+        scheduled.remove(job.getId());
+        if (snapshot.isTerminal()) {
+            finished(snapshot);
+        } else {
+            log.info("批量发送任务已暂停，appid={}, jobId={}, 已处理{}/{}条", appid, job.getId(),
+                snapshot.getProcessed(), snapshot.getTotal());
+        }
+    }
+
+    /**
+     * 先把结果写盘，再保存任务状态，保证 job.json 中的进度不超过结果文件
+     */
+    private void checkpoint(SendJob job, JobStore.ResultWriter results, long activeBefore, long runStartedAt) throws IOException {
+        results.flush();
+        SendJob snapshot;
+        synchronized (job) {
+            job.setActiveMs(activeBefore + System.currentTimeMillis() - runStartedAt);
+            snapshot = job.copy();
+        }
+        store.saveState(snapshot);
+    }
+
+    private void finished(SendJob job) {
+        meterRegistry.counter("wx.jobs.finished", "kind", job.getKind(), "status", job.getStatus().name()).increment();
+        log.info("批量发送任务结束，appid={}, jobId={}, 状态={}, 已处理{}/{}条, 成功{}条, 失败{}条", job.getAppid(),
+            job.getId(), job.getStatus(), job.getProcessed(), job.getTotal(), job.getSuccessCount(), job.getFailCount());
+    }
+
+    /**
+     * 删除超过保留期的已结束任务
+     */
+    private void evictExpired() {
+        long expireBefore = System.currentTimeMillis() - TimeUnit.HOURS.toMillis(properties.getRetentionHours());
+        for (Map.Entry<String, SendJob> entry : jobs.entrySet()) {
+            SendJob job = entry.getValue();
+            SendJob snapshot = snapshot(job);
+            if (snapshot.isTerminal() && snapshot.getFinishedAt() != null && snapshot.getFinishedAt() < expireBefore
+                && jobs.remove(entry.getKey(), job)) {
+                try {
+                    store.delete(snapshot);
+                } catch (IOException e) {
+                    log.warn("删除过期任务目录失败，jobId={}: {}", snapshot.getId(), e.getMessage());
+                }
+            }
+        }
+    }
+
+    private SendJob snapshot(SendJob job) {
+        synchronized (job) {
+            return job.copy();
+        }
+    }
+
+    private static String idOf(String appid, String jobId) {
+        return appid + ":" + jobId;
+    }
+}
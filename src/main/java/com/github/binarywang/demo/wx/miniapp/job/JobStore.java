@@ -0,0 +1,311 @@
+package com.github.binarywang.demo.wx.miniapp.job;
+
+import com.github.binarywang.demo.wx.miniapp.utils.JsonUtils;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.stream.Stream;
+
+/**
+ * <pre>
+ * 任务文件：{dir}/{appid}/{jobId}/ 下
+ *
+ * job.json：任务状态（{@link SendJob}），先写临时文件再替换；
+ * items.ndjson：提交的消息，每行一条 JSON，提交后不再修改；
+ * results.ndjson：每条的发送结果（{@link JobItemResult}），按 items 的顺序追加，行数即已确认的条数。
+ * 崩溃时 results.ndjson 最多留下最后一行不完整的记录，恢复时截掉。
+ * </pre>
+ */
+@Slf4j
+class JobStore {
+    private static final String STATE_FILE = "job.json";
+    private static final String ITEMS_FILE = "items.ndjson";
+    private static final String RESULTS_FILE = "results.ndjson";
+
+    private final Path dir;
+    private final boolean fsync;
+
+    JobStore(Path dir, boolean fsync) throws IOException {
+        this.dir = dir;
+        this.fsync = fsync;
+        Files.createDirectories(dir);
+    }
+
+    /**
+     * 写入任务的消息和初始状态，返回消息条数
+     */
+    long create(SendJob job, Iterator<String> payloads) throws IOException {
+        Path jobDir = jobDir(job);
+        Files.createDirectories(jobDir);
+        long total = 0;
+        try (BufferedWriter writer = Files.newBufferedWriter(jobDir.resolve(ITEMS_FILE), StandardCharsets.UTF_8)) {
+            while (payloads.hasNext()) {
+                writer.write(payloads.next());
+                writer.write('\n');
+                total++;
+            }
+        }
+        job.setTotal(total);
+        saveState(job);
+        return total;
+    }
+
+    synchronized void saveState(SendJob job) throws IOException {
+        Path file = jobDir(job).resolve(STATE_FILE);
+        Path tmp = file.resolveSibling(STATE_FILE + ".tmp");
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(JsonUtils.toJson(job).getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            if (fsync) {
+                out.force(true);
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * 读出所有任务的状态，无法解析的跳过
+     */
+    List<SendJob> loadAll() throws IOException {
+        List<SendJob> jobs = new ArrayList<>();
+        try (DirectoryStream<Path> appids = Files.newDirectoryStream(dir, Files::isDirectory)) {
+            for (Path appidDir : appids) {
+                try (DirectoryStream<Path> jobDirs = Files.newDirectoryStream(appidDir, Files::isDirectory)) {
+                    for (Path jobDir : jobDirs) {
+                        Path file = jobDir.resolve(STATE_FILE);
+                        SendJob job;
+                        try {
+                            job = Files.exists(file)
+                                ? JsonUtils.readJson(new String(Files.readAllBytes(file), StandardCharsets.UTF_8), SendJob.class)
+                                : null;
+                        } catch (IOException e) {
+                            log.warn("跳过无法读取的任务目录：{}，原因：{}", jobDir, e.getMessage());
+                            continue;
+                        }
+                        if (job == null || job.getId() == null || job.getAppid() == null) {
+                            log.warn("跳过无法读取的任务目录：{}", jobDir);
+                            continue;
+                        }
+                        jobs.add(job);
+                    }
+                }
+            }
+        }
+        return jobs;
+    }
+
+    /**
+     * 以 results.ndjson 为准恢复任务进度：截掉不完整的最后一行，重新统计已确认、成功和失败的条数
+     */
+    void recoverProgress(SendJob job) throws IOException {
+        Path file = jobDir(job).resolve(RESULTS_FILE);
+        long processed = 0;
+        long success = 0;
+        long complete = 0;
+        if (Files.exists(file)) {
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    JobItemResult result;
+                    try {
+                        result = JsonUtils.readJson(line, JobItemResult.class);
+                    } catch (IOException e) {
+                        log.debug("任务结果记录解析失败，jobId={}，第{}行: {}", job.getId(), processed + 1, e.getMessage());
+                        break;
+                    }
+                    if (result == null) {
+                        break;
+                    }
+                    processed++;
+                    if (result.isSuccess()) {
+                        success++;
+                    }
+                    complete += line.getBytes(StandardCharsets.UTF_8).length + 1;
+                }
+            }
+            long size = Files.size(file);
+            if (complete < size) {
+                log.warn("任务结果文件末尾有不完整的记录，已截掉，jobId={}", job.getId());
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                    channel.truncate(complete);
+                }
+            } else if (complete > size) {
+                // 最后一条完整但缺少换行
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                    channel.write(ByteBuffer.wrap(new byte[]{'\n'}));
+                }
+            }
+        }
+        job.setProcessed(processed);
+        job.setSuccessCount(success);
+        job.setFailCount(processed - success);
+    }
+
+    /**
+     * 从第 skip 条开始读取任务的消息
+     */
+    ItemReader openItems(SendJob job, long skip) throws IOException {
+        BufferedReader reader = Files.newBufferedReader(jobDir(job).resolve(ITEMS_FILE), StandardCharsets.UTF_8);
+        try {
+            for (long i = 0; i < skip; i++) {
+                if (reader.readLine() == null) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            reader.close();
+            throw e;
+        }
+        return new ItemReader(reader);
+    }
+
+    ResultWriter openResults(SendJob job) throws IOException {
+        return new ResultWriter(FileChannel.open(jobDir(job).resolve(RESULTS_FILE),
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND), fsync);
+    }
+
+    /**
+     * 读取第 offset 条起最多 limit 条结果
+     */
+    List<JobItemResult> readResults(SendJob job, long offset, int limit) throws IOException {
+        Path file = jobDir(job).resolve(RESULTS_FILE);
+        List<JobItemResult> results = new ArrayList<>(Math.min(limit, 1000));
+        if (!Files.exists(file)) {
+            return results;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            long index = 0;
+            while (results.size() < limit && (line = reader.readLine()) != null) {
+                if (index++ < offset) {
+                    continue;
+                }
+                JobItemResult result = JsonUtils.fromJson(line, JobItemResult.class);
+                if (result == null) {
+                    break;
+                }
+                results.add(result);
+            }
+        }
+        return results;
+    }
+
+    void delete(SendJob job) throws IOException {
+        Path jobDir = jobDir(job);
+        if (!Files.exists(jobDir)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(jobDir)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    private Path jobDir(SendJob job) {
+        return dir.resolve(Paths.get(job.getAppid(), job.getId()));
+    }
+
+    /**
+     * 逐行读取任务的消息
+     */
+    static class ItemReader implements Iterator<String>, Closeable {
+        private final BufferedReader reader;
+        private String next;
+
+        private ItemReader(BufferedReader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null) {
+                try {
+                    next = reader.readLine();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public String next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            String item = next;
+            next = null;
+            return item;
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+
+    /**
+     * 追加结果：先写入内存缓冲，{@link #flush()} 时写入文件（fsync 开启时刷盘）
+     */
+    static class ResultWriter implements Closeable {
+        private final FileChannel channel;
+        private final boolean fsync;
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(64 * 1024);
+
+        private ResultWriter(FileChannel channel, boolean fsync) {
+            this.channel = channel;
+            this.fsync = fsync;
+        }
+
+        void append(JobItemResult result) throws IOException {
+            JsonUtils.writeTo(buffer, result);
+            buffer.write('\n');
+        }
+
+        void flush() throws IOException {
+            if (buffer.size() == 0) {
+                return;
+            }
+            ByteBuffer bytes = ByteBuffer.wrap(buffer.toByteArray());
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            if (fsync) {
+                channel.force(false);
+            }
+            buffer.reset();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                flush();
+            } finally {
+                channel.close();
+            }
+        }
+    }
+}
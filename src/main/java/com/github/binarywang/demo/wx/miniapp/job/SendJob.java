@@ -0,0 +1,78 @@
+package com.github.binarywang.demo.wx.miniapp.job;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Data;
+
+/**
+ * <pre>
+ * 一个异步批量发送任务的状态，同时也是任务目录中 job.json 的格式
+ *
+ * processed 是已确认（结果已写入 results.ndjson）的条数，也就是重启后继续发送的位置。
+ * </pre>
+ */
+@Data
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class SendJob {
+    public enum Status {
+        /**
+         * 等待运行（新提交的任务，或重启后等待继续的任务）
+         */
+        QUEUED,
+        RUNNING,
+        /**
+         * 全部条目已处理（每条的成功或失败见结果）
+         */
+        COMPLETED,
+        CANCELLED,
+        /**
+         * 任务本身出错（如读写任务文件失败），未处理的条目不再发送
+         */
+        FAILED
+    }
+
+    private String id;
+    private String appid;
+    /**
+     * 任务类型，决定由哪个发送器处理，如：kefu、template、mass
+     */
+    private String kind;
+    private Status status;
+    private long total;
+    private long processed;
+    private long successCount;
+    private long failCount;
+    /**
+     * 累计运行时长（毫秒，不含排队和停机时间），用于计算发送速率
+     */
+    private long activeMs;
+    private boolean cancelRequested;
+    private Long createdAt;
+    private Long startedAt;
+    private Long finishedAt;
+    private String error;
+
+    @JsonIgnore
+    public boolean isTerminal() {
+        return status == Status.COMPLETED || status == Status.CANCELLED || status == Status.FAILED;
+    }
+
+    public SendJob copy() {
+        SendJob copy = new SendJob();
+        copy.setId(id);
+        copy.setAppid(appid);
+        copy.setKind(kind);
+        copy.setStatus(status);
+        copy.setTotal(total);
+        copy.setProcessed(processed);
+        copy.setSuccessCount(successCount);
+        copy.setFailCount(failCount);
+        copy.setActiveMs(activeMs);
+        copy.setCancelRequested(cancelRequested);
+        copy.setCreatedAt(createdAt);
+        copy.setStartedAt(startedAt);
+        copy.setFinishedAt(finishedAt);
+        copy.setError(error);
+        return copy;
+    }
+}
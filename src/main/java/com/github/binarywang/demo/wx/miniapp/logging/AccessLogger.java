@@ -0,0 +1,180 @@
+package com.github.binarywang.demo.wx.miniapp.logging;
+
+import com.github.binarywang.demo.wx.miniapp.config.AccessLogProperties;
+import com.github.binarywang.demo.wx.miniapp.utils.JsonUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * <pre>
+ * 结构化访问日志（异步、采样、字段延迟渲染）
+ *
+ * 请求线程只负责采样判断和把原始字段放进有界环形缓冲区，
+ * JSON 序列化、header 脱敏等耗时操作都放在后台线程里执行；
+ * 缓冲区满时直接丢弃（计入 dropped），不会阻塞请求。
+ *
+ * 输出到名为 ACCESS_LOG 的 logger，可在 logback 中单独配置级别与 appender。
+ * </pre>
+ */
+public class AccessLogger {
+    private static final Logger log = LoggerFactory.getLogger(AccessLogger.class);
+    private static final Logger ACCESS = LoggerFactory.getLogger("ACCESS_LOG");
+
+    private final AccessLogProperties properties;
+    private final BlockingQueue<Event> buffer;
+    private final AtomicLong dropped = new AtomicLong(0L);
+    private final Thread worker;
+    private volatile boolean running = true;
+
+    public AccessLogger(AccessLogProperties properties) {
+        this.properties = properties;
+        this.buffer = new ArrayBlockingQueue<>(Math.max(properties.getBufferSize(), 16));
+        this.worker = new Thread(this::drainLoop, "access-log-writer");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * 开始记录一条访问日志；未命中采样或日志未开启时返回空实现，后续调用均无开销
+     *
+     * @param endpoint 接口标识，如：POST /msg
+     */
+    public Event event(String endpoint) {
+        if (!properties.isEnabled() || !ACCESS.isInfoEnabled() || !sampled(endpoint)) {
+            return Event.NOOP;
+        }
+        return new Event(this, endpoint);
+    }
+
+    /**
+     * 因缓冲区满而丢弃的日志条数
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    public void shutdown() {
+        running = false;
+        worker.interrupt();
+        try {
+            worker.join(TimeUnit.SECONDS.toMillis(2));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        List<Event> rest = new ArrayList<>();
+        buffer.drainTo(rest);
+        rest.forEach(this::write);
+    }
+
+    private boolean sampled(String endpoint) {
+        Double rate = properties.getSampling().get(endpoint);
+        double r = rate == null ? properties.getDefaultSampleRate() : rate;
+        if (r >= 1.0) {
+            return true;
+        }
+        if (r <= 0.0) {
+            return false;
+        }
+        return ThreadLocalRandom.current().nextDouble() < r;
+    }
+
+    private void offer(Event event) {
+        if (!buffer.offer(event)) {
+            long n = dropped.incrementAndGet();
+            if ((n & 1023) == 1) {
+                log.warn("访问日志缓冲区已满，已丢弃{}条日志", n);
+            }
+        }
+    }
+
+    private void drainLoop() {
+        List<Event> batch = new ArrayList<>(64);
+        while (running) {
+            try {
+                Event first = buffer.poll(500, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                buffer.drainTo(batch, 63);
+                batch.forEach(this::write);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void write(Event event) {
+        try {
+            Map<String, Object> record = new LinkedHashMap<>();
+            record.put("ts", event.timestamp);
+            record.put("endpoint", event.endpoint);
+            for (Map.Entry<String, Object> e : event.fields.entrySet()) {
+                Object value = e.getValue();
+                if (value instanceof Supplier) {
+                    value = ((Supplier<?>) value).get();
+                }
+                record.put(e.getKey(), value);
+            }
+            ACCESS.info(JsonUtils.getCodec().toJson(record));
+        } catch (Exception e) {
+            log.warn("访问日志渲染失败，endpoint={}: {}", event.endpoint, e.getMessage());
+        }
+    }
+
+    /**
+     * 一条访问日志；字段值可以是普通对象，也可以是延迟到后台线程才计算的 {@link Supplier}
+     */
+    public static class Event {
+        static final Event NOOP = new Event(null, null);
+
+        private final AccessLogger owner;
+        private final String endpoint;
+        private final long timestamp;
+        private final Map<String, Object> fields;
+
+        private Event(AccessLogger owner, String endpoint) {
+            this.owner = owner;
+            this.endpoint = endpoint;
+            this.timestamp = owner == null ? 0L : System.currentTimeMillis();
+            this.fields = owner == null ? null : new LinkedHashMap<>();
+        }
+
+        public Event field(String name, Object value) {
+            if (owner != null) {
+                fields.put(name, value);
+            }
+            return this;
+        }
+
+        /**
+         * 延迟渲染的字段，supplier 在后台线程执行，引用的对象需在请求结束后仍然有效
+         */
+        public Event lazy(String name, Supplier<?> supplier) {
+            if (owner != null) {
+                fields.put(name, supplier);
+            }
+            return this;
+        }
+
+        public void submit() {
+            if (owner != null) {
+                owner.offer(this);
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.github.binarywang.demo.wx.miniapp.mass;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * <pre>
+ * 一次群发的状态（不可变，更新时整体替换）
+ *
+ * totalCount、filterCount、sentCount、errorCount 只在收到 MASSSENDJOBFINISH 事件后才有；
+ * 通过查询接口得到的只有 state 和 status。
+ * </pre>
+ */
+@Value
+@Builder(toBuilder = true)
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class MassStatus {
+    public enum State {
+        SENDING,
+        SUCCESS,
+        FAILED,
+        /**
+         * 已删除（查询接口返回 DELETE）
+         */
+        DELETED
+    }
+
+    /**
+     * 最后一次更新的来源
+     */
+    public enum Source {
+        /**
+         * 本服务发出群发时登记
+         */
+        SEND,
+        EVENT,
+        POLL
+    }
+
+    String appid;
+    String msgId;
+    String msgDataId;
+    State state;
+    /**
+     * 微信返回的原始状态，如：sendsuccess、sendfail、err(10001)、SEND_SUCCESS
+     */
+    String status;
+    Source source;
+    /**
+     * 本服务发出时的接收者数量
+     */
+    Integer recipients;
+    Integer totalCount;
+    Integer filterCount;
+    Integer sentCount;
+    Integer errorCount;
+    Long sentAt;
+    Long updatedAt;
+    /**
+     * 已调用查询接口的次数
+     */
+    int polls;
+    /**
+     * 下次调用查询接口的时间（毫秒时间戳），为 null 时不再查询
+     */
+    Long nextPollAt;
+
+    public boolean isResolved() {
+        return state != State.SENDING;
+    }
+}
@@ -0,0 +1,213 @@
+package com.github.binarywang.demo.wx.miniapp.mass;
+
+import com.github.binarywang.demo.wx.miniapp.config.MassStatusProperties;
+import com.github.binarywang.demo.wx.miniapp.utils.JsonUtils;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * <pre>
+ * 群发状态索引：以 appid + msgId 为键保存在内存中，查询不调用微信接口
+ *
+ * 1. 本服务发出群发后登记为 SENDING，并约定 mass-status.poll-after-seconds 后若仍未完成再查询；
+ * 2. 收到 MASSSENDJOBFINISH 事件时更新为最终状态及各项数量（本服务之外发出的群发也会记录）；
+ * 3. 超时未收到事件的由 {@link MassStatusPoller} 调用查询接口补齐。
+ *
+ * 进程重启后索引为空，重启前未完成的群发只能等事件或按需查询。
+ * 每次更新记录在指标 wx.mass.status.updates（tag：source = send、event、poll）中。
+ * </pre>
+ */
+@Slf4j
+public class MassStatusIndex {
+    public static final String EVENT_MASS_SEND_JOB_FINISH = "MASSSENDJOBFINISH";
+
+    private final MassStatusProperties properties;
+    private final MeterRegistry meterRegistry;
+    private final ConcurrentHashMap<String, MassStatus> statuses = new ConcurrentHashMap<>();
+
+    public MassStatusIndex(MassStatusProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+        Gauge.builder("wx.mass.status.pending", statuses,
+                m -> m.values().stream().filter(s -> !s.isResolved()).count())
+            .description("已发出、尚未得到最终状态的群发数")
+            .register(meterRegistry);
+    }
+
+    /**
+     * 是否为群发结果事件
+     */
+    public static boolean isMassSendJobFinish(String msgType, String event) {
+        return "event".equals(msgType) && EVENT_MASS_SEND_JOB_FINISH.equalsIgnoreCase(event);
+    }
+
+    /**
+     * 登记本服务发出的群发；如果事件先到，只补充 msgDataId 等发送信息，不改变状态
+     */
+    public void sent(String appid, String msgId, String msgDataId, Integer recipients) {
+        if (StringUtils.isBlank(msgId)) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        statuses.merge(idOf(appid, msgId),
+            MassStatus.builder()
+                .appid(appid)
+                .msgId(msgId)
+                .msgDataId(msgDataId)
+                .state(MassStatus.State.SENDING)
+                .source(MassStatus.Source.SEND)
+                .recipients(recipients)
+                .sentAt(now)
+                .updatedAt(now)
+                .nextPollAt(now + TimeUnit.SECONDS.toMillis(properties.getPollAfterSeconds()))
+                .build(),
+            (existing, sent) -> existing.toBuilder()
+                .msgDataId(msgDataId)
+                .recipients(recipients)
+                .sentAt(now)
+                .build());
+        record(MassStatus.Source.SEND);
+    }
+
+    /**
+     * 处理 MASSSENDJOBFINISH 事件，fields 为事件的全部字段（MsgID、Status、TotalCount 等）
+     *
+     * @return 更新后的状态，事件中没有 MsgID 时返回 null
+     */
+    public MassStatus onJobFinish(String appid, Map<String, Object> fields) {
+        String msgId = JsonUtils.getString(fields, "MsgID");
+        if (StringUtils.isBlank(msgId)) {
+            msgId = JsonUtils.getString(fields, "MsgId");
+        }
+        if (StringUtils.isBlank(msgId)) {
+            log.warn("群发结果事件中没有MsgID，appid={}, fields={}", appid, fields);
+            return null;
+        }
+        String status = JsonUtils.getString(fields, "Status");
+        MassStatus.State state = "sendsuccess".equalsIgnoreCase(status) || "send success".equalsIgnoreCase(status)
+            ? MassStatus.State.SUCCESS : MassStatus.State.FAILED;
+        long now = System.currentTimeMillis();
+        String id = msgId;
+        MassStatus updated = statuses.compute(idOf(appid, msgId), (key, existing) ->
+            (existing == null ? MassStatus.builder().appid(appid).msgId(id) : existing.toBuilder())
+                .state(state)
+                .status(status)
+                .source(MassStatus.Source.EVENT)
+                .totalCount(toInteger(fields, "TotalCount"))
+                .filterCount(toInteger(fields, "FilterCount"))
+                .sentCount(toInteger(fields, "SentCount"))
+                .errorCount(toInteger(fields, "ErrorCount"))
+                .updatedAt(now)
+                .nextPollAt(null)
+                .build());
+        record(MassStatus.Source.EVENT);
+        log.info("收到群发结果事件，appid={}, msgId={}, status={}, sentCount={}, errorCount={}", appid, msgId,
+            status, updated.getSentCount(), updated.getErrorCount());
+        return updated;
+    }
+
+    /**
+     * 记录查询接口的结果（msgStatus：SEND_SUCCESS、SENDING、SEND_FAIL、DELETE）；仍在发送中时约定下次查询
+     */
+    public MassStatus onPolled(String appid, String msgId, String msgStatus) {
+        MassStatus.State state;
+        if ("SEND_SUCCESS".equalsIgnoreCase(msgStatus)) {
+            state = MassStatus.State.SUCCESS;
+        } else if ("SEND_FAIL".equalsIgnoreCase(msgStatus)) {
+            state = MassStatus.State.FAILED;
+        } else if ("DELETE".equalsIgnoreCase(msgStatus)) {
+            state = MassStatus.State.DELETED;
+        } else {
+            state = MassStatus.State.SENDING;
+        }
+        long now = System.currentTimeMillis();
+        MassStatus updated = statuses.compute(idOf(appid, msgId), (key, existing) -> {
+            if (existing != null && existing.getSource() == MassStatus.Source.EVENT) {
+                // 事件的信息更完整，不被查询结果覆盖
+                return existing;
+            }
+            MassStatus.MassStatusBuilder builder = existing == null
+                ? MassStatus.builder().appid(appid).msgId(msgId) : existing.toBuilder();
+            int polls = existing == null ? 1 : existing.getPolls() + 1;
+            return builder
+                .state(state)
+                .status(msgStatus)
+                .source(MassStatus.Source.POLL)
+                .updatedAt(now)
+                .polls(polls)
+                .nextPollAt(nextPollAt(state, polls, now))
+                .build();
+        });
+        record(MassStatus.Source.POLL);
+        return updated;
+    }
+
+    /**
+     * 查询接口调用失败：计入查询次数，按间隔再试
+     */
+    void onPollFailed(String appid, String msgId) {
+        long now = System.currentTimeMillis();
+        statuses.computeIfPresent(idOf(appid, msgId), (key, existing) -> existing.isResolved() ? existing
+            : existing.toBuilder()
+                .polls(existing.getPolls() + 1)
+                .nextPollAt(nextPollAt(MassStatus.State.SENDING, existing.getPolls() + 1, now))
+                .build());
+    }
+
+    /**
+     * 查询状态，没有记录时返回 null
+     */
+    public MassStatus get(String appid, String msgId) {
+        return statuses.get(idOf(appid, msgId));
+    }
+
+    /**
+     * 到了查询时间、仍未得到最终状态的群发，最多 limit 条
+     */
+    List<MassStatus> dueForPoll(long now, int limit) {
+        return statuses.values().stream()
+            .filter(s -> !s.isResolved() && s.getNextPollAt() != null && s.getNextPollAt() <= now)
+            .limit(limit)
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * 删除超过保留期的状态
+     */
+    void prune() {
+        long expireBefore = System.currentTimeMillis() - TimeUnit.HOURS.toMillis(properties.getRetentionHours());
+        statuses.values().removeIf(s -> s.getUpdatedAt() < expireBefore);
+    }
+
+    private Long nextPollAt(MassStatus.State state, int polls, long now) {
+        if (state != MassStatus.State.SENDING || polls >= properties.getMaxPolls()) {
+            return null;
+        }
+        return now + TimeUnit.SECONDS.toMillis(properties.getRepollSeconds());
+    }
+
+    private void record(MassStatus.Source source) {
+        meterRegistry.counter("wx.mass.status.updates", "source", source.name().toLowerCase()).increment();
+    }
+
+    private static Integer toInteger(Map<String, Object> fields, String key) {
+        String value = JsonUtils.getString(fields, key);
+        try {
+            return value == null ? null : Integer.valueOf(value.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static String idOf(String appid, String msgId) {
+        return appid + ":" + msgId;
+    }
+}
@@ -0,0 +1,67 @@
+package com.github.binarywang.demo.wx.miniapp.mass;
+
+import com.github.binarywang.demo.wx.miniapp.config.MassStatusProperties;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
+import me.chanjar.weixin.mp.api.WxMpService;
+import me.chanjar.weixin.mp.bean.result.WxMpMassGetResult;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <pre>
+ * 群发状态的兜底查询：定期找出超时仍未收到 MASSSENDJOBFINISH 事件的群发，调用查询接口更新状态
+ *
+ * 每次最多查询 mass-status.max-polls-per-scan 条，每条最多查询 mass-status.max-polls 次；同时清理过期状态。
+ * </pre>
+ */
+@Slf4j
+public class MassStatusPoller {
+    private final MassStatusIndex index;
+    private final MassStatusProperties properties;
+    private final WxMpService wxMpService;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+        new ThreadFactoryBuilder().setNameFormat("mass-status-%d").setDaemon(true).build());
+
+    public MassStatusPoller(MassStatusIndex index, MassStatusProperties properties, WxMpService wxMpService) {
+        this.index = index;
+        this.properties = properties;
+        this.wxMpService = wxMpService;
+    }
+
+    public void start() {
+        long interval = Math.max(properties.getScanIntervalSeconds(), 1);
+        scheduler.scheduleWithFixedDelay(this::scan, interval, interval, TimeUnit.SECONDS);
+    }
+
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    private void scan() {
+        try {
+            index.prune();
+            for (MassStatus status : index.dueForPoll(System.currentTimeMillis(), properties.getMaxPollsPerScan())) {
+                poll(status.getAppid(), status.getMsgId());
+            }
+        } catch (Exception e) {
+            log.warn("群发状态查询出错: {}", e.getMessage(), e);
+        }
+    }
+
+    private void poll(String appid, String msgId) {
+        try {
+            if (!wxMpService.switchover(appid)) {
+                throw new IllegalArgumentException(String.format("未找到对应appid=[%s]的公众号配置", appid));
+            }
+            WxMpMassGetResult result = wxMpService.getMassMessageService().messageMassGet(Long.valueOf(msgId));
+            MassStatus status = index.onPolled(appid, msgId, result.getMsgstatus());
+            log.info("群发超时未收到结果事件，已查询状态，appid={}, msgId={}, status={}", appid, msgId, status.getStatus());
+        } catch (Exception e) {
+            index.onPollFailed(appid, msgId);
+            log.warn("查询群发状态失败，appid={}, msgId={}: {}", appid, msgId, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,310 @@
+package com.github.binarywang.demo.wx.miniapp.outbox;
+
+import com.github.binarywang.demo.wx.miniapp.config.OutboxProperties;
+import com.github.binarywang.demo.wx.miniapp.dispatch.AppidRateLimiter;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import me.chanjar.weixin.common.error.WxErrorException;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * <pre>
+ * 发件箱：接收消息时先写入本地追加日志（落盘后即可返回），再由后台线程发送，失败按 errcode 重试
+ *
+ * 1. 幂等：消息以 appid + key 标识，保留期内相同 key 的消息只入队一次，已发送成功的不会再发；
+ * 2. 重试：按 errcode 查 outbox.retry-delays-seconds（未配置的用默认间隔），
+ *    outbox.non-retryable-errcodes 中的错误直接标记为失败；发送器抛出的 IllegalArgumentException、
+ *    IllegalStateException 表示消息本身有问题（无法解析、参数不合法等），重试也不会成功，同样直接标记为失败；
+ * 3. 限流：发送前从 {@link AppidRateLimiter} 取令牌，和批量发送共用 appid 的配额；
+ * 4. 恢复：启动时回放日志，未完成的消息继续发送。
+ *
+ * 注意：发送成功后、写入成功状态前进程崩溃，重启后该消息会再发一次（至少一次投递）。
+ * 发送结果记录在指标 wx.outbox.attempts（tag：kind、outcome = delivered、retry、failed）中。
+ * </pre>
+ */
+@Slf4j
+public class Outbox {
+    /**
+     * 没有可用的发送器或令牌时，稍后再试的间隔，单位毫秒（不计入重试次数）
+     */
+    private static final long RESCHEDULE_DELAY_MS = 1000;
+
+    /**
+     * 发送器：把一条消息发出去，返回微信的 msgId（没有时返回 null）；运行在发件箱的发送线程上。
+     * 消息本身无效、重试也不会成功时抛出 IllegalArgumentException 或 IllegalStateException
+     */
+    @FunctionalInterface
+    public interface Deliverer {
+        String deliver(OutboxEntry entry) throws Exception;
+    }
+
+    /**
+     * 入队结果，duplicate 为 true 表示相同 key 的消息已存在，返回的是已有消息的状态
+     */
+    @Value
+    public static class EnqueueResult {
+        OutboxEntry entry;
+        boolean duplicate;
+    }
+
+    /**
+     * 待入队的一条消息
+     */
+    @Value
+    public static class Message {
+        String key;
+        String kind;
+        String payload;
+    }
+
+    private final OutboxProperties properties;
+    private final AppidRateLimiter rateLimiter;
+    private final MeterRegistry meterRegistry;
+    private final OutboxLog outboxLog;
+    private final ConcurrentHashMap<String, OutboxEntry> entries = new ConcurrentHashMap<>();
+    private final Map<String, Deliverer> deliverers = new ConcurrentHashMap<>();
+    private final ScheduledThreadPoolExecutor workers;
+
+    public Outbox(OutboxProperties properties, AppidRateLimiter rateLimiter, MeterRegistry meterRegistry) throws IOException {
+        this.properties = properties;
+        this.rateLimiter = rateLimiter;
+        this.meterRegistry = meterRegistry;
+        this.outboxLog = new OutboxLog(Paths.get(properties.getFile()), properties.isFsync());
+        this.workers = new ScheduledThreadPoolExecutor(Math.max(properties.getWorkers(), 1),
+            new ThreadFactoryBuilder().setNameFormat("wx-outbox-%d").setDaemon(true).build());
+        this.workers.setRemoveOnCancelPolicy(true);
+        Gauge.builder("wx.outbox.pending", entries,
+                m -> m.values().stream().filter(e -> e.getStatus() == OutboxEntry.Status.PENDING).count())
+            .description("发件箱中等待发送或重试的消息数")
+            .register(meterRegistry);
+    }
+
+    /**
+     * 注册某类消息的发送器
+     */
+    public void register(String kind, Deliverer deliverer) {
+        deliverers.put(kind, deliverer);
+    }
+
+    /**
+     * 回放日志，继续发送未完成的消息，并启动定期清理
+     */
+    public void start() throws IOException {
+        for (OutboxEntry record : outboxLog.open()) {
+            OutboxEntry existing = entries.get(record.getId());
+            if (existing == null) {
+                entries.put(record.getId(), record);
+            } else {
+                existing.merge(record);
+            }
+        }
+        evictExpired();
+        compactIfNeeded();
+
+        long now = System.currentTimeMillis();
+        int pending = 0;
+        for (OutboxEntry entry : entries.values()) {
+            if (entry.getStatus() == OutboxEntry.Status.PENDING) {
+                long at = entry.getNextAttemptAt() == null ? now : entry.getNextAttemptAt();
+                schedule(entry.getId(), Math.max(at - now, RESCHEDULE_DELAY_MS));
+                pending++;
+            }
+        }
+        log.info("发件箱已启动，file={}, 消息数={}, 待发送={}", properties.getFile(), entries.size(), pending);
+
+        workers.scheduleWithFixedDelay(() -> {
+            try {
+                evictExpired();
+                compactIfNeeded();
+            } catch (Exception e) {
+                log.warn("发件箱日志压缩失败: {}", e.getMessage(), e);
+            }
+        }, 1, 1, TimeUnit.MINUTES);
+    }
+
+    public void shutdown() throws IOException {
+        workers.shutdownNow();
+        outboxLog.close();
+    }
+
+    /**
+     * 批量入队；新消息写入日志（整批一次刷盘）后才返回，相同 key 的已有消息直接返回其状态
+     *
+     * @throws IOException 写日志失败，本批新消息均未入队
+     */
+    public List<EnqueueResult> enqueue(String appid, List<Message> messages) throws IOException {
+        long now = System.currentTimeMillis();
+        List<EnqueueResult> results = new ArrayList<>(messages.size());
+        List<OutboxEntry> added = new ArrayList<>(messages.size());
+        for (Message message : messages) {
+            OutboxEntry entry = new OutboxEntry();
+            entry.setAppid(appid);
+            entry.setKey(message.getKey());
+            entry.setKind(message.getKind());
+            entry.setPayload(message.getPayload());
+            entry.setStatus(OutboxEntry.Status.PENDING);
+            entry.setAttempts(0);
+            entry.setNextAttemptAt(now);
+            entry.setCreatedAt(now);
+            entry.setUpdatedAt(now);
+
+            OutboxEntry existing = entries.putIfAbsent(entry.getId(), entry);
+            if (existing != null) {
+                results.add(new EnqueueResult(existing.stateRecord(), true));
+                meterRegistry.counter("wx.outbox.enqueued", "kind", message.getKind(), "outcome", "duplicate").increment();
+            } else {
+                results.add(new EnqueueResult(entry.stateRecord(), false));
+                added.add(entry);
+                meterRegistry.counter("wx.outbox.enqueued", "kind", message.getKind(), "outcome", "accepted").increment();
+            }
+        }
+
+        if (!added.isEmpty()) {
+            try {
+                outboxLog.append(added);
+            } catch (IOException e) {
+                added.forEach(entry -> entries.remove(entry.getId(), entry));
+                throw e;
+            }
+            added.forEach(entry -> schedule(entry.getId(), 0));
+        }
+        return results;
+    }
+
+    /**
+     * 查询消息状态，不存在（或已过保留期）时返回 null
+     */
+    public OutboxEntry get(String appid, String key) {
+        OutboxEntry entry = entries.get(OutboxEntry.idOf(appid, key));
+        return entry == null ? null : entry.stateRecord();
+    }
+
+    private void schedule(String id, long delayMs) {
+        if (!workers.isShutdown()) {
+            workers.schedule(() -> attempt(id), delayMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void attempt(String id) {
+        OutboxEntry entry = entries.get(id);
+        if (entry == null || entry.getStatus() != OutboxEntry.Status.PENDING) {
+            return;
+        }
+        Deliverer deliverer = deliverers.get(entry.getKind());
+        if (deliverer == null) {
+            schedule(id, RESCHEDULE_DELAY_MS);
+            return;
+        }
+        try {
+            if (!rateLimiter.acquire(entry.getAppid(), RESCHEDULE_DELAY_MS)) {
+                schedule(id, RESCHEDULE_DELAY_MS);
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        String msgId = null;
+        Integer errcode = null;
+        String error = null;
+        boolean delivered = false;
+        boolean permanent = false;
+        try {
+            msgId = deliverer.deliver(entry.copy());
+            delivered = true;
+        } catch (WxErrorException e) {
+            errcode = e.getError().getErrorCode();
+            error = e.getMessage();
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            error = e.getMessage();
+            permanent = true;
+        } catch (Exception e) {
+            error = e.getMessage();
+        }
+
+        String outcome;
+        long retryDelayMs = -1;
+        synchronized (entry) {
+            entry.setAttempts(entry.getAttempts() + 1);
+            entry.setUpdatedAt(System.currentTimeMillis());
+            entry.setErrcode(errcode);
+            entry.setError(error);
+            if (delivered) {
+                entry.setStatus(OutboxEntry.Status.DELIVERED);
+                entry.setMsgId(msgId);
+                entry.setNextAttemptAt(null);
+                outcome = "delivered";
+            } else {
+                retryDelayMs = permanent ? -1 : retryDelayMs(errcode, entry.getAttempts());
+                if (retryDelayMs < 0) {
+                    entry.setStatus(OutboxEntry.Status.FAILED);
+                    entry.setNextAttemptAt(null);
+                    outcome = "failed";
+                } else {
+                    entry.setNextAttemptAt(entry.getUpdatedAt() + retryDelayMs);
+                    outcome = "retry";
+                }
+            }
+        }
+        meterRegistry.counter("wx.outbox.attempts", "kind", entry.getKind(), "outcome", outcome).increment();
+        if (!delivered) {
+            log.warn("发件箱消息发送失败，appid={}, key={}, 第{}次, errcode={}, 结果={}: {}",
+                entry.getAppid(), entry.getKey(), entry.getAttempts(), errcode, outcome, error);
+        }
+
+        try {
+            outboxLog.append(Collections.singletonList(entry.stateRecord()));
+        } catch (IOException e) {
+            log.error("发件箱状态写入失败，appid={}, key={}: {}", entry.getAppid(), entry.getKey(), e.getMessage(), e);
+        }
+        if (retryDelayMs >= 0) {
+            schedule(id, retryDelayMs);
+        }
+    }
+
+    /**
+     * 第 attempts 次失败后的重试间隔，单位毫秒；不再重试时返回 -1
+     */
+    private long retryDelayMs(Integer errcode, int attempts) {
+        if (errcode != null && properties.getNonRetryableErrcodes().contains(errcode)) {
+            return -1;
+        }
+        List<Long> delays = errcode == null ? null : properties.getRetryDelaysSeconds().get(errcode);
+        if (delays == null) {
+            delays = properties.getDefaultRetryDelaysSeconds();
+        }
+        if (attempts > delays.size()) {
+            return -1;
+        }
+        return TimeUnit.SECONDS.toMillis(delays.get(attempts - 1));
+    }
+
+    /**
+     * 丢弃超过保留期的已完成消息
+     */
+    private void evictExpired() {
+        long expireBefore = System.currentTimeMillis() - TimeUnit.HOURS.toMillis(properties.getRetentionHours());
+        entries.values().removeIf(entry -> entry.isTerminal() && entry.getUpdatedAt() < expireBefore);
+    }
+
+    private void compactIfNeeded() throws IOException {
+        long records = outboxLog.records();
+        if (records > properties.getCompactMinRecords() && records > entries.size() * 2L) {
+            outboxLog.rewrite(() -> entries.values().stream().map(OutboxEntry::copy).collect(Collectors.toList()));
+        }
+    }
+}
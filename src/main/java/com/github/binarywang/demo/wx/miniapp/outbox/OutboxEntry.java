@@ -0,0 +1,115 @@
+package com.github.binarywang.demo.wx.miniapp.outbox;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Data;
+
+/**
+ * <pre>
+ * 发件箱中的一条消息
+ *
+ * 同时也是日志记录的格式：入队时写完整记录，之后每次状态变化只写状态字段（payload、kind 为 null），
+ * 回放日志时按 appid + key 合并。
+ * </pre>
+ */
+@Data
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class OutboxEntry {
+    public enum Status {
+        /**
+         * 等待发送或等待重试
+         */
+        PENDING,
+        /**
+         * 已发送成功
+         */
+        DELIVERED,
+        /**
+         * 最终失败，不再重试
+         */
+        FAILED
+    }
+
+    private String appid;
+    /**
+     * 幂等 key，同一 appid 下唯一
+     */
+    private String key;
+    /**
+     * 消息类型，决定由哪个发送器处理，如：kefu、template
+     */
+    private String kind;
+    /**
+     * 消息内容（JSON）
+     */
+    private String payload;
+    private Status status;
+    /**
+     * 已尝试发送的次数
+     */
+    private Integer attempts;
+    /**
+     * 下次尝试发送的时间（毫秒时间戳）
+     */
+    private Long nextAttemptAt;
+    private Long createdAt;
+    private Long updatedAt;
+    private String msgId;
+    private Integer errcode;
+    private String error;
+
+    @JsonIgnore
+    public String getId() {
+        return idOf(appid, key);
+    }
+
+    @JsonIgnore
+    public boolean isTerminal() {
+        return status == Status.DELIVERED || status == Status.FAILED;
+    }
+
+    static String idOf(String appid, String key) {
+        return appid + ":" + key;
+    }
+
+    /**
+     * 完整副本
+     */
+    synchronized OutboxEntry copy() {
+        OutboxEntry copy = stateRecord();
+        copy.setKind(kind);
+        copy.setPayload(payload);
+        copy.setCreatedAt(createdAt);
+        return copy;
+    }
+
+    /**
+     * 只含状态字段的副本，用于写状态变化日志
+     */
+    synchronized OutboxEntry stateRecord() {
+        OutboxEntry record = new OutboxEntry();
+        record.setAppid(appid);
+        record.setKey(key);
+        record.setStatus(status);
+        record.setAttempts(attempts);
+        record.setNextAttemptAt(nextAttemptAt);
+        record.setUpdatedAt(updatedAt);
+        record.setMsgId(msgId);
+        record.setErrcode(errcode);
+        record.setError(error);
+        return record;
+    }
+
+    /**
+     * 回放日志时合并一条状态记录
+     */
+    void merge(OutboxEntry record) {
+        status = record.getStatus();
+        attempts = record.getAttempts();
+        nextAttemptAt = record.getNextAttemptAt();
+        updatedAt = record.getUpdatedAt();
+        msgId = record.getMsgId();
+        errcode = record.getErrcode();
+        error = record.getError();
+    }
+}
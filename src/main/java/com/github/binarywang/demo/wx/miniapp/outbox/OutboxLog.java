@@ -0,0 +1,130 @@
+package com.github.binarywang.demo.wx.miniapp.outbox;
+
+import com.github.binarywang.demo.wx.miniapp.utils.JsonUtils;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * <pre>
+ * 发件箱的追加写日志：每行一条 JSON 记录（{@link OutboxEntry}）
+ *
+ * 只追加不修改，崩溃时最多留下最后一行不完整的记录，回放时跳过；
+ * 日志过长时用当前所有消息重写（先写临时文件再替换）。
+ * </pre>
+ */
+@Slf4j
+class OutboxLog implements Closeable {
+    private final Path file;
+    private final boolean fsync;
+    private FileChannel channel;
+    private long records;
+
+    OutboxLog(Path file, boolean fsync) throws IOException {
+        this.file = file;
+        this.fsync = fsync;
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+    }
+
+    /**
+     * 读出全部记录，并打开日志用于追加
+     */
+    synchronized List<OutboxEntry> open() throws IOException {
+        List<OutboxEntry> result = new ArrayList<>();
+        if (Files.exists(file)) {
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    OutboxEntry record;
+                    try {
+                        record = JsonUtils.readJson(line, OutboxEntry.class);
+                    } catch (IOException e) {
+                        log.warn("跳过无法解析的发件箱日志记录：{}，原因：{}", line, e.getMessage());
+                        continue;
+                    }
+                    if (record == null || record.getAppid() == null || record.getKey() == null) {
+                        log.warn("跳过无法解析的发件箱日志记录：{}", line);
+                        continue;
+                    }
+                    result.add(record);
+                }
+            }
+        }
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        records = result.size();
+        return result;
+    }
+
+    /**
+     * 追加一批记录，fsync 开启时整批只刷一次盘
+     */
+    synchronized void append(Collection<OutboxEntry> batch) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(batch.size() * 256);
+        for (OutboxEntry record : batch) {
+            JsonUtils.writeTo(out, record);
+            out.write('\n');
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(out.toByteArray());
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        if (fsync) {
+            channel.force(false);
+        }
+        records += batch.size();
+    }
+
+    synchronized long records() {
+        return records;
+    }
+
+    /**
+     * 用当前消息重写日志；snapshot 在持有日志锁时调用，期间不会有新的追加
+     */
+    synchronized void rewrite(Supplier<Collection<OutboxEntry>> snapshot) throws IOException {
+        Collection<OutboxEntry> entries = snapshot.get();
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(entries.size() * 512);
+            for (OutboxEntry entry : entries) {
+                JsonUtils.writeTo(bytes, entry);
+                bytes.write('\n');
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            out.force(true);
+        }
+        channel.close();
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        log.info("发件箱日志已压缩，记录数 {} -> {}", records, entries.size());
+        records = entries.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.github.binarywang.demo.wx.miniapp.ratelimit;
+
+import com.github.binarywang.demo.wx.miniapp.config.RateLimitProperties;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <pre>
+ * 按发送者限流：每个（指令, wx_id）一个令牌桶
+ *
+ * 令牌桶保存在有界、按访问过期的缓存中，不会因为大量不同的 wx_id 无限增长；
+ * 限流结果记录在指标 wx.msg.command.rate_limit（tag：command、outcome）中。
+ * </pre>
+ */
+@Slf4j
+public class CommandRateLimiter {
+    private final RateLimitProperties properties;
+    private final MeterRegistry meterRegistry;
+    private final Cache<String, TokenBucket> buckets;
+
+    public CommandRateLimiter(RateLimitProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+        this.buckets = CacheBuilder.newBuilder()
+            .maximumSize(properties.getMaxBuckets())
+            .expireAfterAccess(properties.getExpireAfterAccessMinutes(), TimeUnit.MINUTES)
+            .build();
+        Gauge.builder("wx.msg.command.rate_limit.buckets", buckets, Cache::size)
+            .description("当前跟踪的令牌桶数量")
+            .register(meterRegistry);
+    }
+
+    /**
+     * 尝试为某个发送者执行一次指令
+     *
+     * @param command 指令名，如：weather
+     * @param wxId    发送者
+     * @return 允许执行返回 true，被限流返回 false
+     */
+    public boolean tryAcquire(String command, String wxId) {
+        String sender = StringUtils.defaultIfBlank(wxId, "-");
+        boolean allowed;
+        try {
+            allowed = buckets.get(command + ":" + sender, () -> newBucket(command)).tryAcquire();
+        } catch (ExecutionException e) {
+            // newBucket 不会抛出受检异常，这里只做兜底放行
+            allowed = true;
+        }
+        meterRegistry.counter("wx.msg.command.rate_limit",
+            "command", command, "outcome", allowed ? "allowed" : "throttled").increment();
+        if (!allowed) {
+            log.info("指令被限流，command={}, wxId={}", command, sender);
+        }
+        return allowed;
+    }
+
+    private TokenBucket newBucket(String command) {
+        RateLimitProperties.Limit limit = properties.getCommands().get(command);
+        if (limit == null) {
+            limit = properties.getDefaultLimit();
+        }
+        return new TokenBucket(limit.getCapacity(), limit.getRefillPerMinute());
+    }
+}
@@ -0,0 +1,77 @@
+package com.github.binarywang.demo.wx.miniapp.ratelimit;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <pre>
+ * 无锁令牌桶
+ *
+ * 用 GCRA（理论到达时间）表示令牌桶状态：只需一个 AtomicLong，CAS 更新，
+ * 效果等价于容量为 capacity、每 intervalNanos 补充一个令牌的令牌桶。
+ * </pre>
+ */
+public class TokenBucket {
+    private final long intervalNanos;
+    private final long burstNanos;
+    /**
+     * 理论到达时间（theoretical arrival time），单位纳秒
+     */
+    private final AtomicLong tat;
+
+    /**
+     * @param capacity        桶容量（允许的突发次数）
+     * @param refillPerMinute 每分钟补充的令牌数
+     */
+    public TokenBucket(int capacity, int refillPerMinute) {
+        this.intervalNanos = TimeUnit.MINUTES.toNanos(1) / Math.max(refillPerMinute, 1);
+        this.burstNanos = this.intervalNanos * Math.max(capacity, 1);
+        this.tat = new AtomicLong(System.nanoTime());
+    }
+
+    /**
+     * 尝试获取一个令牌
+     *
+     * @return 获取成功返回 true，令牌不足返回 false
+     */
+    public boolean tryAcquire() {
+        while (true) {
+            long now = System.nanoTime();
+            long current = tat.get();
+            long next = Math.max(current, now) + intervalNanos;
+            if (next - now > burstNanos) {
+                return false;
+            }
+            if (tat.compareAndSet(current, next)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 获取一个令牌，令牌不足时等待，最多等待 timeout
+     *
+     * @return 获取成功返回 true，超时返回 false
+     */
+    public boolean tryAcquire(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (!tryAcquire()) {
+            // 其他线程可能抢先拿走令牌，醒来后重新竞争
+            long wait = Math.max(nanosUntilAvailable(), TimeUnit.MILLISECONDS.toNanos(1));
+            if (System.nanoTime() + wait - deadline > 0) {
+                return false;
+            }
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+        return true;
+    }
+
+    /**
+     * 距离下一个令牌可用的等待时间，单位纳秒；有令牌可用时返回 0
+     */
+    public long nanosUntilAvailable() {
+        long now = System.nanoTime();
+        long wait = tat.get() + intervalNanos - now - burstNanos;
+        return Math.max(wait, 0L);
+    }
+}
@@ -0,0 +1,91 @@
+package com.github.binarywang.demo.wx.miniapp.session;
+
+import cn.binarywang.wx.miniapp.bean.WxMaJscode2SessionResult;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.micrometer.core.instrument.MeterRegistry;
+import me.chanjar.weixin.common.error.WxErrorException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <pre>
+ * 合并相同 (appid, code) 的 jscode2session 调用
+ *
+ * 网络不稳定时小程序经常重复提交登录，code 只能用一次，第二次调用会在一次往返后返回 code 无效。
+ * 1. 合并：同一时刻相同的 (appid, code) 只调用一次接口，其余线程等待并共享结果（包括失败）；
+ * 2. 暂存：成功的结果保留 ma-session.login-result-hold-seconds 秒，稍晚到达的重复登录直接使用，不再调用接口。
+ * 失败的结果不暂存，请求没有到达微信时 code 仍然有效，可以重试。
+ * 结果记录在指标 wx.ma.jscode2session（tag：outcome = call、coalesced、held）中。
+ * </pre>
+ */
+public class Jscode2SessionCoalescer {
+    private final MeterRegistry meterRegistry;
+    private final Cache<String, WxMaJscode2SessionResult> held;
+    private final ConcurrentHashMap<String, CompletableFuture<WxMaJscode2SessionResult>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * 调用 jscode2session 接口，运行在发起调用的线程上（已切换到对应小程序配置）
+     */
+    @FunctionalInterface
+    public interface Loader {
+        WxMaJscode2SessionResult load() throws WxErrorException;
+    }
+
+    public Jscode2SessionCoalescer(long holdSeconds, long maxHeld, MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        this.held = CacheBuilder.newBuilder()
+            .maximumSize(maxHeld)
+            .expireAfterWrite(holdSeconds, TimeUnit.SECONDS)
+            .build();
+    }
+
+    /**
+     * 获取 code 对应的会话信息，优先使用进行中或刚完成的相同调用
+     */
+    public WxMaJscode2SessionResult getSessionInfo(String appid, String code, Loader loader) throws WxErrorException {
+        String key = appid + ":" + code;
+        WxMaJscode2SessionResult result = held.getIfPresent(key);
+        if (result != null) {
+            record("held");
+            return result;
+        }
+
+        CompletableFuture<WxMaJscode2SessionResult> future = new CompletableFuture<>();
+        CompletableFuture<WxMaJscode2SessionResult> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            record("coalesced");
+            try {
+                return existing.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof WxErrorException) {
+                    throw (WxErrorException) e.getCause();
+                }
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw e;
+            }
+        }
+
+        try {
+            record("call");
+            result = loader.load();
+            held.put(key, result);
+            future.complete(result);
+            return result;
+        } catch (WxErrorException | RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+    private void record(String outcome) {
+        meterRegistry.counter("wx.ma.jscode2session", "outcome", outcome).increment();
+    }
+}
@@ -0,0 +1,15 @@
+package com.github.binarywang.demo.wx.miniapp.session;
+
+import lombok.Value;
+
+/**
+ * 一个小程序登录会话：login 时由 jscode2session 得到，unionid 可能为空
+ */
+@Value
+public class WxMaSession {
+    String appid;
+    String openid;
+    String unionid;
+    String sessionKey;
+    long createdAt;
+}
@@ -0,0 +1,147 @@
+package com.github.binarywang.demo.wx.miniapp.session;
+
+import com.github.binarywang.demo.wx.miniapp.config.MaSessionProperties;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.commons.lang3.StringUtils;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <pre>
+ * 小程序登录会话存储：login 时生成不透明的 token，之后的 /info、/phone 用 token 在本地查出 session_key，
+ * session_key 不再下发给客户端
+ *
+ * 会话保存在有界、按访问过期的缓存中（ma-session.max-sessions、ma-session.expire-after-access-minutes），
+ * 值编码为紧凑的字节数组：各字段按 [长度][UTF-8 字节] 依次存放，session_key 存 Base64 解码后的 16 字节，
+ * 值约 90 字节，连同 token 和缓存条目约 260 字节，百万级会话占用约 250MB 堆内存（按 max-sessions 设置堆大小）。
+ * token 为 16 字节随机数的 URL 安全 Base64，只能在签发它的 appid 下使用。进程重启后会话清空，需重新登录。
+ * </pre>
+ */
+public class WxMaSessionStore {
+    private static final int TOKEN_BYTES = 16;
+
+    private final SecureRandom random = new SecureRandom();
+    private final Cache<String, byte[]> sessions;
+
+    public WxMaSessionStore(MaSessionProperties properties, MeterRegistry meterRegistry) {
+        this.sessions = CacheBuilder.newBuilder()
+            .maximumSize(properties.getMaxSessions())
+            .expireAfterAccess(properties.getExpireAfterAccessMinutes(), TimeUnit.MINUTES)
+            .build();
+        Gauge.builder("wx.ma.sessions", sessions, Cache::size)
+            .description("当前保存的小程序登录会话数")
+            .register(meterRegistry);
+    }
+
+    /**
+     * 保存会话，返回新的 token
+     */
+    public String create(String appid, String openid, String unionid, String sessionKey) {
+        if (StringUtils.isAnyBlank(appid, openid, sessionKey)) {
+            throw new IllegalArgumentException("appid、openid和sessionKey不能为空！");
+        }
+        byte[] token = new byte[TOKEN_BYTES];
+        random.nextBytes(token);
+        String encoded = Base64.getUrlEncoder().withoutPadding().encodeToString(token);
+        sessions.put(encoded, encode(new WxMaSession(appid, openid, unionid, sessionKey, System.currentTimeMillis())));
+        return encoded;
+    }
+
+    /**
+     * 按 token 查询会话，不存在、已过期或不属于该 appid 时返回 null
+     */
+    public WxMaSession get(String appid, String token) {
+        if (StringUtils.isBlank(token)) {
+            return null;
+        }
+        byte[] value = sessions.getIfPresent(token);
+        if (value == null) {
+            return null;
+        }
+        WxMaSession session = decode(value);
+        return session.getAppid().equals(appid) ? session : null;
+    }
+
+    /**
+     * 删除会话（如用户退出登录）
+     */
+    public void invalidate(String token) {
+        if (StringUtils.isNotBlank(token)) {
+            sessions.invalidate(token);
+        }
+    }
+
+    /**
+     * 编码格式：createdAt(8) appid openid unionid sessionKey，字符串为 [长度(1)][字节]；
+     * session_key 是 Base64 时存解码后的字节，长度的最高位置 1 作为标记
+     */
+    static byte[] encode(WxMaSession session) {
+        byte[] appid = bytesOf(session.getAppid());
+        byte[] openid = bytesOf(session.getOpenid());
+        byte[] unionid = bytesOf(session.getUnionid());
+        byte[] sessionKey = decodeBase64(session.getSessionKey());
+        boolean rawKey = sessionKey != null;
+        if (!rawKey) {
+            sessionKey = bytesOf(session.getSessionKey());
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(8 + 4 + appid.length + openid.length + unionid.length + sessionKey.length);
+        buffer.putLong(session.getCreatedAt());
+        put(buffer, appid, false);
+        put(buffer, openid, false);
+        put(buffer, unionid, false);
+        put(buffer, sessionKey, rawKey);
+        return buffer.array();
+    }
+
+    static WxMaSession decode(byte[] value) {
+        ByteBuffer buffer = ByteBuffer.wrap(value);
+        long createdAt = buffer.getLong();
+        String appid = getString(buffer);
+        String openid = getString(buffer);
+        String unionid = StringUtils.trimToNull(getString(buffer));
+        int header = buffer.get() & 0xFF;
+        byte[] key = new byte[header & 0x7F];
+        buffer.get(key);
+        String sessionKey = (header & 0x80) != 0
+            ? Base64.getEncoder().encodeToString(key) : new String(key, StandardCharsets.UTF_8);
+        return new WxMaSession(appid, openid, unionid, sessionKey, createdAt);
+    }
+
+    private static void put(ByteBuffer buffer, byte[] bytes, boolean flag) {
+        buffer.put((byte) (bytes.length | (flag ? 0x80 : 0)));
+        buffer.put(bytes);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.get() & 0x7F];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] bytesOf(String value) {
+        byte[] bytes = StringUtils.defaultString(value).getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0x7F) {
+            throw new IllegalArgumentException("会话字段过长：" + value);
+        }
+        return bytes;
+    }
+
+    /**
+     * 标准 Base64 且能原样还原时返回解码后的字节，否则返回 null
+     */
+    private static byte[] decodeBase64(String value) {
+        try {
+            byte[] bytes = Base64.getDecoder().decode(value);
+            return bytes.length <= 0x7F && Base64.getEncoder().encodeToString(bytes).equals(value) ? bytes : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
@@ -1,13 +1,44 @@
 package com.github.binarywang.demo.wx.miniapp.utils;
 
+import com.github.binarywang.demo.wx.miniapp.utils.http.GetResponseCache;
+import com.github.binarywang.demo.wx.miniapp.utils.http.HttpMetricsEventListener;
+import com.github.binarywang.demo.wx.miniapp.utils.http.ResilienceInterceptor;
+import io.micrometer.core.instrument.Metrics;
 import okhttp3.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.Okio;
+import okio.Sink;
+
+import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
 
 /**
  * Http工具
@@ -16,48 +47,179 @@ public class HttpUtil {
     private static final Logger logger = LoggerFactory.getLogger(HttpUtil.class);
 
     /**
-     * Http连接超时时间
+     * 默认Http连接超时时间
      */
     private static final int CONNECT_TIMEOUT = 1000 * 600;
     /**
-     * Http 写入超时时间
+     * 默认Http 写入超时时间
      */
     private static final int WRITE_TIMEOUT = 1000 * 600;
     /**
-     * Http Read超时时间
+     * 默认Http Read超时时间
      */
     private static final int READ_TIMEOUT = 1000 * 600;
     /**
-     * Http Async Call Timeout
+     * 默认Http Async Call Timeout
      */
     private static final int CALL_TIMEOUT = 1000 * 600;
     /**
-     * Http连接池
+     * 默认Http连接池大小
      */
     private static final int CONNECTION_POOL_SIZE = 1000;
 
     /**
-     * 静态连接池对象
+     * 默认profile名称
      */
-    private static final ConnectionPool CONNECTION_POOL = new ConnectionPool(CONNECTION_POOL_SIZE, 30, TimeUnit.MINUTES);
+    public static final String DEFAULT_PROFILE = "default";
 
-    private static final OkHttpClient HTTP_CLIENT;
+    /**
+     * 所有profile的异步请求共用的一组线程
+     */
+    private static final ExecutorService DISPATCHER_EXECUTOR = new ThreadPoolExecutor(0, Integer.MAX_VALUE,
+            60, TimeUnit.SECONDS, new SynchronousQueue<>(), daemonThreadFactory("HttpUtil-dispatcher-"));
 
-    static {
-        HTTP_CLIENT = getHttpClient();
-    }
+    /**
+     * 对冲请求的定时线程
+     */
+    private static final ScheduledExecutorService HEDGE_SCHEDULER =
+            Executors.newSingleThreadScheduledExecutor(daemonThreadFactory("HttpUtil-hedge-"));
 
     /**
-     * 获取Http Client对象
+     * 默认profile的客户端，未匹配到其他profile的请求都使用它
      */
-    public static OkHttpClient getHttpClient() {
-        return new OkHttpClient.Builder()
+    private static volatile OkHttpClient HTTP_CLIENT;
+
+    /**
+     * profile名称 -> 客户端
+     */
+    private static volatile Map<String, OkHttpClient> PROFILES;
+
+    /**
+     * host（或 host:port） -> 客户端
+     */
+    private static volatile Map<String, OkHttpClient> HOST_ROUTES = Collections.emptyMap();
+
+    /**
+     * 同步 GET 的合并请求 + 缓存，为 null 时不开启
+     */
+    private static volatile GetResponseCache GET_CACHE;
+
+    static {
+        HTTP_CLIENT = newClientBuilder(DEFAULT_PROFILE)
                 .connectTimeout(CONNECT_TIMEOUT, TimeUnit.MILLISECONDS)
                 .readTimeout(READ_TIMEOUT, TimeUnit.MILLISECONDS)
                 .writeTimeout(WRITE_TIMEOUT, TimeUnit.MILLISECONDS)
                 .callTimeout(CALL_TIMEOUT, TimeUnit.MILLISECONDS)
-                .connectionPool(CONNECTION_POOL)
+                .connectionPool(new ConnectionPool(CONNECTION_POOL_SIZE, 30, TimeUnit.MINUTES))
                 .build();
+        PROFILES = Collections.singletonMap(DEFAULT_PROFILE, HTTP_CLIENT);
+    }
+
+    /**
+     * 获取默认profile的Http Client对象
+     */
+    public static OkHttpClient getHttpClient() {
+        return HTTP_CLIENT;
+    }
+
+    /**
+     * 获取指定profile的Http Client对象，不存在时返回默认profile
+     */
+    public static OkHttpClient getHttpClient(String profile) {
+        return PROFILES.getOrDefault(profile, HTTP_CLIENT);
+    }
+
+    /**
+     * 获取所有profile，profile名称 -> 客户端
+     */
+    public static Map<String, OkHttpClient> getProfiles() {
+        return PROFILES;
+    }
+
+    /**
+     * 创建一个新的客户端Builder：使用独立的 Dispatcher（并发上限各自配置），
+     * 但 Dispatcher 的执行线程在所有profile之间共用；默认安装分阶段耗时统计（按 profile 打 tag）
+     *
+     * @param profile profile名称
+     */
+    public static OkHttpClient.Builder newClientBuilder(String profile) {
+        return new OkHttpClient.Builder()
+                .dispatcher(new Dispatcher(DISPATCHER_EXECUTOR))
+                .eventListenerFactory(HttpMetricsEventListener.factory(profile));
+    }
+
+    /**
+     * 注册一组profile，替换之前的配置。请求按 url 的 host:port 或 host 匹配profile，匹配不到时使用 default
+     *
+     * @param clients profile名称 -> 客户端，包含 default 时替换默认客户端
+     * @param hosts   profile名称 -> 该profile负责的 host 列表（host 或 host:port）
+     */
+    public static synchronized void registerProfiles(Map<String, OkHttpClient> clients, Map<String, List<String>> hosts) {
+        Map<String, OkHttpClient> profiles = new HashMap<>(clients);
+        OkHttpClient defaultClient = profiles.computeIfAbsent(DEFAULT_PROFILE, k -> HTTP_CLIENT);
+
+        Map<String, OkHttpClient> routes = new HashMap<>();
+        for (Map.Entry<String, List<String>> entry : hosts.entrySet()) {
+            OkHttpClient client = profiles.get(entry.getKey());
+            if (client == null || entry.getValue() == null) {
+                continue;
+            }
+            for (String host : entry.getValue()) {
+                routes.put(host.trim().toLowerCase(), client);
+            }
+        }
+
+        HTTP_CLIENT = defaultClient;
+        PROFILES = Collections.unmodifiableMap(profiles);
+        HOST_ROUTES = Collections.unmodifiableMap(routes);
+    }
+
+    /**
+     * 开启（或替换）同步 GET 的合并请求 + 缓存，传 null 关闭。只影响 {@link #getBytes} 和 {@link #getBytesWithCookie}
+     */
+    public static void setGetCache(GetResponseCache getCache) {
+        GET_CACHE = getCache;
+    }
+
+    /**
+     * 按请求的目标地址选择客户端
+     */
+    private static OkHttpClient clientFor(Request request) {
+        Map<String, OkHttpClient> routes = HOST_ROUTES;
+        OkHttpClient client = null;
+        if (!routes.isEmpty()) {
+            HttpUrl url = request.url();
+            client = routes.get(url.host() + ":" + url.port());
+            if (client == null) {
+                client = routes.get(url.host());
+            }
+        }
+        return client == null ? HTTP_CLIENT : client;
+    }
+
+    private static Call newCall(Request request) {
+        return clientFor(request).newCall(request);
+    }
+
+    /**
+     * 客户端配置的对冲延迟，未安装 {@link ResilienceInterceptor} 时为 0
+     */
+    private static long hedgeDelayMs(OkHttpClient client) {
+        for (Interceptor interceptor : client.interceptors()) {
+            if (interceptor instanceof ResilienceInterceptor) {
+                return ((ResilienceInterceptor) interceptor).getHedgeDelayMs();
+            }
+        }
+        return 0;
+    }
+
+    private static ThreadFactory daemonThreadFactory(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, prefix + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
     }
 
     /**
@@ -70,13 +232,7 @@ public class HttpUtil {
         Request request = new Request.Builder()
                 .url(url)
                 .build();
-        try {
-            Response response = HTTP_CLIENT.newCall(request).execute();
-            return Objects.requireNonNull(response.body()).bytes();
-        } catch (IOException e) {
-            logger.error(e.getMessage(), e);
-            throw new RuntimeException("http get failed!");
-        }
+        return executeGet(request, "http get failed!");
     }
 
     /**
@@ -91,13 +247,7 @@ public class HttpUtil {
                 .url(url)
                 .header("Cookie", cookieStr)
                 .build();
-        try {
-            Response response = HTTP_CLIENT.newCall(request).execute();
-            return Objects.requireNonNull(response.body()).bytes();
-        } catch (IOException e) {
-            logger.error(e.getMessage(), e);
-            throw new RuntimeException("http get failed!");
-        }
+        return executeGet(request, "http get failed!");
     }
 
     /**
@@ -113,13 +263,7 @@ public class HttpUtil {
                 .post(requestBody)
                 .url(url)
                 .build();
-        try {
-            Response response = HTTP_CLIENT.newCall(request).execute();
-            return Objects.requireNonNull(response.body()).bytes();
-        } catch (IOException e) {
-            logger.error(e.getMessage(), e);
-            throw new RuntimeException("http post failed!");
-        }
+        return execute(request, "http post failed!");
     }
 
     /**
@@ -136,13 +280,7 @@ public class HttpUtil {
                 .url(url)
                 .header("Cookie", cookieStr)
                 .build();
-        try {
-            Response response = HTTP_CLIENT.newCall(request).execute();
-            return Objects.requireNonNull(response.body()).bytes();
-        } catch (IOException e) {
-            logger.error(e.getMessage(), e);
-            throw new RuntimeException("http post failed!");
-        }
+        return execute(request, "http post failed!");
     }
 
     /**
@@ -168,13 +306,7 @@ public class HttpUtil {
         }
         
         Request request = requestBuilder.build();
-        try {
-            Response response = HTTP_CLIENT.newCall(request).execute();
-            return Objects.requireNonNull(response.body()).bytes();
-        } catch (IOException e) {
-            logger.error(e.getMessage(), e);
-            throw new RuntimeException("http post failed!");
-        }
+        return execute(request, "http post failed!");
     }
 
     /**
@@ -203,13 +335,356 @@ public class HttpUtil {
                 .url(url)
                 .build();
         
+        return execute(request, "http post form params failed!");
+    }
+
+    // ========== 流式下载（响应体不整体读入内存，使用固定大小的缓冲区边读边写） ==========
+
+    /**
+     * 流式缓冲区大小
+     */
+    private static final int STREAM_BUFFER_SIZE = 8 * 1024;
+
+    /**
+     * http get，响应体直接写入输出流（不会关闭 out）
+     *
+     * @param url url
+     * @param out 输出流
+     * @return 写入的字节数
+     */
+    public static long getToStream(String url, OutputStream out) {
+        Request request = new Request.Builder()
+                .url(url)
+                .build();
+        return executeToSink(request, Okio.sink(out), "http get failed!");
+    }
+
+    /**
+     * http get，响应体直接写入 channel（不会关闭 channel）
+     *
+     * @param url     url
+     * @param channel 目标channel
+     * @return 写入的字节数
+     */
+    public static long getToChannel(String url, WritableByteChannel channel) {
+        Request request = new Request.Builder()
+                .url(url)
+                .build();
+        try (Response response = newCall(request).execute()) {
+            BufferedSource source = successBody(response).source();
+            ByteBuffer buffer = ByteBuffer.allocate(STREAM_BUFFER_SIZE);
+            long total = 0;
+            while (source.read(buffer) != -1) {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    total += channel.write(buffer);
+                }
+                buffer.clear();
+            }
+            return total;
+        } catch (IOException e) {
+            logger.error(e.getMessage(), e);
+            throw new RuntimeException("http get failed!");
+        }
+    }
+
+    /**
+     * http get，响应体直接写入文件（覆盖已有内容）
+     * <pre>
+     * 先写入同目录下的临时文件，只有请求成功且写完后才原子替换目标文件；
+     * 请求失败（含非 2xx 状态）时目标文件保持原样，临时文件被删除
+     * </pre>
+     *
+     * @param url  url
+     * @param file 目标文件
+     * @return 写入的字节数
+     */
+    public static long getToFile(String url, File file) {
+        Request request = new Request.Builder()
+                .url(url)
+                .build();
+        Path target = file.toPath().toAbsolutePath();
+        Path tmp = null;
         try {
-            Response response = HTTP_CLIENT.newCall(request).execute();
+            tmp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+            long total;
+            try (Sink sink = Okio.sink(tmp)) {
+                total = executeToSink(request, sink, "http get failed!");
+            }
+            moveOver(tmp, target);
+            tmp = null;
+            return total;
+        } catch (IOException e) {
+            logger.error(e.getMessage(), e);
+            throw new RuntimeException("http get failed!");
+        } finally {
+            if (tmp != null) {
+                try {
+                    Files.deleteIfExists(tmp);
+                } catch (IOException e) {
+                    logger.warn("failed to delete temp file {}", tmp, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * 用临时文件替换目标文件，文件系统不支持原子移动时退化为普通覆盖
+     */
+    private static void moveOver(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * http post，响应体直接写入输出流（不会关闭 out），适合下载图片等大响应
+     *
+     * @param url  url
+     * @param body 请求body字符串
+     * @param out  输出流
+     * @return 写入的字节数
+     */
+    public static long postToStream(String url, String body, OutputStream out) {
+        RequestBody requestBody = RequestBody.create(body, MediaType.parse("application/json;charset=utf-8"));
+        Request request = new Request.Builder()
+                .post(requestBody)
+                .url(url)
+                .build();
+        return executeToSink(request, Okio.sink(out), "http post failed!");
+    }
+
+    /**
+     * 同步执行请求并读取完整响应体，保证响应在任何情况下都被关闭
+     */
+    private static byte[] execute(Request request, String errorMessage) {
+        try (Response response = newCall(request).execute()) {
             return Objects.requireNonNull(response.body()).bytes();
         } catch (IOException e) {
             logger.error(e.getMessage(), e);
-            throw new RuntimeException("http post form params failed!");
+            throw new RuntimeException(errorMessage);
         }
     }
-}
 
+    /**
+     * 同步执行 GET：开启了响应缓存时先查缓存、合并相同的进行中请求，否则直接 {@link #execute}
+     */
+    private static byte[] executeGet(Request request, String errorMessage) {
+        GetResponseCache getCache = GET_CACHE;
+        if (getCache == null) {
+            return execute(request, errorMessage);
+        }
+        try {
+            return getCache.get(request, HttpUtil::newCall);
+        } catch (IOException e) {
+            logger.error(e.getMessage(), e);
+            throw new RuntimeException(errorMessage);
+        }
+    }
+
+    /**
+     * 同步执行请求，把响应体按段写入 sink；sink 只 flush 不关闭，由调用方负责
+     */
+    private static long executeToSink(Request request, Sink sink, String errorMessage) {
+        try (Response response = newCall(request).execute()) {
+            BufferedSource source = successBody(response).source();
+            long total = 0;
+            long read;
+            Buffer buffer = new Buffer();
+            while ((read = source.read(buffer, STREAM_BUFFER_SIZE)) != -1) {
+                sink.write(buffer, read);
+                total += read;
+            }
+            sink.flush();
+            return total;
+        } catch (IOException e) {
+            logger.error(e.getMessage(), e);
+            throw new RuntimeException(errorMessage);
+        }
+    }
+
+    /**
+     * 流式写出前校验响应状态，避免把错误页当作文件内容写出
+     */
+    private static ResponseBody successBody(Response response) throws IOException {
+        if (!response.isSuccessful()) {
+            throw new IOException("unexpected http status " + response.code() + " for " + response.request().url());
+        }
+        return Objects.requireNonNull(response.body());
+    }
+
+    // ========== 异步请求（基于 OkHttp enqueue，不占用调用线程） ==========
+
+    /**
+     * 异步 http get。目标profile配置了 hedge-delay-ms 时，超过该时间未返回会补发一个相同请求，取先成功的结果
+     *
+     * @param url url
+     * @return 响应内容字节数组的 future
+     */
+    public static CompletableFuture<byte[]> getBytesAsync(String url) {
+        Request request = new Request.Builder()
+                .url(url)
+                .build();
+        long hedgeDelayMs = hedgeDelayMs(clientFor(request));
+        if (hedgeDelayMs <= 0) {
+            return enqueueBytes(request, "http get failed!");
+        }
+        return hedgedBytes(request, hedgeDelayMs, "http get failed!");
+    }
+
+    /**
+     * 异步 http post
+     *
+     * @param url  url
+     * @param body 请求body字符串
+     * @return 响应内容字节数组的 future
+     */
+    public static CompletableFuture<byte[]> postBytesAsync(String url, String body) {
+        return postBytesWithHeadersAsync(url, body, null);
+    }
+
+    /**
+     * 异步 http post with custom headers
+     *
+     * @param url     url
+     * @param body    请求body字符串
+     * @param headers 自定义请求头Map
+     * @return 响应内容字节数组的 future
+     */
+    public static CompletableFuture<byte[]> postBytesWithHeadersAsync(String url, String body, Map<String, String> headers) {
+        RequestBody requestBody = RequestBody.create(body, MediaType.parse("application/json;charset=utf-8"));
+        Request.Builder requestBuilder = new Request.Builder()
+                .post(requestBody)
+                .url(url);
+        if (headers != null) {
+            for (Map.Entry<String, String> entry : headers.entrySet()) {
+                requestBuilder.header(entry.getKey(), entry.getValue());
+            }
+        }
+        return enqueueBytes(requestBuilder.build(), "http post failed!");
+    }
+
+    /**
+     * 异步 http post with form params
+     *
+     * @param url        url
+     * @param formParams 表单参数Map
+     * @return 响应内容字节数组的 future
+     */
+    public static CompletableFuture<byte[]> postFormParamsAsync(String url, Map<String, String> formParams) {
+        FormBody.Builder formBuilder = new FormBody.Builder();
+        if (formParams != null) {
+            for (Map.Entry<String, String> entry : formParams.entrySet()) {
+                if (entry.getKey() != null && entry.getValue() != null) {
+                    formBuilder.add(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        Request request = new Request.Builder()
+                .post(formBuilder.build())
+                .url(url)
+                .build();
+        return enqueueBytes(request, "http post form params failed!");
+    }
+
+    /**
+     * 异步执行请求，返回未读取的响应，适合需要流式读取响应体的场景。
+     * 调用方负责关闭返回的 {@link Response}；取消 future 会同时取消请求。
+     *
+     * @param request 请求
+     * @return 响应的 future
+     */
+    public static CompletableFuture<Response> enqueue(Request request) {
+        Call call = newCall(request);
+        CompletableFuture<Response> future = new CompletableFuture<>();
+        future.whenComplete((r, e) -> {
+            if (future.isCancelled()) {
+                call.cancel();
+            }
+        });
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(Call c, IOException e) {
+                future.completeExceptionally(e);
+            }
+
+            @Override
+            public void onResponse(Call c, Response response) {
+                if (!future.complete(response)) {
+                    response.close();
+                }
+            }
+        });
+        return future;
+    }
+
+    private static CompletableFuture<byte[]> enqueueBytes(Request request, String errorMessage) {
+        Call call = newCall(request);
+        CompletableFuture<byte[]> future = new CompletableFuture<>();
+        future.whenComplete((r, e) -> {
+            if (future.isCancelled()) {
+                call.cancel();
+            }
+        });
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(Call c, IOException e) {
+                logger.error(e.getMessage(), e);
+                future.completeExceptionally(new RuntimeException(errorMessage, e));
+            }
+
+            @Override
+            public void onResponse(Call c, Response response) {
+                try (ResponseBody body = response.body()) {
+                    future.complete(Objects.requireNonNull(body).bytes());
+                } catch (IOException e) {
+                    logger.error(e.getMessage(), e);
+                    future.completeExceptionally(new RuntimeException(errorMessage, e));
+                }
+            }
+        });
+        return future;
+    }
+
+    /**
+     * 对冲请求：先发一个，延迟后仍未完成再发一个，任一成功即完成并取消另一个；全部失败时返回最后一个异常
+     */
+    private static CompletableFuture<byte[]> hedgedBytes(Request request, long hedgeDelayMs, String errorMessage) {
+        CompletableFuture<byte[]> result = new CompletableFuture<>();
+        AtomicInteger pending = new AtomicInteger(1);
+        List<CompletableFuture<byte[]>> attempts = new CopyOnWriteArrayList<>();
+
+        BiConsumer<byte[], Throwable> onAttemptDone = (bytes, e) -> {
+            if (e == null) {
+                result.complete(bytes);
+            } else if (pending.decrementAndGet() == 0) {
+                result.completeExceptionally(e);
+            }
+        };
+        CompletableFuture<byte[]> primary = enqueueBytes(request, errorMessage);
+        attempts.add(primary);
+        primary.whenComplete(onAttemptDone);
+
+        ScheduledFuture<?> timer = HEDGE_SCHEDULER.schedule(() -> {
+            // 已完成（成功或全部失败）时不再补发
+            if (result.isDone() || pending.getAndUpdate(p -> p == 0 ? 0 : p + 1) == 0) {
+                return;
+            }
+            Metrics.counter("http.client.hedges", "host", request.url().host()).increment();
+            CompletableFuture<byte[]> hedge = enqueueBytes(request, errorMessage);
+            attempts.add(hedge);
+            if (result.isDone()) {
+                hedge.cancel(true);
+            }
+            hedge.whenComplete(onAttemptDone);
+        }, hedgeDelayMs, TimeUnit.MILLISECONDS);
+
+        result.whenComplete((r, e) -> {
+            timer.cancel(false);
+            attempts.forEach(f -> f.cancel(true));
+        });
+        return result;
+    }
+}
@@ -1,28 +1,101 @@
 package com.github.binarywang.demo.wx.miniapp.utils;
 
-import com.fasterxml.jackson.annotation.JsonInclude.Include;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
+import com.github.binarywang.demo.wx.miniapp.utils.json.JacksonJsonCodec;
+import com.github.binarywang.demo.wx.miniapp.utils.json.JsonCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
 
 /**
+ * JSON 工具类，输出紧凑格式（不缩进）；较大的对象优先用 {@link #writeTo(OutputStream, Object)} 直接写入输出流
+ * <p>
+ * 具体实现由 {@link JsonCodec} 决定，应用启动后切换为与 Spring MVC 共用的实现（见 JsonConfiguration）
+ *
  * @author <a href="https://github.com/binarywang">Binary Wang</a>
  */
 public class JsonUtils {
-    private static final ObjectMapper JSON = new ObjectMapper();
+    private static final Logger logger = LoggerFactory.getLogger(JsonUtils.class);
+
+    private static volatile JsonCodec CODEC = JacksonJsonCodec.withDefaults();
+
+    public static JsonCodec getCodec() {
+        return CODEC;
+    }
 
-    static {
-        JSON.setSerializationInclusion(Include.NON_NULL);
-        JSON.configure(SerializationFeature.INDENT_OUTPUT, Boolean.TRUE);
+    public static void setCodec(JsonCodec codec) {
+        CODEC = codec;
     }
 
     public static String toJson(Object obj) {
         try {
-            return JSON.writeValueAsString(obj);
-        } catch (JsonProcessingException e) {
+            return CODEC.toJson(obj);
+        } catch (IOException e) {
             e.printStackTrace();
         }
 
         return null;
     }
+
+    /**
+     * 直接写入输出流，不生成中间字符串；不会关闭输出流
+     */
+    public static void writeTo(OutputStream out, Object obj) throws IOException {
+        CODEC.writeTo(out, obj);
+    }
+
+    /**
+     * 反序列化为指定类型，解析失败时记录警告并返回 null
+     */
+    public static <T> T fromJson(String json, Class<T> type) {
+        if (json == null) {
+            return null;
+        }
+        try {
+            return CODEC.fromJson(json, type);
+        } catch (IOException e) {
+            logger.warn("JSON 反序列化为 {} 失败: {}", type.getSimpleName(), e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 反序列化为指定类型，解析失败时抛出异常；用于读取落盘数据，调用方自行决定跳过还是截断损坏的记录
+     */
+    public static <T> T readJson(String json, Class<T> type) throws IOException {
+        return CODEC.fromJson(json, type);
+    }
+
+    /**
+     * 解析 JSON 对象；为空、不是 JSON 或不是对象时返回 null
+     */
+    public static Map<String, Object> parseObject(String json) {
+        if (json == null || json.trim().isEmpty()) {
+            return null;
+        }
+        try {
+            return CODEC.parseObject(json);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 读取 JSON 对象中的字段并转为字符串（数字、布尔值等转为其字符串形式，嵌套对象转为 JSON），不存在时返回 null
+     */
+    public static String getString(Map<String, Object> json, String key) {
+        if (json == null) {
+            return null;
+        }
+        Object value = json.get(key);
+        if (value == null || value instanceof String) {
+            return (String) value;
+        }
+        if (value instanceof Map || value instanceof Iterable) {
+            return toJson(value);
+        }
+        return value.toString();
+    }
 }
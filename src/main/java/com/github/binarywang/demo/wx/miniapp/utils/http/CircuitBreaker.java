@@ -0,0 +1,100 @@
+package com.github.binarywang.demo.wx.miniapp.utils.http;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Metrics;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * <pre>
+ * 简单的熔断器（按目标 host）
+ *
+ * CLOSED：正常放行，连续失败达到阈值后进入 OPEN；
+ * OPEN：直接拒绝，经过 openDurationMs 后进入 HALF_OPEN；
+ * HALF_OPEN：只放行一个探测请求，成功则恢复 CLOSED，失败则重新 OPEN。
+ *
+ * 状态记录在指标 http.client.circuit.state（0 关闭、1 打开、2 半开），
+ * 状态切换记录在 http.client.circuit.transitions（tag：target、to）。
+ * </pre>
+ */
+@Slf4j
+public class CircuitBreaker {
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final String target;
+    private final int failureThreshold;
+    private final long openDurationMs;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private boolean probeInFlight;
+
+    public CircuitBreaker(String target, int failureThreshold, long openDurationMs) {
+        this.target = target;
+        this.failureThreshold = Math.max(failureThreshold, 1);
+        this.openDurationMs = openDurationMs;
+        Gauge.builder("http.client.circuit.state", this, b -> b.getState().ordinal())
+            .tag("target", target)
+            .register(Metrics.globalRegistry);
+    }
+
+    /**
+     * 是否允许发起请求
+     */
+    public synchronized boolean tryAcquire() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (System.currentTimeMillis() - openedAt < openDurationMs) {
+                    return false;
+                }
+                transitionTo(State.HALF_OPEN);
+                probeInFlight = true;
+                return true;
+            case HALF_OPEN:
+            default:
+                if (probeInFlight) {
+                    return false;
+                }
+                probeInFlight = true;
+                return true;
+        }
+    }
+
+    public synchronized void onSuccess() {
+        consecutiveFailures = 0;
+        probeInFlight = false;
+        if (state != State.CLOSED) {
+            transitionTo(State.CLOSED);
+        }
+    }
+
+    public synchronized void onFailure() {
+        probeInFlight = false;
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+            openedAt = System.currentTimeMillis();
+            transitionTo(State.OPEN);
+        }
+    }
+
+    /**
+     * 请求被调用方取消：不计成功或失败，只释放半开状态的探测名额
+     */
+    public synchronized void onCancelled() {
+        probeInFlight = false;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    private void transitionTo(State next) {
+        log.warn("熔断器状态切换，target={}, {} -> {}", target, state, next);
+        state = next;
+        Metrics.counter("http.client.circuit.transitions", "target", target, "to", next.name()).increment();
+    }
+}
@@ -0,0 +1,191 @@
+package com.github.binarywang.demo.wx.miniapp.utils.http;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Metrics;
+import lombok.Builder;
+import okhttp3.Call;
+import okhttp3.CacheControl;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <pre>
+ * HttpUtil 同步 GET 的合并请求 + 内存缓存（可选开启）
+ *
+ * 1. 合并：同一时刻相同的 GET（url + Cookie）只发出一个请求，其余线程等待并共享结果；
+ * 2. 缓存：按总字节数限制的内存缓存，遵循 Cache-Control（no-store 不缓存，no-cache 每次校验，max-age 决定新鲜期），
+ *    未声明 max-age 时使用较短的默认有效期；
+ * 3. 校验：过期但带有 ETag / Last-Modified 的条目用条件请求（If-None-Match / If-Modified-Since）校验，
+ *    304 时继续使用缓存内容。
+ *
+ * 只缓存 2xx 响应；结果记录在指标 http.client.get_cache（tag：outcome = hit、miss、revalidated、coalesced）。
+ * </pre>
+ */
+public class GetResponseCache {
+    private final long maxEntryBytes;
+    private final long defaultTtlMs;
+    private final long maxTtlMs;
+
+    private final Cache<String, Entry> entries;
+    private final ConcurrentHashMap<String, CompletableFuture<byte[]>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * @param maxBytes      缓存内容总字节数上限
+     * @param maxEntryBytes 单个响应超过该大小时不缓存
+     * @param defaultTtlMs  响应未声明 max-age 时的有效期，单位毫秒
+     * @param maxTtlMs      有效期上限，单位毫秒
+     * @param retentionMs   条目过期后继续保留用于条件校验的时间，单位毫秒
+     */
+    @Builder
+    public GetResponseCache(long maxBytes, long maxEntryBytes, long defaultTtlMs, long maxTtlMs, long retentionMs) {
+        this.maxEntryBytes = maxEntryBytes;
+        this.defaultTtlMs = defaultTtlMs;
+        this.maxTtlMs = maxTtlMs;
+        this.entries = CacheBuilder.newBuilder()
+            .maximumWeight(maxBytes)
+            .weigher((String key, Entry entry) -> key.length() + entry.body.length)
+            .expireAfterWrite(Math.max(maxTtlMs, 0) + Math.max(retentionMs, 0), TimeUnit.MILLISECONDS)
+            .build();
+        Gauge.builder("http.client.get_cache.entries", entries, Cache::size).register(Metrics.globalRegistry);
+    }
+
+    /**
+     * 执行一个 GET 请求，优先使用缓存或进行中的相同请求
+     *
+     * @param request     GET 请求
+     * @param callFactory 用于真正发出请求
+     * @return 响应内容字节数组（每个调用方拿到独立的副本）
+     */
+    public byte[] get(Request request, Call.Factory callFactory) throws IOException {
+        String key = keyOf(request);
+        Entry entry = entries.getIfPresent(key);
+        if (entry != null && entry.isFresh()) {
+            record("hit");
+            return entry.body.clone();
+        }
+
+        CompletableFuture<byte[]> future = new CompletableFuture<>();
+        CompletableFuture<byte[]> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            record("coalesced");
+            try {
+                return existing.join().clone();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw e;
+            }
+        }
+
+        try {
+            byte[] body = fetch(key, request, entry, callFactory);
+            future.complete(body);
+            return body.clone();
+        } catch (IOException | RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+    private byte[] fetch(String key, Request request, Entry stale, Call.Factory callFactory) throws IOException {
+        Request.Builder builder = request.newBuilder();
+        if (stale != null) {
+            if (stale.etag != null) {
+                builder.header("If-None-Match", stale.etag);
+            }
+            if (stale.lastModified != null) {
+                builder.header("If-Modified-Since", stale.lastModified);
+            }
+        }
+        try (Response response = callFactory.newCall(builder.build()).execute()) {
+            if (response.code() == 304 && stale != null) {
+                record("revalidated");
+                entries.put(key, stale.refresh(expiresAt(response)));
+                return stale.body;
+            }
+            record("miss");
+            byte[] body = Objects.requireNonNull(response.body()).bytes();
+            if (isCacheable(response, body)) {
+                entries.put(key, new Entry(body, response.header("ETag"), response.header("Last-Modified"),
+                    expiresAt(response)));
+            } else {
+                entries.invalidate(key);
+            }
+            return body;
+        }
+    }
+
+    private boolean isCacheable(Response response, byte[] body) {
+        if (!response.isSuccessful() || body.length > maxEntryBytes) {
+            return false;
+        }
+        String vary = response.header("Vary");
+        if (vary != null && vary.contains("*")) {
+            return false;
+        }
+        CacheControl cacheControl = response.cacheControl();
+        if (cacheControl.noStore()) {
+            return false;
+        }
+        // 没有有效期也没有校验信息的响应，缓存了也用不上
+        return !cacheControl.noCache() || response.header("ETag") != null || response.header("Last-Modified") != null;
+    }
+
+    private long expiresAt(Response response) {
+        CacheControl cacheControl = response.cacheControl();
+        long ttlMs;
+        if (cacheControl.noCache()) {
+            ttlMs = 0;
+        } else if (cacheControl.sMaxAgeSeconds() >= 0) {
+            ttlMs = TimeUnit.SECONDS.toMillis(cacheControl.sMaxAgeSeconds());
+        } else if (cacheControl.maxAgeSeconds() >= 0) {
+            ttlMs = TimeUnit.SECONDS.toMillis(cacheControl.maxAgeSeconds());
+        } else {
+            ttlMs = defaultTtlMs;
+        }
+        return System.currentTimeMillis() + Math.min(ttlMs, maxTtlMs);
+    }
+
+    private static String keyOf(Request request) {
+        String cookie = request.header("Cookie");
+        return cookie == null ? request.url().toString() : request.url() + "\n" + cookie;
+    }
+
+    private static void record(String outcome) {
+        Metrics.counter("http.client.get_cache", "outcome", outcome).increment();
+    }
+
+    private static final class Entry {
+        private final byte[] body;
+        private final String etag;
+        private final String lastModified;
+        private final long expiresAt;
+
+        private Entry(byte[] body, String etag, String lastModified, long expiresAt) {
+            this.body = body;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.expiresAt = expiresAt;
+        }
+
+        private boolean isFresh() {
+            return System.currentTimeMillis() < expiresAt;
+        }
+
+        private Entry refresh(long expiresAt) {
+            return new Entry(body, etag, lastModified, expiresAt);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.github.binarywang.demo.wx.miniapp.utils.http;
+
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.EventListener;
+import okhttp3.Handshake;
+import okhttp3.Protocol;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <pre>
+ * 基于 OkHttp EventListener 的出站请求耗时统计
+ *
+ * 按客户端所属 profile 分阶段记录耗时（指标 http.client.phase，tag：profile、phase），phase 包括：
+ * dns、connect、tls、ttfb（请求发出到收到响应头）、body（读取响应体）、total（整个调用）；
+ * 连接复用情况记录在 http.client.connections.acquired（tag：profile、reused）。
+ * tag 用 profile 而不是目标 host：未配置的 host 都落在 default profile 下，时间序列数量有上限。
+ *
+ * 指标注册到 Micrometer 全局 registry，Spring Boot 会把 actuator 的 registry 加入其中，
+ * 可通过 /actuator/metrics 查看。
+ * </pre>
+ */
+public class HttpMetricsEventListener extends EventListener {
+
+    private final String profile;
+    private long callStart;
+    private long dnsStart;
+    private long connectStart;
+    private long secureConnectStart;
+    private long requestStart;
+    private long responseBodyStart;
+    private boolean connected;
+
+    private HttpMetricsEventListener(String profile) {
+        this.profile = profile;
+    }
+
+    /**
+     * 指定 profile 的客户端使用的监听器工厂，每个调用一个监听器
+     */
+    public static EventListener.Factory factory(String profile) {
+        return call -> new HttpMetricsEventListener(profile);
+    }
+
+    @Override
+    public void callStart(Call call) {
+        callStart = System.nanoTime();
+    }
+
+    @Override
+    public void dnsStart(Call call, String domainName) {
+        dnsStart = System.nanoTime();
+    }
+
+    @Override
+    public void dnsEnd(Call call, String domainName, List<InetAddress> inetAddressList) {
+        record("dns", dnsStart);
+    }
+
+    @Override
+    public void connectStart(Call call, InetSocketAddress inetSocketAddress, Proxy proxy) {
+        connectStart = System.nanoTime();
+        connected = true;
+    }
+
+    @Override
+    public void secureConnectStart(Call call) {
+        secureConnectStart = System.nanoTime();
+    }
+
+    @Override
+    public void secureConnectEnd(Call call, Handshake handshake) {
+        record("tls", secureConnectStart);
+    }
+
+    @Override
+    public void connectEnd(Call call, InetSocketAddress inetSocketAddress, Proxy proxy, Protocol protocol) {
+        record("connect", connectStart);
+    }
+
+    @Override
+    public void connectFailed(Call call, InetSocketAddress inetSocketAddress, Proxy proxy, Protocol protocol,
+                              IOException ioe) {
+        record("connect", connectStart);
+    }
+
+    @Override
+    public void connectionAcquired(Call call, Connection connection) {
+        Metrics.counter("http.client.connections.acquired",
+            "profile", profile, "reused", String.valueOf(!connected)).increment();
+        // 重试或重定向时同一调用会再次获取连接，需要重新判断是否新建
+        connected = false;
+    }
+
+    @Override
+    public void requestHeadersStart(Call call) {
+        requestStart = System.nanoTime();
+    }
+
+    @Override
+    public void responseHeadersStart(Call call) {
+        record("ttfb", requestStart);
+    }
+
+    @Override
+    public void responseBodyStart(Call call) {
+        responseBodyStart = System.nanoTime();
+    }
+
+    @Override
+    public void responseBodyEnd(Call call, long byteCount) {
+        record("body", responseBodyStart);
+    }
+
+    @Override
+    public void responseHeadersEnd(Call call, Response response) {
+        Metrics.counter("http.client.responses", "profile", profile, "status", String.valueOf(response.code())).increment();
+    }
+
+    @Override
+    public void callEnd(Call call) {
+        record("total", callStart);
+    }
+
+    @Override
+    public void callFailed(Call call, IOException ioe) {
+        record("total", callStart);
+        Metrics.counter("http.client.failures", "profile", profile, "exception", ioe.getClass().getSimpleName()).increment();
+    }
+
+    private void record(String phase, long startNanos) {
+        if (startNanos == 0L) {
+            return;
+        }
+        Timer.builder("http.client.phase")
+            .tag("profile", profile)
+            .tag("phase", phase)
+            .publishPercentileHistogram()
+            .register(Metrics.globalRegistry)
+            .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+}
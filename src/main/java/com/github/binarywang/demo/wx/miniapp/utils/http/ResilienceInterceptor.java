@@ -0,0 +1,166 @@
+package com.github.binarywang.demo.wx.miniapp.utils.http;
+
+import io.micrometer.core.instrument.Metrics;
+import lombok.Builder;
+import lombok.Getter;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * <pre>
+ * 出站请求的容错拦截器（每个 profile 一个实例）
+ *
+ * 1. 熔断：按目标 host 维护 {@link CircuitBreaker}，打开时直接失败，不再占用连接和线程；
+ * 2. 重试：幂等请求（GET/HEAD/PUT/DELETE/OPTIONS）在 IO 异常或 5xx 时按指数退避 + 随机抖动重试；
+ * 3. 对冲：hedgeDelayMs 大于 0 时，由 HttpUtil 对幂等 GET 在延迟后补发一个请求，取先返回的结果。
+ * </pre>
+ */
+@Getter
+@Builder
+public class ResilienceInterceptor implements Interceptor {
+    /**
+     * 最大尝试次数（含第一次），1 表示不重试
+     */
+    @Builder.Default
+    private final int maxAttempts = 1;
+
+    /**
+     * 退避基准时间，单位毫秒
+     */
+    @Builder.Default
+    private final long backoffBaseMs = 100;
+
+    /**
+     * 单次退避的最大时间，单位毫秒
+     */
+    @Builder.Default
+    private final long backoffMaxMs = 2000;
+
+    /**
+     * 是否开启熔断
+     */
+    @Builder.Default
+    private final boolean circuitBreakerEnabled = true;
+
+    /**
+     * 连续失败多少次后熔断
+     */
+    @Builder.Default
+    private final int failureThreshold = 5;
+
+    /**
+     * 熔断持续时间，单位毫秒
+     */
+    @Builder.Default
+    private final long openDurationMs = 30_000;
+
+    /**
+     * 对冲请求的延迟，单位毫秒，0 表示不开启
+     */
+    @Builder.Default
+    private final long hedgeDelayMs = 0;
+
+    private final ConcurrentHashMap<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        String target = request.url().host() + ":" + request.url().port();
+        CircuitBreaker breaker = circuitBreakerEnabled
+            ? breakers.computeIfAbsent(target, t -> new CircuitBreaker(t, failureThreshold, openDurationMs))
+            : null;
+        int attempts = isIdempotent(request) ? Math.max(maxAttempts, 1) : 1;
+
+        IOException lastError = null;
+        for (int attempt = 1; attempt <= attempts; attempt++) {
+            if (attempt > 1) {
+                Metrics.counter("http.client.retries", "target", target).increment();
+                sleepBackoff(attempt - 1);
+            }
+            if (breaker != null && !breaker.tryAcquire()) {
+                throw new CircuitBreakerOpenException(target);
+            }
+            try {
+                Response response = chain.proceed(request);
+                if (response.code() < 500) {
+                    if (breaker != null) {
+                        breaker.onSuccess();
+                    }
+                    return response;
+                }
+                if (breaker != null) {
+                    breaker.onFailure();
+                }
+                if (attempt == attempts) {
+                    return response;
+                }
+                response.close();
+            } catch (CircuitBreakerOpenException e) {
+                throw e;
+            } catch (IOException e) {
+                if (chain.call().isCanceled()) {
+                    // 被取消的调用（如对冲中落后的一方）不代表目标故障：只释放探测名额，不计失败、不重试
+                    if (breaker != null) {
+                        breaker.onCancelled();
+                    }
+                    throw e;
+                }
+                if (breaker != null) {
+                    breaker.onFailure();
+                }
+                lastError = e;
+            } catch (RuntimeException e) {
+                // 后续拦截器或 EventListener 抛出的异常也要计为失败，否则半开状态的探测名额永远不会释放
+                if (breaker != null) {
+                    breaker.onFailure();
+                }
+                throw e;
+            }
+        }
+        throw lastError;
+    }
+
+    private static boolean isIdempotent(Request request) {
+        switch (request.method()) {
+            case "GET":
+            case "HEAD":
+            case "PUT":
+            case "DELETE":
+            case "OPTIONS":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * 指数退避 + 全量随机抖动（full jitter）
+     */
+    private void sleepBackoff(int retry) throws InterruptedIOException {
+        long cap = Math.min(backoffMaxMs, backoffBaseMs << Math.min(retry - 1, 20));
+        long delay = ThreadLocalRandom.current().nextLong(Math.max(cap, 1) + 1);
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("retry backoff interrupted");
+        }
+    }
+
+    /**
+     * 熔断器打开时抛出，请求未真正发出
+     */
+    public static class CircuitBreakerOpenException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public CircuitBreakerOpenException(String target) {
+            super("circuit breaker open for " + target);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.github.binarywang.demo.wx.miniapp.utils.http;
+
+import cn.binarywang.wx.miniapp.api.impl.WxMaServiceOkHttpImpl;
+import com.github.binarywang.demo.wx.miniapp.utils.HttpUtil;
+import okhttp3.OkHttpClient;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * <pre>
+ * 使用 HttpUtil 中指定 profile 客户端的 WxMaService
+ *
+ * 与 HttpUtil 共用连接池、调度线程、分阶段耗时统计及容错策略，不再单独创建一套 OkHttp 客户端；
+ * 配置了 http 代理的小程序仍使用 WxJava 自己创建的客户端。
+ * </pre>
+ */
+public class SharedOkHttpWxMaServiceImpl extends WxMaServiceOkHttpImpl {
+    private final String profile;
+    private volatile boolean useOwnClient;
+
+    public SharedOkHttpWxMaServiceImpl(String profile) {
+        this.profile = profile;
+    }
+
+    @Override
+    public void initHttp() {
+        useOwnClient = StringUtils.isNotBlank(getWxMaConfig().getHttpProxyHost());
+        if (useOwnClient) {
+            super.initHttp();
+        }
+    }
+
+    @Override
+    public OkHttpClient getRequestHttpClient() {
+        return useOwnClient ? super.getRequestHttpClient() : HttpUtil.getHttpClient(profile);
+    }
+}
@@ -0,0 +1,36 @@
+package com.github.binarywang.demo.wx.miniapp.utils.http;
+
+import com.github.binarywang.demo.wx.miniapp.utils.HttpUtil;
+import me.chanjar.weixin.mp.api.impl.WxMpServiceOkHttpImpl;
+import okhttp3.OkHttpClient;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * <pre>
+ * 使用 HttpUtil 中指定 profile 客户端的 WxMpService
+ *
+ * 与 HttpUtil 共用连接池、调度线程、分阶段耗时统计及容错策略，不再单独创建一套 OkHttp 客户端；
+ * 配置了 http 代理的公众号仍使用 WxJava 自己创建的客户端。
+ * </pre>
+ */
+public class SharedOkHttpWxMpServiceImpl extends WxMpServiceOkHttpImpl {
+    private final String profile;
+    private volatile boolean useOwnClient;
+
+    public SharedOkHttpWxMpServiceImpl(String profile) {
+        this.profile = profile;
+    }
+
+    @Override
+    public void initHttp() {
+        useOwnClient = StringUtils.isNotBlank(getWxMpConfigStorage().getHttpProxyHost());
+        if (useOwnClient) {
+            super.initHttp();
+        }
+    }
+
+    @Override
+    public OkHttpClient getRequestHttpClient() {
+        return useOwnClient ? super.getRequestHttpClient() : HttpUtil.getHttpClient(profile);
+    }
+}
@@ -0,0 +1,70 @@
+package com.github.binarywang.demo.wx.miniapp.utils.json;
+
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+
+/**
+ * 基于 Jackson 的 {@link JsonCodec} 实现
+ * <p>
+ * 应用启动后使用 Spring MVC 同一个 ObjectMapper，序列化器缓存只有一份；启动前使用独立的默认配置。
+ */
+public class JacksonJsonCodec implements JsonCodec {
+    private static final TypeReference<Map<String, Object>> MAP_TYPE = new TypeReference<Map<String, Object>>() {
+    };
+
+    private final ObjectMapper mapper;
+    private final ObjectWriter streamWriter;
+    private final ObjectReader mapReader;
+
+    public JacksonJsonCodec(ObjectMapper mapper) {
+        this.mapper = mapper;
+        this.streamWriter = mapper.writer().without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        this.mapReader = mapper.readerFor(MAP_TYPE);
+    }
+
+    /**
+     * 默认配置：不输出 null 字段、忽略未知字段
+     */
+    public static JacksonJsonCodec withDefaults() {
+        ObjectMapper mapper = new ObjectMapper();
+        mapper.setSerializationInclusion(Include.NON_NULL);
+        mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        return new JacksonJsonCodec(mapper);
+    }
+
+    @Override
+    public String toJson(Object obj) throws IOException {
+        return mapper.writeValueAsString(obj);
+    }
+
+    @Override
+    public void writeTo(OutputStream out, Object obj) throws IOException {
+        streamWriter.writeValue(out, obj);
+    }
+
+    @Override
+    public <T> T fromJson(String json, Class<T> type) throws IOException {
+        return mapper.readValue(json, type);
+    }
+
+    @Override
+    public <T> T fromJson(InputStream in, Class<T> type) throws IOException {
+        return mapper.readerFor(type).without(JsonParser.Feature.AUTO_CLOSE_SOURCE).readValue(in);
+    }
+
+    @Override
+    public Map<String, Object> parseObject(String json) throws IOException {
+        return mapReader.readValue(json);
+    }
+}
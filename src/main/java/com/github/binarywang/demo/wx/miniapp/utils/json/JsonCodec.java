@@ -0,0 +1,38 @@
+package com.github.binarywang.demo.wx.miniapp.utils.json;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+
+/**
+ * 项目内统一的 JSON 编解码接口，控制器和工具类都通过 {@link com.github.binarywang.demo.wx.miniapp.utils.JsonUtils} 使用，
+ * 不直接依赖具体的 JSON 库
+ */
+public interface JsonCodec {
+
+    /**
+     * 序列化为紧凑格式的 JSON 字符串
+     */
+    String toJson(Object obj) throws IOException;
+
+    /**
+     * 直接写入输出流，不关闭输出流
+     */
+    void writeTo(OutputStream out, Object obj) throws IOException;
+
+    /**
+     * 反序列化为指定类型
+     */
+    <T> T fromJson(String json, Class<T> type) throws IOException;
+
+    /**
+     * 从输入流反序列化为指定类型，不关闭输入流
+     */
+    <T> T fromJson(InputStream in, Class<T> type) throws IOException;
+
+    /**
+     * 解析 JSON 对象；不是 JSON 对象（如数组、纯文本）时抛出异常
+     */
+    Map<String, Object> parseObject(String json) throws IOException;
+}
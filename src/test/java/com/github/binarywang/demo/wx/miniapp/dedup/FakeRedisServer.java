@@ -0,0 +1,168 @@
+package com.github.binarywang.demo.wx.miniapp.dedup;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 测试用的最小 Redis 服务：在本机端口上说 RESP 协议，只支持 PING、SET（NX、PX）、GET、DEL，
+ * 并记录收到的 SET 次数，用于验证近端缓存是否省掉了网络往返
+ */
+class FakeRedisServer implements AutoCloseable {
+    private final ServerSocket serverSocket;
+    private final Map<String, Entry> data = new ConcurrentHashMap<>();
+    private final List<Socket> clients = new CopyOnWriteArrayList<>();
+    private final AtomicInteger setCommands = new AtomicInteger();
+
+    FakeRedisServer() throws IOException {
+        serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        Thread acceptor = new Thread(this::acceptLoop, "fake-redis");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    int getSetCommands() {
+        return setCommands.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        for (Socket client : clients) {
+            client.close();
+        }
+    }
+
+    private void acceptLoop() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket client = serverSocket.accept();
+                clients.add(client);
+                Thread handler = new Thread(() -> handle(client), "fake-redis-client");
+                handler.setDaemon(true);
+                handler.start();
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    private void handle(Socket client) {
+        try (Socket socket = client) {
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            OutputStream out = socket.getOutputStream();
+            List<String> command;
+            while ((command = readCommand(in)) != null) {
+                out.write(execute(command).getBytes(StandardCharsets.UTF_8));
+                out.flush();
+            }
+        } catch (IOException e) {
+            // 客户端断开或服务关闭
+        }
+    }
+
+    private String execute(List<String> command) {
+        String name = command.get(0).toUpperCase();
+        long now = System.currentTimeMillis();
+        switch (name) {
+            case "PING":
+                return "+PONG\r\n";
+            case "SET": {
+                setCommands.incrementAndGet();
+                String key = command.get(1);
+                boolean nx = false;
+                long expireAt = Long.MAX_VALUE;
+                for (int i = 3; i < command.size(); i++) {
+                    String option = command.get(i).toUpperCase();
+                    if ("NX".equals(option)) {
+                        nx = true;
+                    } else if ("PX".equals(option)) {
+                        expireAt = now + Long.parseLong(command.get(++i));
+                    }
+                }
+                Entry existing = data.get(key);
+                if (nx && existing != null && existing.expireAt > now) {
+                    return "$-1\r\n";
+                }
+                data.put(key, new Entry(command.get(2), expireAt));
+                return "+OK\r\n";
+            }
+            case "GET": {
+                Entry entry = data.get(command.get(1));
+                if (entry == null || entry.expireAt <= now) {
+                    return "$-1\r\n";
+                }
+                return "$" + entry.value.length() + "\r\n" + entry.value + "\r\n";
+            }
+            case "DEL":
+                return ":" + (data.remove(command.get(1)) == null ? 0 : 1) + "\r\n";
+            default:
+                return "-ERR unknown command '" + name + "'\r\n";
+        }
+    }
+
+    /**
+     * 读取一条 RESP 命令（多个 bulk string 组成的数组），连接关闭时返回 null
+     */
+    private static List<String> readCommand(InputStream in) throws IOException {
+        String header = readLine(in);
+        if (header == null) {
+            return null;
+        }
+        int count = Integer.parseInt(header.substring(1));
+        List<String> args = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int length = Integer.parseInt(readLine(in).substring(1));
+            byte[] bytes = new byte[length];
+            int read = 0;
+            while (read < length) {
+                int n = in.read(bytes, read, length - read);
+                if (n < 0) {
+                    return null;
+                }
+                read += n;
+            }
+            readLine(in);
+            args.add(new String(bytes, StandardCharsets.UTF_8));
+        }
+        return args;
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = in.read()) != -1) {
+            if (c == '\r') {
+                in.read();
+                return line.toString();
+            }
+            line.append((char) c);
+        }
+        return line.length() == 0 ? null : line.toString();
+    }
+
+    private static final class Entry {
+        private final String value;
+        private final long expireAt;
+
+        private Entry(String value, long expireAt) {
+            this.value = value;
+            this.expireAt = expireAt;
+        }
+    }
+}
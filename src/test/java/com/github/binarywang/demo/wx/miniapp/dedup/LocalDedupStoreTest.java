@@ -0,0 +1,55 @@
+package com.github.binarywang.demo.wx.miniapp.dedup;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LocalDedupStoreTest {
+    private final LocalDedupStore store = new LocalDedupStore();
+
+    @Test
+    void firstOccurrenceWinsWithinTtl() {
+        assertThat(store.isDuplicate("msg", "a", 10_000)).isFalse();
+        assertThat(store.isDuplicate("msg", "a", 10_000)).isTrue();
+        assertThat(store.isDuplicate("msg", "a", 10_000)).isTrue();
+    }
+
+    @Test
+    void keyIsAcceptedAgainAfterTtl() throws InterruptedException {
+        assertThat(store.isDuplicate("msg", "a", 50)).isFalse();
+        Thread.sleep(80);
+        assertThat(store.isDuplicate("msg", "a", 50)).isFalse();
+        assertThat(store.isDuplicate("msg", "a", 50)).isTrue();
+    }
+
+    @Test
+    void duplicateDoesNotExtendTheWindow() throws InterruptedException {
+        assertThat(store.isDuplicate("msg", "a", 200)).isFalse();
+        Thread.sleep(100);
+        assertThat(store.isDuplicate("msg", "a", 200)).isTrue();
+        Thread.sleep(150);
+        assertThat(store.isDuplicate("msg", "a", 200)).isFalse();
+    }
+
+    @Test
+    void namespacesAreIndependent() {
+        assertThat(store.isDuplicate("msg", "a", 10_000)).isFalse();
+        assertThat(store.isDuplicate("outbound", "a", 10_000)).isFalse();
+        assertThat(store.isDuplicate("msg", "b", 10_000)).isFalse();
+    }
+
+    @Test
+    void blankKeyOrNonPositiveTtlIsNeverDuplicate() {
+        assertThat(store.isDuplicate("msg", "", 10_000)).isFalse();
+        assertThat(store.isDuplicate("msg", "", 10_000)).isFalse();
+        assertThat(store.isDuplicate("msg", "a", 0)).isFalse();
+        assertThat(store.isDuplicate("msg", "a", 0)).isFalse();
+    }
+
+    @Test
+    void forgetReleasesKey() {
+        assertThat(store.isDuplicate("msg", "a", 10_000)).isFalse();
+        store.forget("msg", "a");
+        assertThat(store.isDuplicate("msg", "a", 10_000)).isFalse();
+    }
+}
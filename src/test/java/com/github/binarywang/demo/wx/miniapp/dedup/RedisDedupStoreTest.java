@@ -0,0 +1,109 @@
+package com.github.binarywang.demo.wx.miniapp.dedup;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 在 {@link FakeRedisServer} 上验证 SET NX PX 语义、近端缓存和 Redis 不可用时的降级
+ */
+class RedisDedupStoreTest {
+    private FakeRedisServer server;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = new FakeRedisServer();
+    }
+
+    @AfterEach
+    void stopServer() throws IOException {
+        server.close();
+    }
+
+    @Test
+    void firstWriterWinsAcrossNodes() {
+        try (RedisDedupStore node1 = newStore(server.getPort());
+             RedisDedupStore node2 = newStore(server.getPort())) {
+            assertThat(node1.isDuplicate("msg", "a", 10_000)).isFalse();
+            assertThat(node2.isDuplicate("msg", "a", 10_000)).isTrue();
+            assertThat(node2.isDuplicate("msg", "b", 10_000)).isFalse();
+            assertThat(node1.isDuplicate("msg", "b", 10_000)).isTrue();
+        }
+    }
+
+    @Test
+    void nearCacheAnswersRepeatsWithoutRoundTrip() {
+        try (RedisDedupStore store = newStore(server.getPort())) {
+            assertThat(store.isDuplicate("msg", "a", 10_000)).isFalse();
+            assertThat(store.isDuplicate("msg", "a", 10_000)).isTrue();
+            assertThat(store.isDuplicate("msg", "a", 10_000)).isTrue();
+            assertThat(server.getSetCommands()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    void keyWrittenByAnotherNodeIsNotKeptInNearCache() {
+        try (RedisDedupStore node1 = newStore(server.getPort());
+             RedisDedupStore node2 = newStore(server.getPort())) {
+            assertThat(node1.isDuplicate("msg", "a", 10_000)).isFalse();
+            assertThat(node2.isDuplicate("msg", "a", 10_000)).isTrue();
+            assertThat(node2.isDuplicate("msg", "a", 10_000)).isTrue();
+            // node2 每次都要问 Redis：剩余 ttl 未知，不能用近端缓存回答
+            assertThat(server.getSetCommands()).isEqualTo(3);
+        }
+    }
+
+    @Test
+    void keyExpiresWithPx() throws InterruptedException {
+        try (RedisDedupStore node1 = newStore(server.getPort());
+             RedisDedupStore node2 = newStore(server.getPort())) {
+            assertThat(node1.isDuplicate("msg", "a", 100)).isFalse();
+            assertThat(node2.isDuplicate("msg", "a", 100)).isTrue();
+            Thread.sleep(150);
+            assertThat(node2.isDuplicate("msg", "a", 100)).isFalse();
+            assertThat(node1.isDuplicate("msg", "a", 100)).isTrue();
+        }
+    }
+
+    @Test
+    void fallsBackToLocalDedupWhenRedisIsDown() throws IOException {
+        try (RedisDedupStore store = newStore(unusedPort())) {
+            assertThat(store.isDuplicate("msg", "a", 10_000)).isFalse();
+            assertThat(store.isDuplicate("msg", "a", 10_000)).isTrue();
+            assertThat(store.isDuplicate("msg", "b", 10_000)).isFalse();
+        }
+    }
+
+    @Test
+    void fallsBackWhenRedisGoesAwayMidway() throws IOException {
+        try (RedisDedupStore store = newStore(server.getPort())) {
+            assertThat(store.isDuplicate("msg", "a", 10_000)).isFalse();
+            server.close();
+            assertThat(store.isDuplicate("msg", "b", 10_000)).isFalse();
+            assertThat(store.isDuplicate("msg", "b", 10_000)).isTrue();
+            // 已经确认写入 Redis 的 key 仍由近端缓存判重
+            assertThat(store.isDuplicate("msg", "a", 10_000)).isTrue();
+        }
+    }
+
+    private static RedisDedupStore newStore(int port) {
+        JedisPoolConfig config = new JedisPoolConfig();
+        config.setMaxWait(Duration.ofMillis(500));
+        return new RedisDedupStore(new JedisPool(config, "127.0.0.1", port, 500), "test:");
+    }
+
+    private static int unusedPort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            return socket.getLocalPort();
+        }
+    }
+}